@@ -3,17 +3,52 @@ package com.klasurapp;
 import com.klasurapp.dao.*;
 import com.klasurapp.model.*;
 import com.klasurapp.model.Module;
+import com.klasurapp.pdf.AnswerKeyRenderer;
+import com.klasurapp.pdf.ExamCopy;
+import com.klasurapp.pdf.ExamPdfRenderer;
+import com.klasurapp.pdf.ExamPrintJob;
+import com.klasurapp.pdf.PdfFonts;
+import com.klasurapp.service.AnswerDraftStore;
+import com.klasurapp.service.AnswerSubmissionService;
+import com.klasurapp.service.AvailabilityIndex;
 import com.klasurapp.service.AuthenticationService;
+import com.klasurapp.service.BulkProvisioningService;
+import com.klasurapp.service.ClosedAnswerGradingService;
+import com.klasurapp.service.ExamGenerator;
+import com.klasurapp.service.ExamInstance;
+import com.klasurapp.service.ExamSessionEngine;
+import com.klasurapp.service.ExamSnapshotService;
+import com.klasurapp.service.ExamVariantGenerator;
+import com.klasurapp.service.LastLoginTracker;
+import com.klasurapp.service.LoginRateLimiter;
+import com.klasurapp.service.PasswordHasher;
+import com.klasurapp.service.SessionManager;
+import com.klasurapp.service.SubmissionJournal;
+import com.klasurapp.service.TaskPoolService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main entry point for the Klasur App application (Console Version).
@@ -23,10 +58,26 @@ public class Main {
     private static final Scanner scanner = new Scanner(System.in);
     
     private static AuthenticationService authService;
+    private static String sessionToken;
+    private static BulkProvisioningService bulkProvisioningService;
+    private static ExamGenerator examGenerator;
+    private static ExamVariantGenerator examVariantGenerator;
+    private static ExamPdfRenderer examPdfRenderer;
+    private static AnswerKeyRenderer answerKeyRenderer;
     private static ModuleDAO moduleDAO;
     private static TaskDAO taskDAO;
     private static ExamDAO examDAO;
+    private static TaskPoolDAO taskPoolDAO;
+    private static TaskPoolService taskPoolService;
+    private static ExamSnapshotService examSnapshotService;
     private static AnswerDAO answerDAO;
+    private static ExamAttemptDAO examAttemptDAO;
+    private static AnswerDraftDAO answerDraftDAO;
+    private static AnswerDraftStore answerDraftStore;
+    private static SubmissionJournal submissionJournal;
+    private static AnswerSubmissionService answerSubmissionService;
+    private static ClosedAnswerGradingService closedAnswerGradingService;
+    private static ExamSessionEngine examSessionEngine;
 
     public static void main(String[] args) {
         logger.info("Starting Klasur App (Console Version)");
@@ -37,6 +88,12 @@ public class Main {
         // Initialize services
         initializeServices();
         
+        // Non-interactive command: import-roster <file>
+        if (args.length == 2 && "import-roster".equals(args[0])) {
+            importRoster(args[1]);
+            return;
+        }
+        
         // Start the console menu
         showMainMenu();
         
@@ -61,9 +118,18 @@ public class Main {
             examDAO = new ExamDAO();
             examDAO.initializeTable();
             
+            taskPoolDAO = new TaskPoolDAO();
+            taskPoolDAO.initializeTable();
+            
+            examAttemptDAO = new ExamAttemptDAO();
+            examAttemptDAO.initializeTable();
+            
             answerDAO = new AnswerDAO();
             answerDAO.initializeTable();
             
+            answerDraftDAO = new AnswerDraftDAO();
+            answerDraftDAO.initializeTable();
+            
             System.out.println("Database initialization complete.");
         } catch (Exception e) {
             logger.error("Error initializing database", e);
@@ -77,7 +143,48 @@ public class Main {
         
         try {
             NutzerKontoDAO nutzerKontoDAO = new NutzerKontoDAO();
-            authService = new AuthenticationService(nutzerKontoDAO);
+            
+            // Sessions are only persisted when failover is requested
+            SessionDAO sessionDAO = null;
+            if (Boolean.getBoolean("klasurapp.sessions.persistent")) {
+                sessionDAO = new SessionDAO();
+                sessionDAO.initializeTable();
+            }
+            SessionManager sessionManager = new SessionManager(
+                    Duration.ofHours(8), Duration.ofMinutes(30), sessionDAO);
+            
+            AvailabilityIndex availabilityIndex = new AvailabilityIndex(nutzerKontoDAO, new NutzerDAO());
+            availabilityIndex.build();
+            
+            PasswordHasher passwordHasher = new PasswordHasher();
+            bulkProvisioningService = new BulkProvisioningService(nutzerKontoDAO, availabilityIndex, passwordHasher);
+            
+            authService = new AuthenticationService(nutzerKontoDAO,
+                    new LastLoginTracker(nutzerKontoDAO), sessionManager, passwordHasher,
+                    new LoginRateLimiter(5, 5, 100_000), new LoginRateLimiter(30, 30, 100_000),
+                    availabilityIndex);
+            Runtime.getRuntime().addShutdownHook(new Thread(authService::shutdown));
+            
+            examGenerator = new ExamGenerator(taskDAO, examDAO);
+            examVariantGenerator = new ExamVariantGenerator(examGenerator, taskDAO, examDAO);
+            taskPoolService = new TaskPoolService(taskPoolDAO, taskDAO);
+            examSnapshotService = new ExamSnapshotService(examDAO);
+            answerDraftStore = new AnswerDraftStore(answerDraftDAO);
+            submissionJournal = new SubmissionJournal(
+                Paths.get(System.getProperty("klasurapp.journal.dir", "journal")), answerDAO, examAttemptDAO);
+            answerSubmissionService = new AnswerSubmissionService(answerDAO, submissionJournal);
+            closedAnswerGradingService = new ClosedAnswerGradingService(answerDAO, taskDAO);
+            examSessionEngine = new ExamSessionEngine(answerDAO, examAttemptDAO, answerDraftStore,
+                submissionJournal);
+            resumeOpenAttempts();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                examSessionEngine.close();
+                answerDraftStore.close();
+                submissionJournal.close();
+                taskPoolService.close();
+                examVariantGenerator.close();
+            }));
+            createPdfRenderers();
             
             System.out.println("Services initialization complete.");
         } catch (Exception e) {
@@ -87,6 +194,53 @@ public class Main {
         }
     }
 
+    /**
+     * Standard fonts unless a TrueType font is configured with -Dklasurapp.pdf.font
+     * (and optionally .bold and .italic); a logo can be set with -Dklasurapp.pdf.logo.
+     */
+    private static void createPdfRenderers() throws IOException {
+        PdfFonts fonts = PdfFonts.standard();
+        String font = System.getProperty("klasurapp.pdf.font");
+        if (font != null) {
+            String bold = System.getProperty("klasurapp.pdf.font.bold");
+            String italic = System.getProperty("klasurapp.pdf.font.italic");
+            fonts = PdfFonts.embedded(Paths.get(font), bold != null ? Paths.get(bold) : null,
+                italic != null ? Paths.get(italic) : null);
+        }
+        String logo = System.getProperty("klasurapp.pdf.logo");
+        byte[] logoBytes = logo != null ? Files.readAllBytes(Paths.get(logo)) : null;
+        examPdfRenderer = new ExamPdfRenderer(fonts, logoBytes);
+        answerKeyRenderer = new AnswerKeyRenderer(fonts, logoBytes);
+    }
+
+    /**
+     * Continue the attempts that were running when the application stopped, with their
+     * saved drafts and the time they have left. Attempts whose time ran out meanwhile
+     * are submitted at their deadline.
+     */
+    private static void resumeOpenAttempts() {
+        int resumed = 0;
+        for (ExamAttempt attempt : examAttemptDAO.findUnsubmitted()) {
+            // Submitted before the stop, only not replayed from the journal yet
+            if (submissionJournal.isPending(attempt.getId())) {
+                continue;
+            }
+            Duration remaining = Duration.ZERO;
+            Optional<Exam> exam = examSnapshotService.findForDelivery(attempt.getExamId());
+            if (exam.isPresent()) {
+                int minutes = exam.get().getDurationMinutes();
+                remaining = minutes > 0
+                    ? Duration.between(LocalDateTime.now(), attempt.getStartedAt().plusMinutes(minutes))
+                    : null;
+            }
+            examSessionEngine.resume(attempt, remaining);
+            resumed++;
+        }
+        if (resumed > 0) {
+            logger.info("Resumed {} unfinished exam attempts", resumed);
+        }
+    }
+
     // Main menu navigation
     private static void showMainMenu() {
         boolean exit = false;
@@ -125,7 +279,9 @@ public class Main {
         System.out.print("Password: ");
         String password = scanner.nextLine().trim();
         
-        if (authService.login(username, password)) {
+        Optional<String> token = authService.login(username, password);
+        if (token.isPresent()) {
+            sessionToken = token.get();
             System.out.println("Login successful!");
             showUserMenu();
         } else {
@@ -162,16 +318,22 @@ public class Main {
         if (authService.register(konto, password)) {
             System.out.println("Registration successful! You can now login.");
         } else {
-            System.out.println("Registration failed. Username may already exist.");
+            System.out.println("Registration failed. Username or email may already exist.");
         }
     }
     
     private static void showUserMenu() {
-        NutzerKonto currentUser = authService.getCurrentUser();
+        NutzerKonto currentUser = getCurrentUser();
         String userRole = currentUser.getNutzer().getRolle();
         boolean logout = false;
         
         while (!logout) {
+            if (!authService.isLoggedIn(sessionToken)) {
+                System.out.println("Your session has expired. Please log in again.");
+                sessionToken = null;
+                return;
+            }
+            
             System.out.println("\n===== USER MENU =====");
             System.out.println("Logged in as: " + currentUser.getNutzer().getVollerName() + 
                                " (" + userRole + ")");
@@ -185,6 +347,12 @@ public class Main {
             }
             
             System.out.println("5. Delete Account");
+            
+            if ("ADMIN".equalsIgnoreCase(userRole)) {
+                System.out.println("6. Import Accounts from Roster");
+            }
+            
+            System.out.println("7. Take Exam");
             System.out.println("9. Logout");
             System.out.println("0. Exit");
             
@@ -212,8 +380,20 @@ public class Main {
                     deleteCurrentAccount();
                     logout = true;
                     break;
+                case "6":
+                    if ("ADMIN".equalsIgnoreCase(userRole)) {
+                        System.out.print("Roster file: ");
+                        importRoster(scanner.nextLine().trim());
+                    } else {
+                        System.out.println("Invalid option. Please try again.");
+                    }
+                    break;
+                case "7":
+                    takeExam();
+                    break;
                 case "9":
-                    authService.logout();
+                    authService.logout(sessionToken);
+                    sessionToken = null;
                     logout = true;
                     System.out.println("Logged out successfully.");
                     break;
@@ -228,16 +408,15 @@ public class Main {
     }
     
     private static void deleteCurrentAccount() {
-        NutzerKonto currentUser = authService.getCurrentUser();
+        NutzerKonto currentUser = getCurrentUser();
         System.out.print("Möchtest du dein Konto wirklich löschen? (j/n): ");
         String confirm = scanner.nextLine().trim().toLowerCase();
         if ("j".equals(confirm) || "ja".equals(confirm)) {
-            // Delete account using a new instance of NutzerKontoDAO
-            NutzerKontoDAO kontoDAO = new NutzerKontoDAO();
-            boolean success = kontoDAO.delete(currentUser.getId());
+            // Deleting the account also ends its sessions
+            boolean success = authService.deleteAccount(currentUser.getId());
             if (success) {
                 System.out.println("Dein Konto wurde erfolgreich gelöscht.");
-                authService.logout();
+                sessionToken = null;
             } else {
                 System.out.println("Konto konnte nicht gelöscht werden.");
             }
@@ -256,6 +435,9 @@ public class Main {
         }
         
         System.out.println("\n===== MANAGE ACCOUNTS =====");
+        System.out.println("Login limiter (usernames): " + authService.getUsernameLimiterStats());
+        System.out.println("Login limiter (clients): " + authService.getClientLimiterStats());
+        System.out.println("Availability index: " + authService.getAvailabilityStats());
         System.out.println("ID\tUsername\tEmail\tRole");
         for (NutzerKonto account : accounts) {
             System.out.printf("%d\t%s\t%s\t%s\n", 
@@ -276,7 +458,7 @@ public class Main {
             System.out.print("Are you sure you want to delete this account? (y/n): ");
             String confirm = scanner.nextLine().trim().toLowerCase();
             if ("y".equals(confirm) || "yes".equals(confirm)) {
-                boolean success = kontoDAO.delete(accountId);
+                boolean success = authService.deleteAccount(accountId);
                 if (success) {
                     System.out.println("Account deleted successfully.");
                 } else {
@@ -290,6 +472,31 @@ public class Main {
         }
     }
 
+    private static void importRoster(String file) {
+        Path roster = Paths.get(file);
+        try {
+            List<BulkProvisioningService.Result> results = bulkProvisioningService.provision(roster);
+            Path report = roster.resolveSibling(roster.getFileName() + ".report.csv");
+            bulkProvisioningService.writeReport(results, report);
+            
+            System.out.println("Line\tUsername\tStatus\tMessage");
+            for (BulkProvisioningService.Result result : results) {
+                System.out.printf("%d\t%s\t%s\t%s\n",
+                    result.getLineNumber(),
+                    result.getBenutzername(),
+                    result.getStatus(),
+                    result.getMessage() != null ? result.getMessage() : "-");
+            }
+            System.out.println("Report written to: " + report);
+        } catch (IOException e) {
+            System.out.println("Error reading roster: " + e.getMessage());
+            logger.error("Error reading roster", e);
+        } catch (Exception e) {
+            System.out.println("Error importing accounts: " + e.getMessage());
+            logger.error("Error importing accounts", e);
+        }
+    }
+
     // Module management menu
     private static void showModuleMenu() {
         boolean back = false;
@@ -457,6 +664,7 @@ public class Main {
             System.out.println("3. Create closed task");
             System.out.println("4. Update task");
             System.out.println("5. Delete task");
+            System.out.println("6. Manage task pools");
             System.out.println("9. Back to main menu");
             
             System.out.print("Select an option: ");
@@ -478,6 +686,9 @@ public class Main {
                 case "5":
                     deleteTask();
                     break;
+                case "6":
+                    manageTaskPools();
+                    break;
                 case "9":
                     back = true;
                     break;
@@ -520,6 +731,111 @@ public class Main {
         }
     }
     
+    private static void manageTaskPools() {
+        System.out.println("\n===== TASK POOLS =====");
+        Module module = selectModule();
+        if (module == null) return;
+        
+        List<TaskPool> pools = taskPoolDAO.findByModule(module.getId());
+        if (pools.isEmpty()) {
+            System.out.println("No pools for this module.");
+        } else {
+            System.out.println("ID\tName\tBloom Level\tTasks\tAuto");
+            for (TaskPool pool : pools) {
+                System.out.printf("%d\t%s\t%s\t%d\t%s\n",
+                    pool.getId(),
+                    pool.getName(),
+                    pool.getBloomLevel() != null ? pool.getBloomLevel().getName() : "any",
+                    taskPoolService.poolSize(pool.getId()),
+                    pool.isAutoInclude() ? "yes" : "no");
+            }
+        }
+        
+        System.out.println("1. Create pool");
+        System.out.println("2. Add task to pool");
+        System.out.println("3. Add pool slot to exam");
+        System.out.println("9. Back");
+        System.out.print("Select an option: ");
+        String choice = scanner.nextLine().trim();
+        
+        try {
+            switch (choice) {
+                case "1": {
+                    System.out.print("Pool name: ");
+                    TaskPool pool = new TaskPool(scanner.nextLine().trim(), module.getId());
+                    
+                    System.out.print("Restrict to one Bloom level? (y/n): ");
+                    if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                        pool.setBloomLevel(selectBloomLevel());
+                    }
+                    
+                    System.out.print("Add new tasks of the module automatically? (y/n): ");
+                    pool.setAutoInclude(scanner.nextLine().trim().equalsIgnoreCase("y"));
+                    
+                    System.out.print("Prefer tasks that were answered less often? (Y/n): ");
+                    pool.setFavorLowExposure(!scanner.nextLine().trim().equalsIgnoreCase("n"));
+                    
+                    System.out.print("Add the matching existing tasks now? (y/n): ");
+                    boolean includeExisting = scanner.nextLine().trim().equalsIgnoreCase("y");
+                    
+                    pool = taskPoolService.createPool(pool, includeExisting);
+                    System.out.println("Pool created with ID: " + pool.getId()
+                        + " (" + taskPoolService.poolSize(pool.getId()) + " tasks)");
+                    break;
+                }
+                case "2": {
+                    System.out.print("Pool ID: ");
+                    Optional<TaskPool> pool = taskPoolDAO.findById(Long.parseLong(scanner.nextLine().trim()));
+                    if (!pool.isPresent()) {
+                        System.out.println("Pool not found.");
+                        break;
+                    }
+                    
+                    System.out.print("Task ID: ");
+                    long taskId = Long.parseLong(scanner.nextLine().trim());
+                    
+                    System.out.print("Weight [1.0]: ");
+                    String weightStr = scanner.nextLine().trim();
+                    double weight = weightStr.isEmpty() ? 1.0 : Double.parseDouble(weightStr);
+                    
+                    taskPoolService.addTask(pool.get(), taskId, weight);
+                    System.out.println("Task added to pool.");
+                    break;
+                }
+                case "3": {
+                    for (Exam exam : examDAO.findByModule(module.getId())) {
+                        System.out.printf("%d\t%s\n", exam.getId(), exam.getTitle());
+                    }
+                    System.out.print("Exam ID: ");
+                    long examId = Long.parseLong(scanner.nextLine().trim());
+                    
+                    System.out.print("Pool ID: ");
+                    long poolId = Long.parseLong(scanner.nextLine().trim());
+                    
+                    System.out.print("Number of tasks to draw per student: ");
+                    int count = Integer.parseInt(scanner.nextLine().trim());
+                    if (count < 1) {
+                        System.out.println("Count must be at least 1.");
+                        break;
+                    }
+                    
+                    taskPoolDAO.addSlot(new ExamPoolSlot(examId, poolId, count));
+                    System.out.println("Slot added. Each student draws " + count + " task(s) from the pool.");
+                    break;
+                }
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Error managing task pools: " + e.getMessage());
+            logger.error("Error managing task pools", e);
+        }
+    }
+    
     private static void createOpenTask() {
         System.out.println("\n===== CREATE OPEN TASK =====");
         
@@ -769,6 +1085,13 @@ public class Main {
             System.out.println("3. Create new exam");
             System.out.println("4. Update exam");
             System.out.println("5. Delete exam");
+            System.out.println("6. Generate exam automatically");
+            System.out.println("7. Generate parallel versions (groups B, C, ...)");
+            System.out.println("8. Shuffle tasks and options per student");
+            System.out.println("10. Export exam as PDF");
+            System.out.println("11. Print personalised copies (ZIP)");
+            System.out.println("12. Export answer keys (exam and variants)");
+            System.out.println("13. Publish exam (freeze tasks)");
             System.out.println("9. Back to main menu");
             
             System.out.print("Select an option: ");
@@ -790,6 +1113,27 @@ public class Main {
                 case "5":
                     deleteExam();
                     break;
+                case "6":
+                    generateExam();
+                    break;
+                case "7":
+                    generateExamVariants();
+                    break;
+                case "8":
+                    toggleExamShuffling();
+                    break;
+                case "10":
+                    exportExamPdf();
+                    break;
+                case "11":
+                    printExamCopies();
+                    break;
+                case "12":
+                    exportAnswerKeys();
+                    break;
+                case "13":
+                    publishExam();
+                    break;
                 case "9":
                     back = true;
                     break;
@@ -932,6 +1276,454 @@ public class Main {
         }
     }
     
+    private static void generateExam() {
+        System.out.println("\n===== GENERATE EXAM =====");
+        
+        Module module = selectModule();
+        if (module == null) return;
+        
+        try {
+            System.out.print("Exam title: ");
+            String title = scanner.nextLine().trim();
+            
+            System.out.print("Exam date (YYYY-MM-DD, empty for none): ");
+            String dateStr = scanner.nextLine().trim();
+            LocalDate examDate = dateStr.isEmpty() ? null : LocalDate.parse(dateStr, DateTimeFormatter.ISO_LOCAL_DATE);
+            
+            System.out.print("Duration in minutes: ");
+            int duration = Integer.parseInt(scanner.nextLine().trim());
+            ExamGenerator.Request request = new ExamGenerator.Request(duration);
+            
+            System.out.print("Bloom distribution (e.g. REMEMBER=20,APPLY=50,ANALYZE=30, empty for any): ");
+            String distribution = scanner.nextLine().trim();
+            if (!distribution.isEmpty()) {
+                for (String part : distribution.split(",")) {
+                    String[] levelAndWeight = part.split("=");
+                    request.setBloomWeight(BloomLevel.valueOf(levelAndWeight[0].trim().toUpperCase()),
+                            Double.parseDouble(levelAndWeight[1].trim()));
+                }
+            }
+            
+            System.out.print("Share of open tasks in percent (empty for any): ");
+            String openShare = scanner.nextLine().trim();
+            if (!openShare.isEmpty()) {
+                request.setOpenShare(Double.parseDouble(openShare) / 100.0);
+            }
+            
+            System.out.print("Exclude tasks used in the last N exams of this module (0 for none): ");
+            String lastExams = scanner.nextLine().trim();
+            request.setExcludeLastExams(lastExams.isEmpty() ? 0 : Integer.parseInt(lastExams));
+            
+            ExamGenerator.Result result = examGenerator.generate(module, request);
+            if (result.getTasks().isEmpty()) {
+                System.out.println("No suitable tasks found for these constraints.");
+                return;
+            }
+            
+            System.out.println("Selected tasks:");
+            System.out.println("ID\tName\tType\tBloom Level\tTime");
+            for (Task task : result.getTasks()) {
+                System.out.printf("%d\t%s\t%s\t%s\t%d min\n",
+                    task.getId(),
+                    task.getName(),
+                    task instanceof OpenTask ? "Open" : "Closed",
+                    task.getBloomLevel().getName(),
+                    task.getEstimatedTimeMinutes());
+            }
+            System.out.printf("Total: %d of %d minutes (open: %d min), %d candidates, %d excluded, %s in %d ms\n",
+                result.getTotalMinutes(), duration, result.getOpenMinutes(), result.getCandidates(),
+                result.getExcluded(), result.isExact() ? "optimal" : "heuristic", result.getElapsedMillis());
+            System.out.println("Minutes per Bloom level: " + result.getMinutesPerLevel());
+            
+            System.out.print("Save this exam? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("Exam discarded.");
+                return;
+            }
+            
+            Exam exam = new Exam(title, module);
+            exam.setExamDate(examDate);
+            exam.setDurationMinutes(duration);
+            exam.setTasks(result.getTasks());
+            exam = examDAO.create(exam);
+            System.out.println("Exam created successfully with ID: " + exam.getId());
+        } catch (NumberFormatException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown Bloom level: " + e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Error generating exam: " + e.getMessage());
+            logger.error("Error generating exam", e);
+        }
+    }
+    
+    private static void generateExamVariants() {
+        System.out.println("\n===== GENERATE PARALLEL VERSIONS =====");
+        listAllExams();
+        
+        try {
+            System.out.print("Enter the ID of the exam to use as group A: ");
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            Optional<Exam> parentOpt = examDAO.findById(examId);
+            if (!parentOpt.isPresent()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            System.out.print("Number of additional versions: ");
+            int count = Integer.parseInt(scanner.nextLine().trim());
+            
+            System.out.print("Seed (empty for random): ");
+            String seedStr = scanner.nextLine().trim();
+            long seed = seedStr.isEmpty() ? System.currentTimeMillis() : Long.parseLong(seedStr);
+            
+            Exam parent = parentOpt.get();
+            List<Exam> variants = examVariantGenerator.createVariants(parent, count, seed);
+            
+            System.out.printf("A\t%d min\t%s (exam %d)\n", parent.getTotalEstimatedTime(),
+                ExamVariantGenerator.minutesPerLevel(parent.getTasks()), parent.getId());
+            for (Exam variant : variants) {
+                System.out.printf("%s\t%d min\t%s (exam %d)\n", variant.getVariantLabel(),
+                    variant.getTotalEstimatedTime(), ExamVariantGenerator.minutesPerLevel(variant.getTasks()),
+                    variant.getId());
+            }
+            System.out.println("Seed: " + seed);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Error generating versions: " + e.getMessage());
+            logger.error("Error generating exam versions", e);
+        }
+    }
+    
+    private static void toggleExamShuffling() {
+        System.out.println("\n===== SHUFFLE PER STUDENT =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            Optional<Exam> examOpt = examDAO.findById(examId);
+            if (!examOpt.isPresent()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            boolean enable = examOpt.get().getInstanceSeed() == null;
+            Long seed = enable ? new SecureRandom().nextLong() : null;
+            examDAO.updateInstanceSeed(examId, seed);
+            System.out.println(enable
+                ? "Each student now gets their own task and option order."
+                : "Shuffling disabled, all students get the same order.");
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (Exception e) {
+            System.out.println("Error updating exam: " + e.getMessage());
+            logger.error("Error updating exam shuffling", e);
+        }
+    }
+    
+    private static void exportExamPdf() {
+        System.out.println("\n===== EXPORT EXAM AS PDF =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            Optional<Exam> examOpt = examSnapshotService.findForDelivery(examId);
+            if (!examOpt.isPresent()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            System.out.print("Output file [exam-" + examId + ".pdf]: ");
+            String fileStr = scanner.nextLine().trim();
+            Path file = Paths.get(fileStr.isEmpty() ? "exam-" + examId + ".pdf" : fileStr);
+            
+            long start = System.nanoTime();
+            try (OutputStream out = Files.newOutputStream(file)) {
+                examPdfRenderer.render(examOpt.get(), out);
+            }
+            System.out.printf("Written %s (%d KB) in %d ms\n", file.toAbsolutePath(),
+                Files.size(file) / 1024, (System.nanoTime() - start) / 1_000_000);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (IOException e) {
+            System.out.println("Error writing PDF: " + e.getMessage());
+            logger.error("Error writing exam PDF", e);
+        } catch (Exception e) {
+            System.out.println("Error exporting exam: " + e.getMessage());
+            logger.error("Error exporting exam", e);
+        }
+    }
+    
+    private static void publishExam() {
+        System.out.println("\n===== PUBLISH EXAM =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            if (examSnapshotService.isPublished(examId)) {
+                System.out.println("Exam is already published.");
+                return;
+            }
+            
+            System.out.print("Published exams and their variants can no longer be changed. Publish? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            int published = examSnapshotService.publish(examId);
+            if (published == 0) {
+                System.out.println("Exam not found.");
+            } else {
+                System.out.println("Published " + published + " exam(s).");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (Exception e) {
+            System.out.println("Error publishing exam: " + e.getMessage());
+            logger.error("Error publishing exam", e);
+        }
+    }
+    
+    private static void exportAnswerKeys() {
+        System.out.println("\n===== EXPORT ANSWER KEYS =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            // The published snapshots, or the exam and all its variants with their tasks in one load
+            List<Exam> exams = examSnapshotService.findWithVariantsForDelivery(examId);
+            if (exams.isEmpty()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            System.out.print("Output file [exam-" + examId + "-keys.pdf]: ");
+            String fileStr = scanner.nextLine().trim();
+            Path file = Paths.get(fileStr.isEmpty() ? "exam-" + examId + "-keys.pdf" : fileStr);
+            
+            long start = System.nanoTime();
+            int pages;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                pages = answerKeyRenderer.render(exams, out);
+            }
+            System.out.printf("Written %s: %d versions, %d pages in %d ms\n", file.toAbsolutePath(),
+                exams.size(), pages, (System.nanoTime() - start) / 1_000_000);
+            
+            // Shuffled or pooled exams are numbered differently for every student
+            Exam exam = exams.get(0);
+            boolean personal = exam.getInstanceSeed() != null || taskPoolService.hasSlots(exam);
+            if (!personal) {
+                return;
+            }
+            System.out.print("The exam differs per student. Also write personal keys for all students? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            List<ExamInstance> instances = new ArrayList<>();
+            List<ExamCopy> copies = new ArrayList<>();
+            for (NutzerKonto konto : new NutzerKontoDAO().findAll()) {
+                Nutzer nutzer = konto.getNutzer();
+                if (!konto.isAktiv() || nutzer == null || !"STUDENT".equalsIgnoreCase(nutzer.getRolle())) {
+                    continue;
+                }
+                copies.add(new ExamCopy(konto.getId(), nutzer.getVorname() + " " + nutzer.getNachname(),
+                    String.valueOf(copies.size() + 1)));
+                instances.add(ExamInstance.of(taskPoolService.deliver(exam, konto.getId()), konto.getId()));
+            }
+            if (copies.isEmpty()) {
+                System.out.println("No active students found.");
+                return;
+            }
+            Path personalFile = file.resolveSibling(
+                file.getFileName().toString().replaceFirst("\\.pdf$", "") + "-personal.pdf");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(personalFile))) {
+                pages = answerKeyRenderer.render(instances, copies, out);
+            }
+            System.out.printf("Written %s: %d students, %d pages\n", personalFile.toAbsolutePath(),
+                copies.size(), pages);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (IOException e) {
+            System.out.println("Error writing PDF: " + e.getMessage());
+            logger.error("Error writing answer keys", e);
+        } catch (Exception e) {
+            System.out.println("Error exporting answer keys: " + e.getMessage());
+            logger.error("Error exporting answer keys", e);
+        }
+    }
+    
+    private static void printExamCopies() {
+        System.out.println("\n===== PRINT PERSONALISED COPIES =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            Optional<Exam> examOpt = examSnapshotService.findForDelivery(examId);
+            if (!examOpt.isPresent()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            // Every active student gets a copy, seats are numbered in list order
+            List<ExamCopy> copies = new ArrayList<>();
+            for (NutzerKonto konto : new NutzerKontoDAO().findAll()) {
+                Nutzer nutzer = konto.getNutzer();
+                if (!konto.isAktiv() || nutzer == null || !"STUDENT".equalsIgnoreCase(nutzer.getRolle())) {
+                    continue;
+                }
+                String name = nutzer.getVorname() + " " + nutzer.getNachname();
+                copies.add(new ExamCopy(konto.getId(), name, String.valueOf(copies.size() + 1)));
+            }
+            if (copies.isEmpty()) {
+                System.out.println("No active students found.");
+                return;
+            }
+            
+            System.out.print("Output file [exam-" + examId + "-copies.zip]: ");
+            String fileStr = scanner.nextLine().trim();
+            Path file = Paths.get(fileStr.isEmpty() ? "exam-" + examId + "-copies.zip" : fileStr);
+            
+            ExamPrintJob job = new ExamPrintJob(examPdfRenderer, taskPoolService, examOpt.get(), copies, file,
+                Runtime.getRuntime().availableProcessors());
+            System.out.print("Also write one merged print file? (y/n): ");
+            Path printFile = null;
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                printFile = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.zip$", "") + "-print.pdf");
+                job.setPrintFile(printFile);
+            }
+            job.setProgressListener((done, total) -> {
+                if (done == total || done % Math.max(1, total / 20) == 0) {
+                    System.out.printf("  %d / %d documents\n", done, total);
+                }
+            });
+            
+            AtomicReference<ExamPrintJob.Result> result = new AtomicReference<>();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread worker = new Thread(() -> {
+                try {
+                    result.set(job.call());
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }, "exam-print");
+            worker.start();
+            
+            System.out.println("Rendering " + copies.size() + " copies. Press Enter to cancel, or to continue when done.");
+            scanner.nextLine();
+            if (worker.isAlive()) {
+                job.cancel();
+            }
+            worker.join();
+            
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            ExamPrintJob.Result stats = result.get();
+            if (stats.isCancelled()) {
+                System.out.println("Cancelled after " + stats.getDocuments() + " documents, no archive written.");
+            } else {
+                System.out.printf("Written %s: %d documents, %d pages, %d KB in %d ms (%.1f documents/s)\n",
+                    file.toAbsolutePath(), stats.getDocuments(), stats.getPages(), stats.getBytes() / 1024,
+                    stats.getElapsedMillis(), stats.getDocumentsPerSecond());
+                System.out.printf("Average %d bytes per page\n", stats.getBytesPerPage());
+                if (printFile != null) {
+                    System.out.printf("Written %s: %d pages, %d KB\n", printFile.toAbsolutePath(),
+                        stats.getPrintFilePages(), stats.getPrintFileBytes() / 1024);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (Exception e) {
+            System.out.println("Error printing copies: " + e.getMessage());
+            logger.error("Error printing exam copies", e);
+        }
+    }
+    
+    private static void takeExam() {
+        System.out.println("\n===== TAKE EXAM =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            Optional<Exam> examOpt = examSnapshotService.findForDelivery(examId);
+            if (!examOpt.isPresent()) {
+                System.out.println("Exam not found.");
+                return;
+            }
+            
+            NutzerKonto currentUser = getCurrentUser();
+            // Pool slots are drawn per student before the order is shuffled
+            Exam delivered = taskPoolService.deliver(examOpt.get(), currentUser.getId());
+            ExamInstance instance = ExamInstance.of(delivered, currentUser.getId());
+            // The engine submits the attempt automatically when the exam's time runs out
+            Optional<ExamSessionEngine.Session> unfinished = examSessionEngine.findRunning(examId, currentUser.getId());
+            if (unfinished.isPresent()) {
+                System.out.println("Continuing your unfinished attempt. Leave an answer empty to keep the saved one.");
+            }
+            ExamSessionEngine.Session session = unfinished.isPresent()
+                ? unfinished.get()
+                : examSessionEngine.start(delivered, currentUser.getId());
+            long attemptId = session.getAttempt().getId();
+            
+            int number = 1;
+            for (Task task : instance.getTasks()) {
+                Optional<Duration> remaining = session.getRemaining();
+                if (remaining.isPresent()) {
+                    System.out.printf("\n[%d min %02d s left]", remaining.get().toMinutes(), remaining.get().toSecondsPart());
+                }
+                System.out.printf("\nTask %d: %s (%d min)\n", number++, task.getName(), task.getEstimatedTimeMinutes());
+                System.out.println(task.getText());
+                Optional<Answer> saved = session.getAnswer(task.getId());
+                if (saved.isPresent()) {
+                    String content = saved.get().getAnswerContent();
+                    System.out.println("Saved answer: " + (task instanceof ClosedTask
+                        ? instance.toDisplayedAnswer((ClosedTask) task, content) : content));
+                }
+                
+                Answer answer;
+                if (task instanceof ClosedTask) {
+                    ClosedTask closedTask = (ClosedTask) task;
+                    List<String> options = instance.getOptions(closedTask);
+                    for (int i = 0; i < options.size(); i++) {
+                        System.out.println((i + 1) + ". " + options.get(i));
+                    }
+                    System.out.print("Your answer (empty to skip): ");
+                    String input = scanner.nextLine().trim();
+                    if (input.isEmpty()) continue;
+                    
+                    // Store the answer in the original option order so the key still applies
+                    answer = new ClosedAnswer(task.getId(), currentUser.getId(),
+                        instance.toOriginalAnswer(closedTask, input));
+                } else {
+                    System.out.print("Your answer (empty to skip): ");
+                    String input = scanner.nextLine().trim();
+                    if (input.isEmpty()) continue;
+                    
+                    answer = new OpenAnswer(task.getId(), currentUser.getId(), input);
+                }
+                if (!examSessionEngine.answer(attemptId, answer)) {
+                    System.out.println("\nTime is up. Your answers up to here were submitted.");
+                    break;
+                }
+            }
+            examSessionEngine.submit(attemptId).join();
+            System.out.println("\nExam submitted.");
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (Exception e) {
+            System.out.println("Error taking exam: " + e.getMessage());
+            logger.error("Error taking exam", e);
+        }
+    }
+    
     private static void updateExam() {
         System.out.println("\n===== UPDATE EXAM =====");
         listAllExams();
@@ -1076,6 +1868,8 @@ public class Main {
             System.out.println("1. Show answers for a task");
             System.out.println("2. Grade an answer");
             System.out.println("3. Submit answer to a task");
+            System.out.println("4. Show answers for an exam");
+            System.out.println("5. Auto-grade closed answers");
             System.out.println("9. Back to main menu");
             
             System.out.print("Select an option: ");
@@ -1091,6 +1885,12 @@ public class Main {
                 case "3":
                     submitAnswer();
                     break;
+                case "4":
+                    showAnswersForExam();
+                    break;
+                case "5":
+                    autoGradeClosedAnswers();
+                    break;
                 case "9":
                     back = true;
                     break;
@@ -1127,6 +1927,108 @@ public class Main {
         }
     }
     
+    private static void showAnswersForExam() {
+        System.out.println("\n===== ANSWERS FOR EXAM =====");
+        listAllExams();
+        
+        System.out.print("Enter the exam ID: ");
+        try {
+            long examId = Long.parseLong(scanner.nextLine().trim());
+            List<ExamAttempt> attempts = examAttemptDAO.findByExam(examId);
+            if (attempts.isEmpty()) {
+                System.out.println("No attempts found for this exam.");
+                return;
+            }
+            
+            // All answers of the exam in one query, grouped by attempt
+            Map<Long, List<Answer>> answersByAttempt = new HashMap<>();
+            for (Answer answer : answerDAO.findByExam(examId)) {
+                answersByAttempt.computeIfAbsent(answer.getAttemptId(), id -> new ArrayList<>()).add(answer);
+            }
+            
+            for (ExamAttempt attempt : attempts) {
+                List<Answer> answers = answersByAttempt.getOrDefault(attempt.getId(), Collections.emptyList());
+                System.out.printf("\nAttempt %d, user %d, started %s, %s\n", attempt.getId(), attempt.getUserId(),
+                    attempt.getStartedAt(), attempt.isSubmitted() ? "submitted " + attempt.getSubmittedAt() : "running");
+                System.out.println("ID\tTask ID\tGraded\tScore\tContent");
+                for (Answer answer : answers) {
+                    System.out.printf("%d\t%d\t%s\t%s\t%s\n",
+                        answer.getId(),
+                        answer.getTaskId(),
+                        answer.isGraded() ? "Yes" : "No",
+                        answer.getScore() != null ? answer.getScore().toString() : "-",
+                        answer.getAnswerContent().length() > 30 ?
+                            answer.getAnswerContent().substring(0, 30) + "..." :
+                            answer.getAnswerContent());
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        }
+    }
+    
+    private static void autoGradeClosedAnswers() {
+        System.out.println("\n===== AUTO-GRADE CLOSED ANSWERS =====");
+        System.out.println("Grade the ungraded closed answers of: 1. a task  2. an exam  3. a module");
+        System.out.print("Select an option: ");
+        String choice = scanner.nextLine().trim();
+        System.out.print("Give partial credit? (y/n) [y]: ");
+        // Partial credit scores each distinct selection once; exact match is one statement in the database
+        boolean partialCredit = !scanner.nextLine().trim().equalsIgnoreCase("n");
+        
+        try {
+            List<GradingResult> results;
+            switch (choice) {
+                case "1":
+                    System.out.print("Enter the task ID: ");
+                    long taskId = Long.parseLong(scanner.nextLine().trim());
+                    results = partialCredit
+                        ? closedAnswerGradingService.gradeTask(taskId)
+                        : answerDAO.gradeClosedAnswersForTask(taskId);
+                    break;
+                case "2":
+                    listAllExams();
+                    System.out.print("Enter the exam ID (its variants are included): ");
+                    long examId = Long.parseLong(scanner.nextLine().trim());
+                    results = partialCredit
+                        ? closedAnswerGradingService.gradeExam(examId)
+                        : answerDAO.gradeClosedAnswersForExam(examId);
+                    break;
+                case "3":
+                    listAllModules();
+                    System.out.print("Enter the module ID: ");
+                    long moduleId = Long.parseLong(scanner.nextLine().trim());
+                    results = partialCredit
+                        ? closedAnswerGradingService.gradeModule(moduleId)
+                        : answerDAO.gradeClosedAnswersForModule(moduleId);
+                    break;
+                default:
+                    System.out.println("Invalid option.");
+                    return;
+            }
+            
+            if (results.isEmpty()) {
+                System.out.println("No ungraded closed answers found.");
+                return;
+            }
+            
+            int graded = 0;
+            int correct = 0;
+            System.out.println("Task ID\tGraded\tCorrect");
+            for (GradingResult result : results) {
+                System.out.printf("%d\t%d\t%d\n", result.getTaskId(), result.getGraded(), result.getCorrect());
+                graded += result.getGraded();
+                correct += result.getCorrect();
+            }
+            System.out.printf("%d answers graded, %d correct.\n", graded, correct);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID format.");
+        } catch (Exception e) {
+            System.out.println("Error grading answers: " + e.getMessage());
+            logger.error("Error grading answers", e);
+        }
+    }
+    
     private static void gradeAnswer() {
         System.out.println("\n===== GRADE ANSWER =====");
         
@@ -1158,7 +2060,9 @@ public class Main {
             
             if (answer instanceof ClosedAnswer) {
                 boolean isCorrect = answer.isCorrect(task);
-                System.out.println("Auto-evaluation: " + (isCorrect ? "CORRECT" : "INCORRECT"));
+                double credit = ((ClosedAnswer) answer).getCredit(task);
+                System.out.println("Auto-evaluation: " + (isCorrect ? "CORRECT" : "INCORRECT")
+                        + String.format(" (suggested score %.1f)", credit * 100.0));
             }
             
             System.out.print("Enter score (0.0-100.0): ");
@@ -1188,7 +2092,7 @@ public class Main {
         Task task = selectTask();
         if (task == null) return;
         
-        NutzerKonto currentUser = authService.getCurrentUser();
+        NutzerKonto currentUser = getCurrentUser();
         
         if (task instanceof OpenTask) {
             System.out.print("Enter your answer text: ");
@@ -1199,13 +2103,7 @@ public class Main {
             answer.setUserId(currentUser.getId());
             answer.setText(text);
             
-            try {
-                answerDAO.create(answer);
-                System.out.println("Answer submitted successfully.");
-            } catch (Exception e) {
-                System.out.println("Error submitting answer: " + e.getMessage());
-                logger.error("Error submitting answer", e);
-            }
+            submitWithRetry(answer);
         } else if (task instanceof ClosedTask) {
             ClosedTask closedTask = (ClosedTask) task;
             
@@ -1222,23 +2120,46 @@ public class Main {
             answer.setUserId(currentUser.getId());
             answer.setSelectedOption(selectedOption);
             
-            try {
-                answerDAO.create(answer);
-                System.out.println("Answer submitted successfully.");
-                
+            if (submitWithRetry(answer)) {
                 // Check if the answer is correct
                 if (answer.isCorrect(task)) {
                     System.out.println("Your answer is correct!");
+                } else if (answer.getCredit(task) > 0) {
+                    System.out.printf("Your answer is partly correct (%.0f%%).%n", answer.getCredit(task) * 100.0);
                 } else {
                     System.out.println("Your answer is incorrect.");
                 }
+            }
+        }
+    }
+    
+    /**
+     * Submit an answer, offering to retry on failure. Retries keep the answer's
+     * submission key, so an answer that was stored after all is not stored twice.
+     */
+    private static boolean submitWithRetry(Answer answer) {
+        while (true) {
+            try {
+                answerSubmissionService.submit(answer).join();
+                System.out.println("Answer submitted successfully.");
+                return true;
             } catch (Exception e) {
                 System.out.println("Error submitting answer: " + e.getMessage());
                 logger.error("Error submitting answer", e);
             }
+            
+            System.out.print("Retry? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return false;
+            }
         }
     }
     
+    private static NutzerKonto getCurrentUser() {
+        return authService.getUser(sessionToken)
+                .orElseThrow(() -> new IllegalStateException("No valid session"));
+    }
+    
     // Helper methods for selection
     private static Module selectModule() {
         listAllModules();
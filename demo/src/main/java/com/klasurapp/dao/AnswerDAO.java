@@ -2,7 +2,9 @@ package com.klasurapp.dao;
 
 import com.klasurapp.model.Task;
 import com.klasurapp.model.Answer;
+import com.klasurapp.model.AnswerGroup;
 import com.klasurapp.model.ClosedAnswer;
+import com.klasurapp.model.GradingResult;
 import com.klasurapp.model.OpenAnswer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,14 +12,36 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Data Access Object für Answer-Operationen.
  */
 public class AnswerDAO {
     private static final Logger logger = LoggerFactory.getLogger(AnswerDAO.class);
+    private static final String SELECT_ANSWERS =
+        "SELECT a.id, a.task_id, a.user_id, a.attempt_id, a.submission_key, a.submission_time, " +
+        "a.is_graded, a.score, a.feedback, a.answer_type, " +
+        "o.text, c.selected_option " +
+        "FROM answers a " +
+        "LEFT JOIN open_answers o ON a.id = o.answer_id " +
+        "LEFT JOIN closed_answers c ON a.id = c.answer_id ";
+    // Die Klausur-ID wird aus dem Versuch übernommen
+    private static final String INSERT_ANSWER =
+        "INSERT INTO answers (task_id, user_id, submission_time, is_graded, score, feedback, answer_type, " +
+        "attempt_id, exam_id, submission_key) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, (SELECT exam_id FROM exam_attempts WHERE id = ?), ?)";
+    // Punktzahl einer richtigen Antwort bei automatischer Bewertung
+    private static final double FULL_SCORE = 100.0;
+    // Auswahl der Antworten für die automatische Bewertung, mit Alias a für answers
+    private static final String TASK_CONDITION = "a.task_id = ?";
+    private static final String EXAM_CONDITION =
+        "a.exam_id IN (SELECT id FROM exams WHERE id = ? OR parent_exam_id = ?)";
+    private static final String MODULE_CONDITION = "a.task_id IN (SELECT id FROM tasks WHERE module_id = ?)";
     private final TaskDAO taskDAO;
 
     public AnswerDAO() {
@@ -26,6 +50,7 @@ public class AnswerDAO {
 
     /**
      * Erstellt die Datenbanktabellen für Antworten.
+     * Die Tabelle der Klausurversuche muss bereits existieren.
      */
     public void initializeTable() {
         try (Connection conn = DatabaseConnection.getConnection();
@@ -60,7 +85,26 @@ public class AnswerDAO {
                 "selected_option TEXT NOT NULL" +
                 ")"
             );
-            
+
+            // Für die Häufigkeit je Aufgabe (Gewichtung der Aufgabenpools)
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_answers_task ON answers(task_id)");
+
+            // Klausurversuch der Antwort; die Klausur-ID wird beim Einfügen aus dem Versuch
+            // übernommen, damit alle Antworten einer Klausur in einem Bereichs-Scan liegen.
+            // Antworten überleben das Löschen ihres Versuchs.
+            stmt.execute("ALTER TABLE answers ADD COLUMN IF NOT EXISTS " +
+                "attempt_id BIGINT REFERENCES exam_attempts(id) ON DELETE SET NULL");
+            stmt.execute("ALTER TABLE answers ADD COLUMN IF NOT EXISTS exam_id INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_answers_attempt ON answers(attempt_id, task_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_answers_exam ON answers(exam_id, attempt_id, task_id)");
+
+            // Schlüssel einer Abgabe; eine wiederholt eingespielte Abgabe wird nur einmal gespeichert
+            stmt.execute("ALTER TABLE answers ADD COLUMN IF NOT EXISTS submission_key UUID");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_answers_submission_key ON answers(submission_key)");
+
+            // Nur unbewertete Antworten, für die automatische Bewertung
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_answers_ungraded ON answers(task_id) WHERE NOT is_graded");
+
             logger.info("Antwort-Tabellen initialisiert");
         } catch (SQLException e) {
             logger.error("Fehler beim Initialisieren der Antwort-Tabellen", e);
@@ -69,6 +113,10 @@ public class AnswerDAO {
 
     /**
      * Speichert eine Antwort in der Datenbank.
+     * <p>
+     * Hat die Antwort einen Abgabeschlüssel, der schon gespeichert ist, z.B. weil der
+     * Client nach einer Zeitüberschreitung erneut sendet, wird keine zweite Zeile angelegt;
+     * die Antwort erhält die ID der vorhandenen Zeile.
      */
     public Answer create(Answer answer) {
         try (Connection conn = DatabaseConnection.getConnection()) {
@@ -76,6 +124,12 @@ public class AnswerDAO {
             
             try {
                 Long answerId = insertBaseAnswer(conn, answer);
+                if (answerId == null) {
+                    answer.setId(findIdBySubmissionKey(conn, answer.getSubmissionKey()));
+                    conn.commit();
+                    logger.info("Abgabe bereits gespeichert als Antwort ID: {}", answer.getId());
+                    return answer;
+                }
                 answer.setId(answerId);
                 
                 if (answer instanceof OpenAnswer) {
@@ -100,18 +154,187 @@ public class AnswerDAO {
         }
     }
     
+    /**
+     * Speichert viele Antworten in einer Transaktion mit drei Batch-Anweisungen,
+     * z.B. die Antworten aller zur selben Zeit abgelaufenen Klausurversuche.
+     * 
+     * @param answers Die zu speichernden Antworten; erhalten ihre generierten IDs
+     * @return Die Antworten
+     */
+    public List<Answer> createBatch(List<Answer> answers) {
+        if (answers.isEmpty()) {
+            return answers;
+        }
+        
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_ANSWER, new String[] {"id"})) {
+                    for (Answer answer : answers) {
+                        bindBaseAnswer(stmt, answer);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    
+                    // Die generierten Schlüssel kommen in der Reihenfolge des Batches
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        for (Answer answer : answers) {
+                            if (!generatedKeys.next()) {
+                                throw new SQLException("Erstellen der Antworten fehlgeschlagen, keine ID erhalten.");
+                            }
+                            answer.setId(generatedKeys.getLong(1));
+                        }
+                    }
+                }
+                
+                try (PreparedStatement open = conn.prepareStatement(
+                        "INSERT INTO open_answers (answer_id, text) VALUES (?, ?)");
+                     PreparedStatement closed = conn.prepareStatement(
+                        "INSERT INTO closed_answers (answer_id, selected_option) VALUES (?, ?)")) {
+                    
+                    for (Answer answer : answers) {
+                        if (answer instanceof OpenAnswer) {
+                            open.setLong(1, answer.getId());
+                            open.setString(2, ((OpenAnswer) answer).getText());
+                            open.addBatch();
+                        } else if (answer instanceof ClosedAnswer) {
+                            closed.setLong(1, answer.getId());
+                            closed.setString(2, ((ClosedAnswer) answer).getSelectedOption());
+                            closed.addBatch();
+                        }
+                    }
+                    open.executeBatch();
+                    closed.executeBatch();
+                }
+                
+                conn.commit();
+                logger.info("{} Antworten erstellt", answers.size());
+                return answers;
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Answer answer : answers) {
+                    answer.setId(null);
+                }
+                logger.error("Fehler beim Erstellen der Antworten", e);
+                throw new RuntimeException("Fehler beim Erstellen der Antworten", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Datenbankverbindungsfehler", e);
+            throw new RuntimeException("Datenbankverbindungsfehler", e);
+        }
+    }
+    
+    /**
+     * Speichert Abgaben, deren Schlüssel noch nicht gespeichert ist, in einer Transaktion
+     * mit drei Batch-Anweisungen. Bereits gespeicherte Abgaben werden übersprungen, daher
+     * kann dieselbe Liste gefahrlos erneut eingespielt werden, z.B. aus einem Journal.
+     *
+     * @param answers Die Antworten, jede mit Abgabeschlüssel; bereits gespeicherte
+     *                erhalten die ID der vorhandenen Zeile
+     * @return Die neu gespeicherten Antworten mit ihren generierten IDs
+     */
+    public List<Answer> createIfAbsent(List<Answer> answers) {
+        if (answers.isEmpty()) {
+            return answers;
+        }
+
+        Map<UUID, Answer> byKey = new HashMap<>();
+        for (Answer answer : answers) {
+            if (answer.getSubmissionKey() == null) {
+                throw new IllegalArgumentException("Antwort ohne Abgabeschlüssel");
+            }
+            byKey.putIfAbsent(answer.getSubmissionKey(), answer);
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                List<Answer> created = new ArrayList<>();
+                // Nur eingefügte Zeilen liefern einen Schlüssel zurück
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_ANSWER +
+                        " ON CONFLICT (submission_key) DO NOTHING RETURNING id, submission_key",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    for (Answer answer : byKey.values()) {
+                        bindBaseAnswer(stmt, answer);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        while (generatedKeys.next()) {
+                            Answer answer = byKey.get(generatedKeys.getObject(2, UUID.class));
+                            answer.setId(generatedKeys.getLong(1));
+                            created.add(answer);
+                        }
+                    }
+                }
+
+                if (created.size() < byKey.size()) {
+                    Map<UUID, Answer> existing = new HashMap<>(byKey);
+                    for (Answer answer : created) {
+                        existing.remove(answer.getSubmissionKey());
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT id, submission_key FROM answers WHERE submission_key = ANY(?)")) {
+                        stmt.setArray(1, conn.createArrayOf("uuid", existing.keySet().toArray()));
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                existing.get(rs.getObject("submission_key", UUID.class)).setId(rs.getLong("id"));
+                            }
+                        }
+                    }
+                }
+
+                try (PreparedStatement open = conn.prepareStatement(
+                        "INSERT INTO open_answers (answer_id, text) VALUES (?, ?)");
+                     PreparedStatement closed = conn.prepareStatement(
+                        "INSERT INTO closed_answers (answer_id, selected_option) VALUES (?, ?)")) {
+
+                    for (Answer answer : created) {
+                        if (answer instanceof OpenAnswer) {
+                            open.setLong(1, answer.getId());
+                            open.setString(2, ((OpenAnswer) answer).getText());
+                            open.addBatch();
+                        } else if (answer instanceof ClosedAnswer) {
+                            closed.setLong(1, answer.getId());
+                            closed.setString(2, ((ClosedAnswer) answer).getSelectedOption());
+                            closed.addBatch();
+                        }
+                    }
+                    open.executeBatch();
+                    closed.executeBatch();
+                }
+
+                conn.commit();
+                logger.info("{} von {} Abgaben gespeichert", created.size(), byKey.size());
+                return created;
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Answer answer : answers) {
+                    answer.setId(null);
+                }
+                logger.error("Fehler beim Speichern der Abgaben", e);
+                throw new RuntimeException("Fehler beim Speichern der Abgaben", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Datenbankverbindungsfehler", e);
+            throw new RuntimeException("Datenbankverbindungsfehler", e);
+        }
+    }
+
     /**
      * Findet eine Antwort anhand ihrer ID.
      */
     public Optional<Answer> findById(Long id) {
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                "SELECT a.id, a.task_id, a.user_id, a.submission_time, " +
-                "a.is_graded, a.score, a.feedback, a.answer_type, " +
-                "o.text, c.selected_option " +
-                "FROM answers a " +
-                "LEFT JOIN open_answers o ON a.id = o.answer_id " +
-                "LEFT JOIN closed_answers c ON a.id = c.answer_id " +
+                SELECT_ANSWERS +
                 "WHERE a.id = ?")) {
             
             stmt.setLong(1, id);
@@ -137,12 +360,7 @@ public class AnswerDAO {
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                "SELECT a.id, a.task_id, a.user_id, a.submission_time, " +
-                "a.is_graded, a.score, a.feedback, a.answer_type, " +
-                "o.text, c.selected_option " +
-                "FROM answers a " +
-                "LEFT JOIN open_answers o ON a.id = o.answer_id " +
-                "LEFT JOIN closed_answers c ON a.id = c.answer_id " +
+                SELECT_ANSWERS +
                 "WHERE a.task_id = ? " +
                 "ORDER BY a.submission_time DESC")) {
             
@@ -168,12 +386,7 @@ public class AnswerDAO {
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                "SELECT a.id, a.task_id, a.user_id, a.submission_time, " +
-                "a.is_graded, a.score, a.feedback, a.answer_type, " +
-                "o.text, c.selected_option " +
-                "FROM answers a " +
-                "LEFT JOIN open_answers o ON a.id = o.answer_id " +
-                "LEFT JOIN closed_answers c ON a.id = c.answer_id " +
+                SELECT_ANSWERS +
                 "WHERE a.user_id = ? " +
                 "ORDER BY a.submission_time DESC")) {
             
@@ -191,6 +404,316 @@ public class AnswerDAO {
         return answers;
     }
     
+    /**
+     * Findet alle Antworten eines Klausurversuchs.
+     * 
+     * @param attemptId Die ID des Versuchs
+     * @return Die Antworten, nach Aufgabe sortiert
+     */
+    public List<Answer> findByAttempt(Long attemptId) {
+        List<Answer> answers = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                SELECT_ANSWERS +
+                "WHERE a.attempt_id = ? " +
+                "ORDER BY a.task_id, a.id")) {
+            
+            stmt.setLong(1, attemptId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    answers.add(mapResultSetToAnswer(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Antworten nach Klausurversuch", e);
+        }
+        
+        return answers;
+    }
+    
+    /**
+     * Findet alle in Versuchen einer Klausur gegebenen Antworten, ohne über die
+     * Aufgaben der Klausur zu gehen. Aufgaben, die auch in anderen Klausuren
+     * vorkommen, liefern nur die Antworten dieser Klausur.
+     * 
+     * @param examId Die Klausur-ID
+     * @return Die Antworten, nach Versuch und Aufgabe sortiert
+     */
+    public List<Answer> findByExam(Long examId) {
+        List<Answer> answers = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                SELECT_ANSWERS +
+                "WHERE a.exam_id = ? " +
+                "ORDER BY a.attempt_id, a.task_id, a.id")) {
+            
+            stmt.setLong(1, examId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    answers.add(mapResultSetToAnswer(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Antworten nach Klausur", e);
+        }
+        
+        return answers;
+    }
+    
+    /**
+     * Bewertet alle unbewerteten geschlossenen Antworten zu einer Aufgabe.
+     *
+     * @param taskId Die Aufgaben-ID
+     * @return Die Zahl bewerteter und richtiger Antworten
+     */
+    public List<GradingResult> gradeClosedAnswersForTask(Long taskId) {
+        return gradeClosedAnswers(TASK_CONDITION, taskId);
+    }
+
+    /**
+     * Bewertet alle unbewerteten geschlossenen Antworten aus Versuchen einer Klausur
+     * und ihrer Varianten.
+     *
+     * @param examId Die Klausur-ID
+     * @return Die Zahl bewerteter und richtiger Antworten je Aufgabe
+     */
+    public List<GradingResult> gradeClosedAnswersForExam(Long examId) {
+        return gradeClosedAnswers(EXAM_CONDITION, examId, examId);
+    }
+
+    /**
+     * Bewertet alle unbewerteten geschlossenen Antworten zu Aufgaben eines Moduls.
+     *
+     * @param moduleId Die Modul-ID
+     * @return Die Zahl bewerteter und richtiger Antworten je Aufgabe
+     */
+    public List<GradingResult> gradeClosedAnswersForModule(Long moduleId) {
+        return gradeClosedAnswers(MODULE_CONDITION, moduleId);
+    }
+
+    /**
+     * Bewertet unbewertete geschlossene Antworten in einer Anweisung: die gewählte Option
+     * wird als Text mit der Lösung der Aufgabe verglichen, richtige Antworten erhalten
+     * die volle Punktzahl, falsche 0. Teilpunkte wie bei {@link ClosedAnswer#getCredit}
+     * gibt es hier nicht. Es werden weder Antworten noch Aufgaben geladen.
+     *
+     * @param condition Die Auswahl der Antworten, mit Alias a für answers
+     * @param params Die Parameter der Auswahl
+     * @return Die Zahl bewerteter und richtiger Antworten je Aufgabe, nach Aufgabe sortiert
+     */
+    private List<GradingResult> gradeClosedAnswers(String condition, long... params) {
+        List<GradingResult> results = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "WITH graded AS (" +
+                "UPDATE answers a SET is_graded = TRUE, " +
+                "score = CASE WHEN c.selected_option = ct.correct_answer THEN ? ELSE 0 END " +
+                "FROM closed_answers c, closed_tasks ct " +
+                "WHERE c.answer_id = a.id AND ct.task_id = a.task_id AND NOT a.is_graded AND " + condition + " " +
+                "RETURNING a.task_id, a.score) " +
+                "SELECT task_id, COUNT(*) AS graded, COUNT(*) FILTER (WHERE score > 0) AS correct " +
+                "FROM graded GROUP BY task_id ORDER BY task_id")) {
+
+            stmt.setDouble(1, FULL_SCORE);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setLong(i + 2, params[i]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new GradingResult(rs.getLong("task_id"), rs.getInt("graded"), rs.getInt("correct")));
+                }
+            }
+
+            logger.info("Geschlossene Antworten zu {} Aufgaben bewertet", results.size());
+        } catch (SQLException e) {
+            logger.error("Fehler beim Bewerten der Antworten", e);
+            throw new RuntimeException("Fehler beim Bewerten der Antworten", e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Fasst die unbewerteten geschlossenen Antworten zu einer Aufgabe nach gewählter
+     * Option zusammen.
+     *
+     * @param taskId Die Aufgaben-ID
+     * @return Eine Gruppe je Aufgabe und unterschiedlicher Auswahl
+     */
+    public List<AnswerGroup> findUngradedClosedAnswerGroupsForTask(Long taskId) {
+        return findUngradedClosedAnswerGroups(TASK_CONDITION, taskId);
+    }
+
+    /**
+     * Fasst die unbewerteten geschlossenen Antworten aus Versuchen einer Klausur und
+     * ihrer Varianten nach Aufgabe und gewählter Option zusammen.
+     *
+     * @param examId Die Klausur-ID
+     * @return Eine Gruppe je Aufgabe und unterschiedlicher Auswahl
+     */
+    public List<AnswerGroup> findUngradedClosedAnswerGroupsForExam(Long examId) {
+        return findUngradedClosedAnswerGroups(EXAM_CONDITION, examId, examId);
+    }
+
+    /**
+     * Fasst die unbewerteten geschlossenen Antworten zu Aufgaben eines Moduls nach
+     * Aufgabe und gewählter Option zusammen.
+     *
+     * @param moduleId Die Modul-ID
+     * @return Eine Gruppe je Aufgabe und unterschiedlicher Auswahl
+     */
+    public List<AnswerGroup> findUngradedClosedAnswerGroupsForModule(Long moduleId) {
+        return findUngradedClosedAnswerGroups(MODULE_CONDITION, moduleId);
+    }
+
+    /**
+     * Zählt unbewertete geschlossene Antworten je Aufgabe und gewählter Option, ohne
+     * Leerzeichen am Rand. Bei geschlossenen Aufgaben wählen die meisten Prüflinge
+     * dieselben wenigen Optionen, es gibt also weit weniger Gruppen als Antworten.
+     *
+     * @param condition Die Auswahl der Antworten, mit Alias a für answers
+     * @param params Die Parameter der Auswahl
+     * @return Die Gruppen, nach Aufgabe sortiert
+     */
+    private List<AnswerGroup> findUngradedClosedAnswerGroups(String condition, long... params) {
+        List<AnswerGroup> groups = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT a.task_id, btrim(c.selected_option) AS selected_option, COUNT(*) AS answers " +
+                "FROM answers a JOIN closed_answers c ON c.answer_id = a.id " +
+                "WHERE NOT a.is_graded AND " + condition + " " +
+                "GROUP BY a.task_id, btrim(c.selected_option) ORDER BY a.task_id")) {
+
+            for (int i = 0; i < params.length; i++) {
+                stmt.setLong(i + 1, params[i]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    groups.add(new AnswerGroup(rs.getLong("task_id"), rs.getString("selected_option"),
+                        rs.getInt("answers")));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Gruppieren der Antworten", e);
+            throw new RuntimeException("Fehler beim Gruppieren der Antworten", e);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Speichert die bewerteten Gruppen aus
+     * {@link #findUngradedClosedAnswerGroupsForTask} in den Antworten zu der Aufgabe.
+     *
+     * @param groups Die bewerteten Gruppen
+     * @param taskId Die Aufgaben-ID
+     * @return Die Zahl bewerteter Antworten
+     */
+    public int gradeClosedAnswerGroupsForTask(List<AnswerGroup> groups, Long taskId) {
+        return gradeClosedAnswerGroups(groups, TASK_CONDITION, taskId);
+    }
+
+    /**
+     * Speichert die bewerteten Gruppen aus
+     * {@link #findUngradedClosedAnswerGroupsForExam} in den Antworten aus Versuchen der
+     * Klausur und ihrer Varianten; Antworten zu denselben Aufgaben aus anderen
+     * Klausuren bleiben unbewertet.
+     *
+     * @param groups Die bewerteten Gruppen
+     * @param examId Die Klausur-ID
+     * @return Die Zahl bewerteter Antworten
+     */
+    public int gradeClosedAnswerGroupsForExam(List<AnswerGroup> groups, Long examId) {
+        return gradeClosedAnswerGroups(groups, EXAM_CONDITION, examId, examId);
+    }
+
+    /**
+     * Speichert die bewerteten Gruppen aus
+     * {@link #findUngradedClosedAnswerGroupsForModule} in den Antworten zu Aufgaben des
+     * Moduls.
+     *
+     * @param groups Die bewerteten Gruppen
+     * @param moduleId Die Modul-ID
+     * @return Die Zahl bewerteter Antworten
+     */
+    public int gradeClosedAnswerGroupsForModule(List<AnswerGroup> groups, Long moduleId) {
+        return gradeClosedAnswerGroups(groups, MODULE_CONDITION, moduleId);
+    }
+
+    /**
+     * Speichert Punktzahl und Rückmeldung bewerteter Gruppen in allen noch unbewerteten
+     * Antworten der Gruppe, mit einer Anweisung je Gruppe in einer Transaktion. Es wird
+     * dieselbe Auswahl wie beim Gruppieren angewendet. Seit dem Gruppieren eingereichte
+     * Antworten mit derselben Auswahl werden mitbewertet, bereits anderweitig bewertete
+     * nicht. Die Anzahl jeder Gruppe wird daher auf die Zahl tatsächlich bewerteter
+     * Antworten gesetzt. Gruppen ohne Punktzahl werden übergangen.
+     *
+     * @param groups Die bewerteten Gruppen
+     * @param condition Die Auswahl der Antworten, mit Alias a für answers
+     * @param params Die Parameter der Auswahl
+     * @return Die Zahl bewerteter Antworten
+     */
+    private int gradeClosedAnswerGroups(List<AnswerGroup> groups, String condition, long... params) {
+        int graded = 0;
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE answers a SET is_graded = TRUE, score = ?, feedback = ? " +
+                "FROM closed_answers c " +
+                "WHERE c.answer_id = a.id AND a.task_id = ? AND NOT a.is_graded " +
+                "AND btrim(c.selected_option) IS NOT DISTINCT FROM ? AND " + condition)) {
+
+                List<AnswerGroup> batched = new ArrayList<>(groups.size());
+                for (AnswerGroup group : groups) {
+                    if (group.getScore() == null) {
+                        continue;
+                    }
+                    stmt.setDouble(1, group.getScore());
+                    stmt.setString(2, group.getFeedback());
+                    stmt.setLong(3, group.getTaskId());
+                    stmt.setString(4, group.getSelectedOption());
+                    for (int i = 0; i < params.length; i++) {
+                        stmt.setLong(i + 5, params[i]);
+                    }
+                    stmt.addBatch();
+                    batched.add(group);
+                }
+                int[] counts = stmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    // SUCCESS_NO_INFO: die Anzahl aus dem Gruppieren bleibt stehen
+                    if (counts[i] >= 0) {
+                        batched.get(i).setCount(counts[i]);
+                    }
+                    graded += batched.get(i).getCount();
+                }
+
+                conn.commit();
+                logger.info("{} Antworten in {} Gruppen bewertet", graded, groups.size());
+            } catch (SQLException e) {
+                conn.rollback();
+                logger.error("Fehler beim Bewerten der Antwortgruppen", e);
+                throw new RuntimeException("Fehler beim Bewerten der Antwortgruppen", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Datenbankverbindungsfehler", e);
+            throw new RuntimeException("Datenbankverbindungsfehler", e);
+        }
+
+        return graded;
+    }
+
     /**
      * Aktualisiert eine bestehende Antwort.
      */
@@ -243,25 +766,23 @@ public class AnswerDAO {
 
     // Hilfsmethoden
     
+    /**
+     * @return Die generierte ID, oder null, wenn eine Antwort mit demselben
+     *         Abgabeschlüssel schon gespeichert ist
+     */
     private Long insertBaseAnswer(Connection conn, Answer answer) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO answers (task_id, user_id, submission_time, is_graded, score, feedback, answer_type) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?)",
-            Statement.RETURN_GENERATED_KEYS)) {
-            
-            stmt.setLong(1, answer.getTaskId());
-            stmt.setLong(2, answer.getUserId());
-            stmt.setTimestamp(3, Timestamp.valueOf(answer.getSubmissionTime()));
-            stmt.setBoolean(4, answer.isGraded());
-            
-            if (answer.getScore() != null) {
-                stmt.setDouble(5, answer.getScore());
-            } else {
-                stmt.setNull(5, Types.DOUBLE);
+        if (answer.getSubmissionKey() != null) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    INSERT_ANSWER + " ON CONFLICT (submission_key) DO NOTHING RETURNING id")) {
+                bindBaseAnswer(stmt, answer);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
             }
-            
-            stmt.setString(6, answer.getFeedback());
-            stmt.setString(7, answer instanceof OpenAnswer ? "OPEN" : "CLOSED");
+        }
+        
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_ANSWER, Statement.RETURN_GENERATED_KEYS)) {
+            bindBaseAnswer(stmt, answer);
             
             int affectedRows = stmt.executeUpdate();
             
@@ -279,6 +800,47 @@ public class AnswerDAO {
         }
     }
     
+    private Long findIdBySubmissionKey(Connection conn, UUID submissionKey) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "SELECT id FROM answers WHERE submission_key = ?")) {
+            
+            stmt.setObject(1, submissionKey);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+                throw new SQLException("Gespeicherte Abgabe nicht gefunden: " + submissionKey);
+            }
+        }
+    }
+    
+    private void bindBaseAnswer(PreparedStatement stmt, Answer answer) throws SQLException {
+        stmt.setLong(1, answer.getTaskId());
+        stmt.setLong(2, answer.getUserId());
+        stmt.setTimestamp(3, Timestamp.valueOf(answer.getSubmissionTime()));
+        stmt.setBoolean(4, answer.isGraded());
+        
+        if (answer.getScore() != null) {
+            stmt.setDouble(5, answer.getScore());
+        } else {
+            stmt.setNull(5, Types.DOUBLE);
+        }
+        
+        stmt.setString(6, answer.getFeedback());
+        stmt.setString(7, answer instanceof OpenAnswer ? "OPEN" : "CLOSED");
+        
+        if (answer.getAttemptId() != null) {
+            stmt.setLong(8, answer.getAttemptId());
+            stmt.setLong(9, answer.getAttemptId());
+        } else {
+            stmt.setNull(8, Types.BIGINT);
+            stmt.setNull(9, Types.BIGINT);
+        }
+        
+        stmt.setObject(10, answer.getSubmissionKey(), Types.OTHER);
+    }
+    
     private void insertOpenAnswer(Connection conn, OpenAnswer answer) throws SQLException {
         try (PreparedStatement stmt = conn.prepareStatement(
             "INSERT INTO open_answers (answer_id, text) VALUES (?, ?)")) {
@@ -368,6 +930,8 @@ public class AnswerDAO {
         Long id = rs.getLong("id");
         Long taskId = rs.getLong("task_id");
         Long userId = rs.getLong("user_id");
+        Long attemptId = rs.getObject("attempt_id") != null ? rs.getLong("attempt_id") : null;
+        UUID submissionKey = rs.getObject("submission_key", UUID.class);
         LocalDateTime submissionTime = rs.getTimestamp("submission_time").toLocalDateTime();
         boolean isGraded = rs.getBoolean("is_graded");
         Double score = rs.getObject("score") != null ? rs.getDouble("score") : null;
@@ -388,6 +952,8 @@ public class AnswerDAO {
         answer.setId(id);
         answer.setTaskId(taskId);
         answer.setUserId(userId);
+        answer.setAttemptId(attemptId);
+        answer.setSubmissionKey(submissionKey);
         answer.setSubmissionTime(submissionTime);
         answer.setGraded(isGraded);
         answer.setScore(score);
@@ -0,0 +1,147 @@
+package com.klasurapp.dao;
+
+import com.klasurapp.model.AnswerDraft;
+import com.klasurapp.model.TaskFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Data Access Object für Antwortentwürfe laufender Klausurversuche.
+ */
+public class AnswerDraftDAO {
+    private static final Logger logger = LoggerFactory.getLogger(AnswerDraftDAO.class);
+
+    /**
+     * Erstellt die Datenbanktabelle für Antwortentwürfe.
+     * <p>
+     * Die Tabelle ist UNLOGGED: Schreibzugriffe erzeugen kein WAL und werden nicht
+     * repliziert, nach einem Absturz des Datenbankservers ist sie leer. Für Entwürfe
+     * ist das vertretbar, abgegebene Antworten stehen in der Tabelle answers.
+     */
+    public void initializeTable() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(
+                "CREATE UNLOGGED TABLE IF NOT EXISTS answer_drafts (" +
+                "attempt_id BIGINT NOT NULL, " +
+                "task_id INTEGER NOT NULL, " +
+                "user_id INTEGER NOT NULL, " +
+                "answer_type VARCHAR(10) NOT NULL, " +
+                "content TEXT, " +
+                "version BIGINT NOT NULL, " +
+                "updated_at TIMESTAMP NOT NULL, " +
+                "PRIMARY KEY (attempt_id, task_id)" +
+                ")"
+            );
+
+            logger.info("Entwurf-Tabelle initialisiert");
+        } catch (SQLException e) {
+            logger.error("Fehler beim Initialisieren der Entwurf-Tabelle", e);
+        }
+    }
+
+    /**
+     * Speichert viele Entwürfe in einer Batch-Anweisung. Ein gespeicherter Entwurf wird
+     * nur durch einen mit höherer Version ersetzt.
+     *
+     * @param drafts Die zu speichernden Entwürfe
+     * @return Die Anzahl geschriebener Zeilen
+     */
+    public int upsertBatch(Collection<AnswerDraft> drafts) {
+        if (drafts.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO answer_drafts (attempt_id, task_id, user_id, answer_type, content, version, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (attempt_id, task_id) DO UPDATE SET " +
+                "content = EXCLUDED.content, version = EXCLUDED.version, updated_at = EXCLUDED.updated_at " +
+                "WHERE answer_drafts.version < EXCLUDED.version")) {
+
+            for (AnswerDraft draft : drafts) {
+                stmt.setLong(1, draft.getAttemptId());
+                stmt.setLong(2, draft.getTaskId());
+                stmt.setLong(3, draft.getUserId());
+                stmt.setString(4, draft.getFormat().name());
+                stmt.setString(5, draft.getContent());
+                stmt.setLong(6, draft.getVersion());
+                stmt.setTimestamp(7, Timestamp.valueOf(draft.getUpdatedAt()));
+                stmt.addBatch();
+            }
+
+            int written = 0;
+            for (int count : stmt.executeBatch()) {
+                written += Math.max(0, count);
+            }
+            return written;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Speichern der Entwürfe", e);
+            throw new RuntimeException("Fehler beim Speichern der Entwürfe", e);
+        }
+    }
+
+    /**
+     * Findet die gespeicherten Entwürfe eines Klausurversuchs, z.B. um ihn nach einem
+     * Neustart fortzusetzen.
+     *
+     * @param attemptId Die ID des Versuchs
+     * @return Die Entwürfe, nach Aufgabe sortiert
+     */
+    public List<AnswerDraft> findByAttempt(Long attemptId) {
+        List<AnswerDraft> drafts = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT attempt_id, task_id, user_id, answer_type, content, version, updated_at " +
+                "FROM answer_drafts WHERE attempt_id = ? ORDER BY task_id")) {
+
+            stmt.setLong(1, attemptId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    AnswerDraft draft = new AnswerDraft(rs.getLong("attempt_id"), rs.getLong("task_id"),
+                            rs.getLong("user_id"), TaskFormat.valueOf(rs.getString("answer_type")),
+                            rs.getString("content"), rs.getLong("version"));
+                    draft.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+                    drafts.add(draft);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden der Entwürfe", e);
+            throw new RuntimeException("Fehler beim Laden der Entwürfe", e);
+        }
+
+        return drafts;
+    }
+
+    /**
+     * Löscht die Entwürfe abgegebener Klausurversuche.
+     *
+     * @param attemptIds Die IDs der Versuche
+     * @return Die Anzahl gelöschter Entwürfe
+     */
+    public int deleteByAttempts(Collection<Long> attemptIds) {
+        if (attemptIds.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM answer_drafts WHERE attempt_id = ANY(?)")) {
+
+            stmt.setArray(1, conn.createArrayOf("bigint", attemptIds.toArray()));
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Fehler beim Löschen der Entwürfe", e);
+            throw new RuntimeException("Fehler beim Löschen der Entwürfe", e);
+        }
+    }
+}
@@ -8,6 +8,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Manages the connection to the PostgreSQL database.
+ * <p>
+ * Every thread gets its own connection. DAOs close the connection after each call and
+ * switch it out of auto-commit for transactions, so a background writer sharing the
+ * console's connection could close it or commit in the middle of the console's work.
  */
 public class DatabaseConnection {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseConnection.class);
@@ -19,9 +23,13 @@ public class DatabaseConnection {
     // Use a connection timeout to avoid hanging
     private static final int CONNECTION_TIMEOUT = 5;
 
-    private static Connection connection;
+    private static final ThreadLocal<Connection> connections = new ThreadLocal<>();
 
-    public static synchronized Connection getConnection() throws SQLException {
+    /**
+     * @return the calling thread's connection, opened again if it was closed
+     */
+    public static Connection getConnection() throws SQLException {
+        Connection connection = connections.get();
         boolean needsNewConnection = (connection == null);
         
         if (!needsNewConnection) {
@@ -48,6 +56,7 @@ public class DatabaseConnection {
                 Class.forName("org.postgresql.Driver");
                 connection = DriverManager.getConnection(URL, USER, PASSWORD);
                 connection.setAutoCommit(true); // Ensure autocommit is enabled by default
+                connections.set(connection);
                 logger.info("Connected to PostgreSQL database");
             } catch (ClassNotFoundException e) {
                 logger.error("PostgreSQL JDBC driver not found", e);
@@ -61,11 +70,15 @@ public class DatabaseConnection {
         return connection;
     }
 
-    public static synchronized void closeConnection() {
+    /**
+     * Close the calling thread's connection.
+     */
+    public static void closeConnection() {
+        Connection connection = connections.get();
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
-                connection = null;  // Set to null to force a new connection next time
+                connections.remove();  // Force a new connection next time
                 logger.info("Database connection closed");
             }
         } catch (SQLException e) {
@@ -0,0 +1,266 @@
+package com.klasurapp.dao;
+
+import com.klasurapp.model.ExamAttempt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Data Access Object für Klausurversuche.
+ */
+public class ExamAttemptDAO {
+    private static final Logger logger = LoggerFactory.getLogger(ExamAttemptDAO.class);
+
+    /**
+     * Erstellt die Datenbanktabelle für Klausurversuche.
+     * Muss vor der Antwort-Tabelle initialisiert werden, die darauf verweist.
+     */
+    public void initializeTable() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS exam_attempts (" +
+                "id BIGSERIAL PRIMARY KEY, " +
+                "exam_id INTEGER NOT NULL REFERENCES exams(id) ON DELETE CASCADE, " +
+                "user_id INTEGER NOT NULL, " +
+                "started_at TIMESTAMP NOT NULL, " +
+                "submitted_at TIMESTAMP, " +
+                "instance_seed BIGINT" +
+                ")"
+            );
+
+            // Versuche einer Klausur und eines Studenten in einem Bereichs-Scan
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_exam_attempts_exam ON exam_attempts(exam_id, user_id)");
+            // Offene Versuche, die beim Start fortgesetzt werden
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_exam_attempts_open ON exam_attempts(started_at) " +
+                "WHERE submitted_at IS NULL");
+
+            logger.info("Klausurversuch-Tabelle initialisiert");
+        } catch (SQLException e) {
+            logger.error("Fehler beim Initialisieren der Klausurversuch-Tabelle", e);
+        }
+    }
+
+    /**
+     * Beginnt einen neuen Klausurversuch.
+     *
+     * @param attempt Der zu speichernde Versuch
+     * @return Der Versuch mit generierter ID
+     */
+    public ExamAttempt start(ExamAttempt attempt) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO exam_attempts (exam_id, user_id, started_at, instance_seed) VALUES (?, ?, ?, ?) " +
+                "RETURNING id")) {
+
+            stmt.setLong(1, attempt.getExamId());
+            stmt.setLong(2, attempt.getUserId());
+            stmt.setTimestamp(3, Timestamp.valueOf(attempt.getStartedAt()));
+            if (attempt.getInstanceSeed() != null) {
+                stmt.setLong(4, attempt.getInstanceSeed());
+            } else {
+                stmt.setNull(4, Types.BIGINT);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                attempt.setId(rs.getLong(1));
+            }
+
+            logger.info("Klausurversuch {} für Klausur {} begonnen", attempt.getId(), attempt.getExamId());
+            return attempt;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Beginnen des Klausurversuchs", e);
+            throw new RuntimeException("Fehler beim Beginnen des Klausurversuchs", e);
+        }
+    }
+
+    /**
+     * Schließt einen Klausurversuch ab. Ein bereits abgegebener Versuch bleibt unverändert.
+     *
+     * @param attemptId Die ID des Versuchs
+     * @param submittedAt Der Abgabezeitpunkt
+     * @return true, wenn der Versuch abgeschlossen wurde
+     */
+    public boolean submit(Long attemptId, LocalDateTime submittedAt) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE exam_attempts SET submitted_at = ? WHERE id = ? AND submitted_at IS NULL")) {
+
+            stmt.setTimestamp(1, Timestamp.valueOf(submittedAt));
+            stmt.setLong(2, attemptId);
+
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Abschließen des Klausurversuchs", e);
+            throw new RuntimeException("Fehler beim Abschließen des Klausurversuchs", e);
+        }
+    }
+
+    /**
+     * Schließt viele Klausurversuche in einer Batch-Anweisung ab, jeden mit seinem
+     * eigenen Abgabezeitpunkt. Bereits abgegebene Versuche bleiben unverändert.
+     *
+     * @param attempts Die Versuche mit gesetztem Abgabezeitpunkt
+     * @return Die Anzahl abgeschlossener Versuche
+     */
+    public int submitAll(List<ExamAttempt> attempts) {
+        if (attempts.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE exam_attempts SET submitted_at = ? WHERE id = ? AND submitted_at IS NULL")) {
+
+            for (ExamAttempt attempt : attempts) {
+                stmt.setTimestamp(1, Timestamp.valueOf(attempt.getSubmittedAt()));
+                stmt.setLong(2, attempt.getId());
+                stmt.addBatch();
+            }
+
+            int submitted = 0;
+            for (int count : stmt.executeBatch()) {
+                submitted += Math.max(0, count);
+            }
+            return submitted;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Abschließen der Klausurversuche", e);
+            throw new RuntimeException("Fehler beim Abschließen der Klausurversuche", e);
+        }
+    }
+
+    /**
+     * Findet einen Klausurversuch anhand seiner ID.
+     */
+    public Optional<ExamAttempt> findById(Long id) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, exam_id, user_id, started_at, submitted_at, instance_seed " +
+                "FROM exam_attempts WHERE id = ?")) {
+
+            stmt.setLong(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToAttempt(rs));
+                }
+            }
+
+            return Optional.empty();
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen des Klausurversuchs", e);
+            throw new RuntimeException("Fehler beim Suchen des Klausurversuchs", e);
+        }
+    }
+
+    /**
+     * Findet alle Versuche einer Klausur.
+     *
+     * @param examId Die Klausur-ID
+     * @return Die Versuche, nach Student und Beginn sortiert
+     */
+    public List<ExamAttempt> findByExam(Long examId) {
+        List<ExamAttempt> attempts = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, exam_id, user_id, started_at, submitted_at, instance_seed " +
+                "FROM exam_attempts WHERE exam_id = ? ORDER BY user_id, started_at")) {
+
+            stmt.setLong(1, examId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    attempts.add(mapResultSetToAttempt(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Klausurversuche", e);
+            throw new RuntimeException("Fehler beim Suchen der Klausurversuche", e);
+        }
+
+        return attempts;
+    }
+
+    /**
+     * Findet die Versuche eines Studenten für eine Klausur.
+     *
+     * @param examId Die Klausur-ID
+     * @param userId Die Konto-ID des Studenten
+     * @return Die Versuche, der jüngste zuerst
+     */
+    public List<ExamAttempt> findByExamAndUser(Long examId, Long userId) {
+        List<ExamAttempt> attempts = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, exam_id, user_id, started_at, submitted_at, instance_seed " +
+                "FROM exam_attempts WHERE exam_id = ? AND user_id = ? ORDER BY started_at DESC")) {
+
+            stmt.setLong(1, examId);
+            stmt.setLong(2, userId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    attempts.add(mapResultSetToAttempt(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Klausurversuche", e);
+            throw new RuntimeException("Fehler beim Suchen der Klausurversuche", e);
+        }
+
+        return attempts;
+    }
+
+    /**
+     * Findet alle noch nicht abgegebenen Versuche, z. B. um sie nach einem Neustart
+     * fortzusetzen.
+     *
+     * @return Die offenen Versuche, der älteste zuerst
+     */
+    public List<ExamAttempt> findUnsubmitted() {
+        List<ExamAttempt> attempts = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, exam_id, user_id, started_at, submitted_at, instance_seed " +
+                "FROM exam_attempts WHERE submitted_at IS NULL ORDER BY started_at");
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                attempts.add(mapResultSetToAttempt(rs));
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der offenen Klausurversuche", e);
+            throw new RuntimeException("Fehler beim Suchen der offenen Klausurversuche", e);
+        }
+
+        return attempts;
+    }
+
+    // Hilfsmethoden
+
+    private ExamAttempt mapResultSetToAttempt(ResultSet rs) throws SQLException {
+        ExamAttempt attempt = new ExamAttempt();
+        attempt.setId(rs.getLong("id"));
+        attempt.setExamId(rs.getLong("exam_id"));
+        attempt.setUserId(rs.getLong("user_id"));
+        attempt.setStartedAt(rs.getTimestamp("started_at").toLocalDateTime());
+
+        Timestamp submittedAt = rs.getTimestamp("submitted_at");
+        attempt.setSubmittedAt(submittedAt != null ? submittedAt.toLocalDateTime() : null);
+
+        long instanceSeed = rs.getLong("instance_seed");
+        attempt.setInstanceSeed(rs.wasNull() ? null : instanceSeed);
+
+        return attempt;
+    }
+}
@@ -1,6 +1,7 @@
 package com.klasurapp.dao;
 
 import com.klasurapp.model.Exam;
+import com.klasurapp.model.ExamSnapshot;
 import com.klasurapp.model.Module;
 import com.klasurapp.model.Task;
 import org.slf4j.Logger;
@@ -9,8 +10,13 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Data Access Object für Exam-Operationen.
@@ -44,6 +50,15 @@ public class ExamDAO {
                 ")"
             );
             
+            // Parallelversionen (Gruppen A/B/C) verweisen auf ihre Ausgangsklausur
+            stmt.execute("ALTER TABLE exams ADD COLUMN IF NOT EXISTS " +
+                "parent_exam_id INTEGER REFERENCES exams(id) ON DELETE CASCADE");
+            stmt.execute("ALTER TABLE exams ADD COLUMN IF NOT EXISTS variant_label VARCHAR(10)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_exams_parent ON exams(parent_exam_id)");
+            
+            // Startwert für die individuelle Aufgaben- und Optionsreihenfolge je Student
+            stmt.execute("ALTER TABLE exams ADD COLUMN IF NOT EXISTS instance_seed BIGINT");
+            
             // Verknüpfungstabelle für Klausuren und Aufgaben (Many-to-Many)
             stmt.execute(
                 "CREATE TABLE IF NOT EXISTS exam_tasks (" +
@@ -54,6 +69,18 @@ public class ExamDAO {
                 ")"
             );
             
+            // Eingefrorener Inhalt veröffentlichter Klausuren; eine veröffentlichte
+            // Klausur kann nicht gelöscht werden, solange ihr Snapshot existiert
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS exam_snapshots (" +
+                "exam_id INTEGER PRIMARY KEY REFERENCES exams(id), " +
+                "format_version SMALLINT NOT NULL, " +
+                "payload BYTEA NOT NULL, " +
+                "sha256 BYTEA NOT NULL, " +
+                "published_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+            
             logger.info("Klausur-Tabellen initialisiert");
         } catch (SQLException e) {
             logger.error("Fehler beim Initialisieren der Klausur-Tabellen", e);
@@ -103,7 +130,7 @@ public class ExamDAO {
     public Optional<Exam> findById(Long id) {
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                "SELECT id, title, description, exam_date, duration_minutes, module_id " +
+                "SELECT id, title, description, exam_date, duration_minutes, module_id, parent_exam_id, variant_label, instance_seed " +
                 "FROM exams WHERE id = ?")) {
             
             stmt.setLong(1, id);
@@ -122,6 +149,141 @@ public class ExamDAO {
         }
     }
 
+    /**
+     * Erstellt mehrere Klausuren, z.B. die Parallelversionen einer Klausur,
+     * in einer gemeinsamen Transaktion.
+     * 
+     * @param exams Die zu erstellenden Klausuren
+     * @return Die erstellten Klausuren mit generierten IDs
+     */
+    public List<Exam> createAll(List<Exam> exams) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try {
+                for (Exam exam : exams) {
+                    exam.setId(insertBaseExam(conn, exam));
+                    saveExamTasks(conn, exam);
+                }
+                
+                conn.commit();
+                logger.info("{} Klausuren erstellt", exams.size());
+                return exams;
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Exam exam : exams) {
+                    exam.setId(null);
+                }
+                logger.error("Fehler beim Erstellen der Klausuren", e);
+                throw new RuntimeException("Fehler beim Erstellen der Klausuren", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Datenbankverbindungsfehler", e);
+            throw new RuntimeException("Datenbankverbindungsfehler", e);
+        }
+    }
+
+    /**
+     * Findet die Parallelversionen einer Klausur.
+     * 
+     * @param parentExamId Die ID der Ausgangsklausur
+     * @return Liste der Varianten, sortiert nach Gruppenbezeichnung
+     */
+    public List<Exam> findVariants(Long parentExamId) {
+        List<Exam> exams = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, title, description, exam_date, duration_minutes, module_id, parent_exam_id, variant_label, instance_seed " +
+                "FROM exams WHERE parent_exam_id = ? ORDER BY variant_label")) {
+            
+            stmt.setLong(1, parentExamId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    exams.add(mapResultSetToExam(conn, rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Klausurvarianten", e);
+        }
+        
+        return exams;
+    }
+
+    /**
+     * Lädt eine Klausur mit allen Parallelversionen mengenbasiert: eine Abfrage für die
+     * Klausuren, eine für alle Aufgabenzuordnungen und ein gemeinsames Laden aller
+     * Aufgaben, unabhängig von der Anzahl der Varianten.
+     * 
+     * @param examId Die ID der Ausgangsklausur
+     * @return Die Ausgangsklausur gefolgt von ihren Varianten, leer wenn nicht gefunden
+     */
+    public List<Exam> findWithVariants(Long examId) {
+        List<Exam> exams = new ArrayList<>();
+        Map<Long, Long> moduleIds = new HashMap<>();
+        Map<Long, List<Long>> taskIds = new HashMap<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, title, description, exam_date, duration_minutes, module_id, parent_exam_id, variant_label, instance_seed " +
+                "FROM exams WHERE id = ? OR parent_exam_id = ? " +
+                "ORDER BY parent_exam_id IS NOT NULL, variant_label")) {
+                
+                stmt.setLong(1, examId);
+                stmt.setLong(2, examId);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Exam exam = mapExamRow(rs);
+                        exams.add(exam);
+                        moduleIds.put(exam.getId(), rs.getLong("module_id"));
+                        taskIds.put(exam.getId(), new ArrayList<>());
+                    }
+                }
+            }
+            if (exams.isEmpty()) {
+                return exams;
+            }
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT exam_id, task_id FROM exam_tasks WHERE exam_id = ANY(?) ORDER BY exam_id, task_order")) {
+                
+                stmt.setArray(1, conn.createArrayOf("bigint", taskIds.keySet().toArray()));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        taskIds.get(rs.getLong("exam_id")).add(rs.getLong("task_id"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden der Klausur mit Varianten", e);
+            throw new RuntimeException("Fehler beim Laden der Klausur mit Varianten", e);
+        }
+        
+        Set<Long> allTaskIds = new LinkedHashSet<>();
+        taskIds.values().forEach(allTaskIds::addAll);
+        Map<Long, Task> tasks = taskDAO.findByIds(allTaskIds);
+        
+        Map<Long, Optional<Module>> modules = new HashMap<>();
+        for (Exam exam : exams) {
+            modules.computeIfAbsent(moduleIds.get(exam.getId()), moduleDAO::findById).ifPresent(exam::setModule);
+            List<Task> examTasks = new ArrayList<>();
+            for (Long taskId : taskIds.get(exam.getId())) {
+                Task task = tasks.get(taskId);
+                if (task != null) {
+                    examTasks.add(task);
+                }
+            }
+            exam.setTasks(examTasks);
+        }
+        
+        return exams;
+    }
+
     /**
      * Findet alle Klausuren eines Moduls.
      * 
@@ -133,7 +295,7 @@ public class ExamDAO {
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                "SELECT id, title, description, exam_date, duration_minutes, module_id " +
+                "SELECT id, title, description, exam_date, duration_minutes, module_id, parent_exam_id, variant_label, instance_seed " +
                 "FROM exams WHERE module_id = ? ORDER BY exam_date DESC")) {
             
             stmt.setLong(1, moduleId);
@@ -151,6 +313,51 @@ public class ExamDAO {
         return exams;
     }
 
+    /**
+     * Findet die Aufgaben, die in kürzlich geschriebenen Klausuren eines Moduls
+     * verwendet wurden: in allen Klausuren ab einem Datum und in den letzten
+     * {@code lastExams} Klausuren.
+     * 
+     * @param moduleId Die Modul-ID
+     * @param since Stichtag, oder null für keine Datumsregel
+     * @param lastExams Anzahl der letzten Klausuren, 0 für keine
+     * @return IDs der kürzlich verwendeten Aufgaben
+     */
+    public Set<Long> findRecentlyUsedTaskIds(Long moduleId, LocalDate since, int lastExams) {
+        Set<Long> taskIds = new HashSet<>();
+        if (since == null && lastExams <= 0) {
+            return taskIds;
+        }
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT DISTINCT et.task_id FROM exam_tasks et " +
+                "JOIN exams e ON e.id = et.exam_id " +
+                "WHERE e.module_id = ? AND (e.exam_date >= ? OR e.id IN (" +
+                "  SELECT id FROM exams WHERE module_id = ? " +
+                "  ORDER BY exam_date DESC NULLS LAST, id DESC LIMIT ?))")) {
+            
+            stmt.setLong(1, moduleId);
+            if (since != null) {
+                stmt.setDate(2, Date.valueOf(since));
+            } else {
+                stmt.setNull(2, Types.DATE);
+            }
+            stmt.setLong(3, moduleId);
+            stmt.setInt(4, Math.max(0, lastExams));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    taskIds.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen kürzlich verwendeter Aufgaben", e);
+            throw new RuntimeException("Fehler beim Suchen kürzlich verwendeter Aufgaben", e);
+        }
+        return taskIds;
+    }
+
     /**
      * Ruft alle Klausuren aus der Datenbank ab.
      * 
@@ -162,7 +369,7 @@ public class ExamDAO {
         try (Connection conn = DatabaseConnection.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(
-                "SELECT id, title, description, exam_date, duration_minutes, module_id " +
+                "SELECT id, title, description, exam_date, duration_minutes, module_id, parent_exam_id, variant_label, instance_seed " +
                 "FROM exams ORDER BY exam_date DESC")) {
             
             while (rs.next()) {
@@ -182,12 +389,15 @@ public class ExamDAO {
      * 
      * @param exam Die zu aktualisierende Klausur
      * @return Die aktualisierte Klausur
+     * @throws IllegalStateException wenn die Klausur veröffentlicht ist
      */
     public Exam update(Exam exam) {
         try (Connection conn = DatabaseConnection.getConnection()) {
             conn.setAutoCommit(false);
             
             try {
+                requireNotPublished(conn, exam.getId());
+                
                 // Basis-Klausurdaten aktualisieren
                 updateBaseExam(conn, exam);
                 
@@ -211,33 +421,209 @@ public class ExamDAO {
         }
     }
     
+    /**
+     * Setzt den Startwert für die individuelle Reihenfolge je Student.
+     * Die Instanzen selbst werden nie gespeichert, sondern bei Bedarf berechnet.
+     * 
+     * @param examId Die Klausur-ID
+     * @param instanceSeed Der Startwert, oder null um das Mischen abzuschalten
+     * @return true, wenn die Klausur aktualisiert wurde
+     * @throws IllegalStateException wenn die Klausur veröffentlicht ist
+     */
+    public boolean updateInstanceSeed(Long examId, Long instanceSeed) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            requireNotPublished(conn, examId);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE exams SET instance_seed = ? WHERE id = ?")) {
+                
+                if (instanceSeed != null) {
+                    stmt.setLong(1, instanceSeed);
+                } else {
+                    stmt.setNull(1, Types.BIGINT);
+                }
+                stmt.setLong(2, examId);
+                
+                return stmt.executeUpdate() > 0;
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Setzen des Instanz-Startwerts", e);
+            throw new RuntimeException("Fehler beim Setzen des Instanz-Startwerts", e);
+        }
+    }
+    
     /**
      * Löscht eine Klausur.
      * 
      * @param id Die ID der zu löschenden Klausur
      * @return true, wenn die Klausur gelöscht wurde
+     * @throws IllegalStateException wenn die Klausur veröffentlicht ist oder sie oder
+     *         eine ihrer Varianten schon bearbeitet wurde
      */
     public boolean delete(Long id) {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM exams WHERE id = ?")) {
-            
-            stmt.setLong(1, id);
-            int affectedRows = stmt.executeUpdate();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            requireNotPublished(conn, id);
+            requireNoAttempts(conn, id);
             
-            logger.info("Klausur mit ID {} gelöscht", id);
-            return affectedRows > 0;
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM exams WHERE id = ?")) {
+                stmt.setLong(1, id);
+                int affectedRows = stmt.executeUpdate();
+                
+                logger.info("Klausur mit ID {} gelöscht", id);
+                return affectedRows > 0;
+            }
         } catch (SQLException e) {
             logger.error("Fehler beim Löschen der Klausur", e);
             return false;
         }
     }
 
+    /**
+     * Speichert die Snapshots einer Klausur und ihrer Varianten in einer Transaktion.
+     * Bereits veröffentlichte Klausuren behalten ihren ersten Snapshot.
+     * 
+     * @param snapshots Die zu speichernden Snapshots
+     * @return Die Anzahl neu veröffentlichter Klausuren
+     */
+    public int saveSnapshots(List<ExamSnapshot> snapshots) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO exam_snapshots (exam_id, format_version, payload, sha256) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (exam_id) DO NOTHING")) {
+                
+                for (ExamSnapshot snapshot : snapshots) {
+                    stmt.setLong(1, snapshot.getExamId());
+                    stmt.setInt(2, snapshot.getFormatVersion());
+                    stmt.setBytes(3, snapshot.getPayload());
+                    stmt.setBytes(4, snapshot.getSha256());
+                    stmt.addBatch();
+                }
+                
+                int published = 0;
+                for (int count : stmt.executeBatch()) {
+                    published += Math.max(0, count);
+                }
+                conn.commit();
+                logger.info("{} Klausuren veröffentlicht", published);
+                return published;
+            } catch (SQLException e) {
+                conn.rollback();
+                logger.error("Fehler beim Veröffentlichen der Klausur", e);
+                throw new RuntimeException("Fehler beim Veröffentlichen der Klausur", e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Datenbankverbindungsfehler", e);
+            throw new RuntimeException("Datenbankverbindungsfehler", e);
+        }
+    }
+    
+    /**
+     * Findet den Snapshot einer veröffentlichten Klausur.
+     * 
+     * @param examId Die Klausur-ID
+     * @return Der Snapshot, leer wenn die Klausur nicht veröffentlicht ist
+     */
+    public Optional<ExamSnapshot> findSnapshot(Long examId) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT exam_id, format_version, payload, sha256, published_at FROM exam_snapshots WHERE exam_id = ?")) {
+            
+            stmt.setLong(1, examId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToSnapshot(rs));
+                }
+            }
+            
+            return Optional.empty();
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden des Klausur-Snapshots", e);
+            throw new RuntimeException("Fehler beim Laden des Klausur-Snapshots", e);
+        }
+    }
+    
+    /**
+     * Findet die Snapshots einer Klausur und ihrer veröffentlichten Varianten.
+     * 
+     * @param examId Die ID der Ausgangsklausur
+     * @return Der Snapshot der Ausgangsklausur gefolgt von denen der Varianten
+     */
+    public List<ExamSnapshot> findSnapshotsWithVariants(Long examId) {
+        List<ExamSnapshot> snapshots = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT s.exam_id, s.format_version, s.payload, s.sha256, s.published_at " +
+                "FROM exam_snapshots s JOIN exams e ON e.id = s.exam_id " +
+                "WHERE e.id = ? OR e.parent_exam_id = ? " +
+                "ORDER BY e.parent_exam_id IS NOT NULL, e.variant_label")) {
+            
+            stmt.setLong(1, examId);
+            stmt.setLong(2, examId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    snapshots.add(mapResultSetToSnapshot(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden der Klausur-Snapshots", e);
+            throw new RuntimeException("Fehler beim Laden der Klausur-Snapshots", e);
+        }
+        
+        return snapshots;
+    }
+
     // Hilfsmethoden
     
+    private void requireNotPublished(Connection conn, Long examId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM exam_snapshots WHERE exam_id = ?")) {
+            stmt.setLong(1, examId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    throw new IllegalStateException("Klausur " + examId + " ist veröffentlicht und kann nicht geändert werden");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Löschen einer Klausur entfernt auch ihre Varianten; wurde eine davon schon
+     * bearbeitet, gingen mit den Versuchen die Antworten der Studenten verloren.
+     */
+    private void requireNoAttempts(Connection conn, Long examId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "SELECT 1 FROM exam_attempts WHERE exam_id IN " +
+            "(SELECT id FROM exams WHERE id = ? OR parent_exam_id = ?) LIMIT 1")) {
+            stmt.setLong(1, examId);
+            stmt.setLong(2, examId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    throw new IllegalStateException("Klausur " + examId + " wurde bereits bearbeitet und kann nicht gelöscht werden");
+                }
+            }
+        }
+    }
+
+    private ExamSnapshot mapResultSetToSnapshot(ResultSet rs) throws SQLException {
+        ExamSnapshot snapshot = new ExamSnapshot(rs.getLong("exam_id"), rs.getInt("format_version"),
+                rs.getBytes("payload"), rs.getBytes("sha256"));
+        Timestamp publishedAt = rs.getTimestamp("published_at");
+        if (publishedAt != null) {
+            snapshot.setPublishedAt(publishedAt.toLocalDateTime());
+        }
+        return snapshot;
+    }
+    
     private Long insertBaseExam(Connection conn, Exam exam) throws SQLException {
         try (PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO exams (title, description, exam_date, duration_minutes, module_id) " +
-            "VALUES (?, ?, ?, ?, ?)",
+            "INSERT INTO exams (title, description, exam_date, duration_minutes, module_id, " +
+            "parent_exam_id, variant_label, instance_seed) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
             Statement.RETURN_GENERATED_KEYS)) {
             
             stmt.setString(1, exam.getTitle());
@@ -252,6 +638,19 @@ public class ExamDAO {
             stmt.setInt(4, exam.getDurationMinutes());
             stmt.setLong(5, exam.getModule().getId());
             
+            if (exam.getParentExamId() != null) {
+                stmt.setLong(6, exam.getParentExamId());
+            } else {
+                stmt.setNull(6, Types.INTEGER);
+            }
+            stmt.setString(7, exam.getVariantLabel());
+            
+            if (exam.getInstanceSeed() != null) {
+                stmt.setLong(8, exam.getInstanceSeed());
+            } else {
+                stmt.setNull(8, Types.BIGINT);
+            }
+            
             int affectedRows = stmt.executeUpdate();
             
             if (affectedRows == 0) {
@@ -326,6 +725,24 @@ public class ExamDAO {
     }
     
     private Exam mapResultSetToExam(Connection conn, ResultSet rs) throws SQLException {
+        Exam exam = mapExamRow(rs);
+        
+        // Modul abrufen
+        long moduleId = rs.getLong("module_id");
+        Module module = moduleDAO.findById(moduleId)
+                .orElseThrow(() -> new SQLException("Modul mit ID " + moduleId + " nicht gefunden"));
+        exam.setModule(module);
+        
+        // Aufgaben der Klausur laden
+        loadExamTasks(conn, exam);
+        
+        return exam;
+    }
+    
+    /**
+     * Liest die Felder einer Klausurzeile ohne Modul und Aufgaben.
+     */
+    private Exam mapExamRow(ResultSet rs) throws SQLException {
         Exam exam = new Exam();
         exam.setId(rs.getLong("id"));
         exam.setTitle(rs.getString("title"));
@@ -338,14 +755,16 @@ public class ExamDAO {
         
         exam.setDurationMinutes(rs.getInt("duration_minutes"));
         
-        // Modul abrufen
-        long moduleId = rs.getLong("module_id");
-        Module module = moduleDAO.findById(moduleId)
-                .orElseThrow(() -> new SQLException("Modul mit ID " + moduleId + " nicht gefunden"));
-        exam.setModule(module);
+        long parentExamId = rs.getLong("parent_exam_id");
+        if (!rs.wasNull()) {
+            exam.setParentExamId(parentExamId);
+        }
+        exam.setVariantLabel(rs.getString("variant_label"));
         
-        // Aufgaben der Klausur laden
-        loadExamTasks(conn, exam);
+        long instanceSeed = rs.getLong("instance_seed");
+        if (!rs.wasNull()) {
+            exam.setInstanceSeed(instanceSeed);
+        }
         
         return exam;
     }
@@ -5,13 +5,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object for Nutzer operations.
  */
 public class NutzerDAO {
     private static final Logger logger = LoggerFactory.getLogger(NutzerDAO.class);
+    private static final int SCAN_FETCH_SIZE = 10_000;
 
     /**
      * Create a new user in the database.
@@ -116,6 +121,68 @@ public class NutzerDAO {
         }
     }
 
+    /**
+     * Find which of the given emails are already taken, in one query.
+     * 
+     * @param emails the emails to check
+     * @return the subset of emails that already exist
+     */
+    public Set<String> findExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        if (emails.isEmpty()) {
+            return existing;
+        }
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT email FROM nutzer WHERE email = ANY(?)")) {
+            
+            stmt.setArray(1, conn.createArrayOf("varchar", emails.toArray()));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString("email"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error checking existing emails", e);
+            throw new RuntimeException("Error checking existing emails", e);
+        }
+        return existing;
+    }
+
+    /**
+     * Stream all emails to a consumer without loading them into memory at once.
+     * The rows are fetched through a cursor in chunks of {@value #SCAN_FETCH_SIZE}.
+     * 
+     * @param consumer receives every email
+     * @return the number of emails scanned
+     */
+    public long forEachEmail(Consumer<String> consumer) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // The driver only uses a cursor inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT email FROM nutzer WHERE email IS NOT NULL")) {
+                stmt.setFetchSize(SCAN_FETCH_SIZE);
+                
+                long count = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(rs.getString(1));
+                        count++;
+                    }
+                }
+                conn.commit();
+                return count;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error scanning emails", e);
+            throw new RuntimeException("Error scanning emails", e);
+        }
+    }
+
     /**
      * Update an existing user.
      * 
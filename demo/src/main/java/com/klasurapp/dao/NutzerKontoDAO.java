@@ -10,16 +10,23 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object for NutzerKonto operations.
  */
 public class NutzerKontoDAO {
     private static final Logger logger = LoggerFactory.getLogger(NutzerKontoDAO.class);
+    private static final int LAST_LOGIN_CHUNK_SIZE = 500;
+    private static final int BATCH_INSERT_CHUNK_SIZE = 500;
+    private static final int SCAN_FETCH_SIZE = 10_000;
     private final NutzerDAO nutzerDAO;
     private final TaskDAO taskDAO;
 
@@ -124,6 +131,7 @@ public class NutzerKontoDAO {
             // Save associated tasks and answers
             saveUserTasks(conn, konto);
             saveUserAnswers(conn, konto);
+            konto.markAssociationsPersisted();
             
             logger.info("Created user account: {}", konto.getBenutzername());
             return konto;
@@ -133,6 +141,149 @@ public class NutzerKontoDAO {
         }
     }
 
+    /**
+     * Create many accounts, including their Nutzer rows, with multi-row inserts.
+     * Each chunk of accounts is written in its own transaction. A failing chunk
+     * is rolled back and its accounts are retried one by one, so only the
+     * accounts that fail on their own are reported through the returned map.
+     * 
+     * @param konten the accounts to create (without IDs, with password hashes)
+     * @return username -> error message for every account that could not be created
+     */
+    public Map<String, String> createBatch(List<NutzerKonto> konten) {
+        Map<String, String> failures = new HashMap<>();
+        
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int start = 0; start < konten.size(); start += BATCH_INSERT_CHUNK_SIZE) {
+                    List<NutzerKonto> chunk =
+                            konten.subList(start, Math.min(start + BATCH_INSERT_CHUNK_SIZE, konten.size()));
+                    try {
+                        insertNutzerChunk(conn, chunk);
+                        insertKontoChunk(conn, chunk);
+                        conn.commit();
+                        chunk.forEach(NutzerKonto::markAssociationsPersisted);
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        logger.warn("Error creating user account chunk, retrying its accounts one by one", e);
+                        createEach(conn, chunk, failures);
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Database connection error", e);
+            throw new RuntimeException("Database connection error", e);
+        }
+        
+        logger.info("Created {} user accounts in batch", konten.size() - failures.size());
+        return failures;
+    }
+
+    private void createEach(Connection conn, List<NutzerKonto> chunk, Map<String, String> failures)
+            throws SQLException {
+        for (NutzerKonto konto : chunk) {
+            try {
+                insertNutzerChunk(conn, List.of(konto));
+                insertKontoChunk(conn, List.of(konto));
+                conn.commit();
+                konto.markAssociationsPersisted();
+            } catch (SQLException e) {
+                conn.rollback();
+                logger.error("Error creating user account: {}", konto.getBenutzername(), e);
+                konto.setId(null);
+                konto.getNutzer().setId(null);
+                failures.put(konto.getBenutzername(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Find which of the given usernames are already taken, in one query.
+     * 
+     * @param benutzernamen the usernames to check
+     * @return the subset of usernames that already exist
+     */
+    public Set<String> findExistingBenutzernamen(Collection<String> benutzernamen) {
+        Set<String> existing = new HashSet<>();
+        if (benutzernamen.isEmpty()) {
+            return existing;
+        }
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT benutzername FROM nutzer_konto WHERE benutzername = ANY(?)")) {
+            
+            stmt.setArray(1, conn.createArrayOf("varchar", benutzernamen.toArray()));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString("benutzername"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error checking existing usernames", e);
+            throw new RuntimeException("Error checking existing usernames", e);
+        }
+        return existing;
+    }
+
+    /**
+     * Stream all usernames to a consumer without loading them into memory at once.
+     * The rows are fetched through a cursor in chunks of {@value #SCAN_FETCH_SIZE}.
+     * 
+     * @param consumer receives every username
+     * @return the number of usernames scanned
+     */
+    public long forEachBenutzername(Consumer<String> consumer) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // The driver only uses a cursor inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT benutzername FROM nutzer_konto")) {
+                stmt.setFetchSize(SCAN_FETCH_SIZE);
+                
+                long count = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(rs.getString(1));
+                        count++;
+                    }
+                }
+                conn.commit();
+                return count;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error scanning usernames", e);
+            throw new RuntimeException("Error scanning usernames", e);
+        }
+    }
+
+    /**
+     * Find the username of an account without loading its associations.
+     * 
+     * @param id the account ID
+     * @return an Optional containing the username, or empty if not found
+     */
+    public Optional<String> findBenutzernameById(Long id) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT benutzername FROM nutzer_konto WHERE id = ?")) {
+            
+            stmt.setLong(1, id);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(rs.getString(1)) : Optional.empty();
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding username by ID", e);
+            return Optional.empty();
+        }
+    }
+
 /**
  * Find a user account by username.
  * 
@@ -170,6 +321,7 @@ public Optional<NutzerKonto> findByBenutzername(String benutzername) {
                 // Load related data with separate connections
                 loadUserTasks(konto);
                 loadUserAnswers(konto);
+                konto.markAssociationsPersisted();
                 
                 return Optional.of(konto);
             } else {
@@ -252,13 +404,12 @@ public NutzerKonto update(NutzerKonto konto) {
                 nutzerDAO.update(conn, konto.getNutzer()); // Pass the same connection
             }
 
-            // Update associated tasks and answers
-            deleteUserTasks(conn, konto.getId());
-            deleteUserAnswers(conn, konto.getId());
-            saveUserTasks(conn, konto);
-            saveUserAnswers(conn, konto);
+            // Persist only the changed task and answer associations
+            syncUserTasks(conn, konto);
+            syncUserAnswers(conn, konto);
 
             conn.commit(); // Commit transaction
+            konto.markAssociationsPersisted();
             logger.info("Updated user account: {}", konto.getBenutzername());
             return konto;
         } catch (SQLException e) {
@@ -272,6 +423,75 @@ public NutzerKonto update(NutzerKonto konto) {
     }
 }
 
+    /**
+     * Update only the password hash of an account.
+     *
+     * @param id the account ID
+     * @param passwortHash the new password hash
+     */
+    public void updatePasswortHash(Long id, String passwortHash) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE nutzer_konto SET passwort_hash = ? WHERE id = ?")) {
+
+            stmt.setString(1, passwortHash);
+            stmt.setLong(2, id);
+
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Updating password hash failed, no rows affected.");
+            }
+        } catch (SQLException e) {
+            logger.error("Error updating password hash", e);
+            throw new RuntimeException("Error updating password hash", e);
+        }
+    }
+
+    /**
+     * Update only the last login timestamp for a set of accounts in one statement.
+     * Timestamps older than the stored value are ignored.
+     *
+     * @param anmeldungen account ID -> last login time
+     * @return the number of updated rows
+     */
+    public int updateLetzteAnmeldungen(Map<Long, LocalDateTime> anmeldungen) {
+        if (anmeldungen.isEmpty()) {
+            return 0;
+        }
+
+        List<Map.Entry<Long, LocalDateTime>> entries = new ArrayList<>(anmeldungen.entrySet());
+        int updated = 0;
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            for (int start = 0; start < entries.size(); start += LAST_LOGIN_CHUNK_SIZE) {
+                List<Map.Entry<Long, LocalDateTime>> chunk =
+                        entries.subList(start, Math.min(start + LAST_LOGIN_CHUNK_SIZE, entries.size()));
+
+                StringBuilder sql = new StringBuilder(
+                    "UPDATE nutzer_konto k SET letzte_anmeldung = v.ts FROM (VALUES ");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "" : ", ").append("(?::integer, ?::timestamp)");
+                }
+                sql.append(") AS v(id, ts) " +
+                    "WHERE k.id = v.id AND (k.letzte_anmeldung IS NULL OR k.letzte_anmeldung < v.ts)");
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (Map.Entry<Long, LocalDateTime> entry : chunk) {
+                        stmt.setLong(index++, entry.getKey());
+                        stmt.setTimestamp(index++, Timestamp.valueOf(entry.getValue()));
+                    }
+                    updated += stmt.executeUpdate();
+                }
+            }
+
+            logger.debug("Updated last login for {} accounts", updated);
+            return updated;
+        } catch (SQLException e) {
+            logger.error("Error updating last login times", e);
+            throw new RuntimeException("Error updating last login times", e);
+        }
+    }
+
     /**
      * Delete a user account.
      * 
@@ -344,6 +564,7 @@ public NutzerKonto update(NutzerKonto konto) {
         // Load associated tasks and answers
         loadUserTasks(konto);
         loadUserAnswers(konto);
+        konto.markAssociationsPersisted();
         
         return konto;
     }
@@ -430,6 +651,159 @@ public NutzerKonto update(NutzerKonto konto) {
         }
     }
 
+    private void insertNutzerChunk(Connection conn, List<NutzerKonto> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO nutzer (vorname, nachname, email, rolle) VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?)");
+        }
+        sql.append(" RETURNING id, email");
+        
+        Map<String, NutzerKonto> byEmail = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (NutzerKonto konto : chunk) {
+                Nutzer nutzer = konto.getNutzer();
+                stmt.setString(index++, nutzer.getVorname());
+                stmt.setString(index++, nutzer.getNachname());
+                stmt.setString(index++, nutzer.getEmail());
+                stmt.setString(index++, nutzer.getRolle());
+                byEmail.put(nutzer.getEmail(), konto);
+            }
+            
+            // Map generated IDs by email since RETURNING order is not guaranteed
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    byEmail.get(rs.getString("email")).getNutzer().setId(rs.getLong("id"));
+                }
+            }
+        }
+    }
+
+    private void insertKontoChunk(Connection conn, List<NutzerKonto> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO nutzer_konto (benutzername, passwort_hash, aktiv, nutzer_id) VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?)");
+        }
+        sql.append(" RETURNING id, benutzername");
+        
+        Map<String, NutzerKonto> byBenutzername = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (NutzerKonto konto : chunk) {
+                stmt.setString(index++, konto.getBenutzername());
+                stmt.setString(index++, konto.getPasswortHash());
+                stmt.setBoolean(index++, konto.isAktiv());
+                stmt.setLong(index++, konto.getNutzer().getId());
+                byBenutzername.put(konto.getBenutzername(), konto);
+            }
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    byBenutzername.get(rs.getString("benutzername")).setId(rs.getLong("id"));
+                }
+            }
+        }
+    }
+
+    private void syncUserTasks(Connection conn, NutzerKonto konto) throws SQLException {
+        if (konto.getErstellteAufgaben() == null) {
+            // No list means no tasks, as the full rewrite did
+            deleteUserTasks(conn, konto.getId());
+            return;
+        }
+
+        Collection<Long> added;
+        if (konto.isAssociationStateKnown()) {
+            added = konto.getHinzugefuegteAufgabenIds();
+            Set<Long> removed = konto.getEntfernteAufgabenIds();
+            if (!removed.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM nutzer_aufgaben WHERE nutzer_id = ? AND aufgabe_id = ANY(?)")) {
+                    stmt.setLong(1, konto.getId());
+                    stmt.setArray(2, conn.createArrayOf("bigint", removed.toArray()));
+                    stmt.executeUpdate();
+                }
+            }
+        } else {
+            // Persisted state unknown: keep matching rows, drop the rest
+            added = new ArrayList<>();
+            for (Task task : konto.getErstellteAufgaben()) {
+                if (task.getId() != null) {
+                    added.add(task.getId());
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM nutzer_aufgaben WHERE nutzer_id = ? AND NOT (aufgabe_id = ANY(?))")) {
+                stmt.setLong(1, konto.getId());
+                stmt.setArray(2, conn.createArrayOf("bigint", added.toArray()));
+                stmt.executeUpdate();
+            }
+        }
+
+        if (added.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "INSERT INTO nutzer_aufgaben (nutzer_id, aufgabe_id) VALUES (?, ?) ON CONFLICT DO NOTHING")) {
+            for (Long taskId : added) {
+                stmt.setLong(1, konto.getId());
+                stmt.setLong(2, taskId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private void syncUserAnswers(Connection conn, NutzerKonto konto) throws SQLException {
+        if (konto.getAufgabenAntworten() == null) {
+            // No list means no answers, as the full rewrite did
+            deleteUserAnswers(conn, konto.getId());
+            return;
+        }
+
+        Map<Long, String> changed;
+        if (konto.isAssociationStateKnown()) {
+            changed = konto.getGeaenderteAntworten();
+            Set<Long> removed = konto.getEntfernteAntwortIds();
+            if (!removed.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM nutzer_antworten WHERE nutzer_id = ? AND aufgabe_id = ANY(?)")) {
+                    stmt.setLong(1, konto.getId());
+                    stmt.setArray(2, conn.createArrayOf("bigint", removed.toArray()));
+                    stmt.executeUpdate();
+                }
+            }
+        } else {
+            // Persisted state unknown: upsert everything, unchanged rows are not rewritten
+            changed = konto.getAufgabenAntworten();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM nutzer_antworten WHERE nutzer_id = ? AND NOT (aufgabe_id = ANY(?))")) {
+                stmt.setLong(1, konto.getId());
+                stmt.setArray(2, conn.createArrayOf("bigint", changed.keySet().toArray()));
+                stmt.executeUpdate();
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "INSERT INTO nutzer_antworten (nutzer_id, aufgabe_id, antwort) VALUES (?, ?, ?) " +
+            "ON CONFLICT (nutzer_id, aufgabe_id) DO UPDATE SET antwort = EXCLUDED.antwort " +
+            "WHERE nutzer_antworten.antwort IS DISTINCT FROM EXCLUDED.antwort")) {
+            for (Map.Entry<Long, String> entry : changed.entrySet()) {
+                stmt.setLong(1, konto.getId());
+                stmt.setLong(2, entry.getKey());
+                stmt.setString(3, entry.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
     private void deleteUserTasks(Connection conn, Long nutzerId) throws SQLException {
         try (PreparedStatement stmt = conn.prepareStatement(
             "DELETE FROM nutzer_aufgaben WHERE nutzer_id = ?")) {
@@ -0,0 +1,179 @@
+package com.klasurapp.dao;
+
+import com.klasurapp.model.NutzerKonto;
+import com.klasurapp.model.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Data Access Object for persisted sessions (used for failover only).
+ */
+public class SessionDAO {
+    private static final Logger logger = LoggerFactory.getLogger(SessionDAO.class);
+    private final NutzerKontoDAO nutzerKontoDAO;
+
+    public SessionDAO() {
+        this.nutzerKontoDAO = new NutzerKontoDAO();
+    }
+
+    /**
+     * Create the session table if it doesn't exist.
+     */
+    public void initializeTable() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS sessions (" +
+                "token_hash VARCHAR(64) PRIMARY KEY, " +
+                "konto_id INTEGER NOT NULL REFERENCES nutzer_konto(id) ON DELETE CASCADE, " +
+                "created_at TIMESTAMP NOT NULL, " +
+                "expires_at TIMESTAMP NOT NULL" +
+                ")"
+            );
+
+            // Last access, so that restored sessions keep their idle timer
+            stmt.execute("ALTER TABLE sessions ADD COLUMN IF NOT EXISTS last_access TIMESTAMP");
+
+            logger.info("Session table initialized");
+        } catch (SQLException e) {
+            logger.error("Error initializing session table", e);
+        }
+    }
+
+    /**
+     * Store a session.
+     *
+     * @param session the session to store
+     */
+    public void save(Session session) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO sessions (token_hash, konto_id, created_at, expires_at) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (token_hash) DO NOTHING")) {
+
+            stmt.setString(1, session.getTokenHash());
+            stmt.setLong(2, session.getKonto().getId());
+            stmt.setTimestamp(3, new Timestamp(session.getCreatedAtMillis()));
+            stmt.setTimestamp(4, new Timestamp(session.getExpiresAtMillis()));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error saving session", e);
+            throw new RuntimeException("Error saving session", e);
+        }
+    }
+
+    /**
+     * Store the last access of several sessions in one batch.
+     *
+     * @param lastAccess token hash -> last access time
+     */
+    public void updateLastAccess(Map<String, Long> lastAccess) {
+        if (lastAccess.isEmpty()) {
+            return;
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE sessions SET last_access = ? WHERE token_hash = ? " +
+                "AND (last_access IS NULL OR last_access < ?)")) {
+
+            for (Map.Entry<String, Long> entry : lastAccess.entrySet()) {
+                Timestamp time = new Timestamp(entry.getValue());
+                stmt.setTimestamp(1, time);
+                stmt.setString(2, entry.getKey());
+                stmt.setTimestamp(3, time);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            logger.error("Error updating session access times", e);
+            throw new RuntimeException("Error updating session access times", e);
+        }
+    }
+
+    /**
+     * Delete a session.
+     *
+     * @param tokenHash the hash of the session token
+     */
+    public void delete(String tokenHash) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM sessions WHERE token_hash = ?")) {
+
+            stmt.setString(1, tokenHash);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error deleting session", e);
+        }
+    }
+
+    /**
+     * Delete all sessions that expired before the given time or were idle for too long.
+     *
+     * @param nowMillis the current time
+     * @param idleTimeoutMillis the idle timeout
+     * @return the number of deleted sessions
+     */
+    public int deleteExpired(long nowMillis, long idleTimeoutMillis) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM sessions WHERE expires_at <= ? OR COALESCE(last_access, created_at) <= ?")) {
+
+            stmt.setTimestamp(1, new Timestamp(nowMillis));
+            stmt.setTimestamp(2, new Timestamp(nowMillis - idleTimeoutMillis));
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error deleting expired sessions", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Load all sessions that have not expired yet, including their accounts.
+     *
+     * @param nowMillis the current time
+     * @return a list of active sessions
+     */
+    public List<Session> findActive(long nowMillis) {
+        List<Session> sessions = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT token_hash, konto_id, created_at, expires_at, " +
+                "COALESCE(last_access, created_at) AS last_access FROM sessions WHERE expires_at > ?")) {
+
+            stmt.setTimestamp(1, new Timestamp(nowMillis));
+
+            List<Object[]> rows = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new Object[] {
+                        rs.getString("token_hash"),
+                        rs.getLong("konto_id"),
+                        rs.getTimestamp("created_at").getTime(),
+                        rs.getTimestamp("expires_at").getTime(),
+                        rs.getTimestamp("last_access").getTime()
+                    });
+                }
+            }
+
+            // Load the accounts after the result set is closed
+            for (Object[] row : rows) {
+                Optional<NutzerKonto> konto = nutzerKontoDAO.findById((Long) row[1]);
+                konto.ifPresent(k -> sessions.add(
+                        new Session((String) row[0], k, (Long) row[2], (Long) row[3], (Long) row[4])));
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading active sessions", e);
+        }
+        return sessions;
+    }
+}
@@ -12,12 +12,16 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object für Task-Operationen.
  */
 public class TaskDAO {
     private static final Logger logger = LoggerFactory.getLogger(TaskDAO.class);
+    // Statisch, da TaskDAO an vielen Stellen instanziiert wird
+    private static final List<Consumer<Task>> createListeners = new CopyOnWriteArrayList<>();
     private final ModuleDAO moduleDAO;
 
     public TaskDAO() {
@@ -77,6 +81,25 @@ public class TaskDAO {
         }
     }
 
+    /**
+     * Registriert einen Listener, der nach jedem erfolgreichen Erstellen einer Aufgabe
+     * aufgerufen wird, z.B. um Aufgabenpools fortzuschreiben.
+     * 
+     * @param listener Der Listener
+     */
+    public static void addCreateListener(Consumer<Task> listener) {
+        createListeners.add(listener);
+    }
+
+    /**
+     * Entfernt einen mit {@link #addCreateListener} registrierten Listener.
+     * 
+     * @param listener Der Listener
+     */
+    public static void removeCreateListener(Consumer<Task> listener) {
+        createListeners.remove(listener);
+    }
+
     /**
      * Erstellt eine neue Aufgabe in der Datenbank.
      * 
@@ -84,6 +107,19 @@ public class TaskDAO {
      * @return Die erstellte Aufgabe mit generierter ID
      */
     public Task create(Task task) {
+        Task created = insert(task);
+        // Erst nach dem Commit und außerhalb der Verbindung benachrichtigen
+        for (Consumer<Task> listener : createListeners) {
+            try {
+                listener.accept(created);
+            } catch (RuntimeException e) {
+                logger.error("Fehler im Listener nach dem Erstellen der Aufgabe", e);
+            }
+        }
+        return created;
+    }
+
+    private Task insert(Task task) {
         try (Connection conn = DatabaseConnection.getConnection()) {
             conn.setAutoCommit(false);
             
@@ -148,6 +184,66 @@ public class TaskDAO {
         }
     }
 
+    /**
+     * Findet mehrere Aufgaben mengenbasiert: eine Abfrage für die Aufgaben, eine für
+     * alle Antwortoptionen und eine je unterschiedlichem Modul.
+     * 
+     * @param ids Die Aufgaben-IDs
+     * @return Aufgabe-ID -> Aufgabe für alle gefundenen IDs
+     */
+    public Map<Long, Task> findByIds(Collection<Long> ids) {
+        Map<Long, Task> tasks = new HashMap<>();
+        if (ids.isEmpty()) {
+            return tasks;
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT t.id, t.name, t.text, t.estimated_time_minutes, " +
+                "t.bloom_level, t.task_format, t.module_id, " +
+                "ot.sample_solution, ct.closed_task_type, ct.correct_answer " +
+                "FROM tasks t " +
+                "LEFT JOIN open_tasks ot ON t.id = ot.task_id " +
+                "LEFT JOIN closed_tasks ct ON t.id = ct.task_id " +
+                "WHERE t.id = ANY(?)")) {
+
+            stmt.setArray(1, conn.createArrayOf("bigint", ids.toArray()));
+
+            Map<Long, Long> moduleIds = new HashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Task task = mapTaskRow(rs);
+                    tasks.put(task.getId(), task);
+                    moduleIds.put(task.getId(), rs.getLong("module_id"));
+                }
+            }
+
+            try (PreparedStatement optionStmt = conn.prepareStatement(
+                "SELECT task_id, option_text FROM closed_task_options " +
+                "WHERE task_id = ANY(?) ORDER BY task_id, option_order")) {
+                optionStmt.setArray(1, conn.createArrayOf("bigint", tasks.keySet().toArray()));
+                try (ResultSet rs = optionStmt.executeQuery()) {
+                    while (rs.next()) {
+                        Task task = tasks.get(rs.getLong("task_id"));
+                        if (task instanceof ClosedTask) {
+                            ((ClosedTask) task).addOption(rs.getString("option_text"));
+                        }
+                    }
+                }
+            }
+
+            // Module erst nach dem Lesen der Zeilen laden, da ModuleDAO die Verbindung schließt
+            Map<Long, Optional<Module>> modules = new HashMap<>();
+            for (Task task : tasks.values()) {
+                modules.computeIfAbsent(moduleIds.get(task.getId()), moduleDAO::findById).ifPresent(task::setModule);
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Aufgaben nach IDs", e);
+            throw new RuntimeException("Fehler beim Suchen der Aufgaben nach IDs", e);
+        }
+        return tasks;
+    }
+
     /**
      * Findet alle Aufgaben eines Moduls.
      * 
@@ -166,8 +262,12 @@ public class TaskDAO {
     public List<Task> findByModule(Connection conn, long moduleId) throws SQLException {
         List<Task> tasks = new ArrayList<>();
         try (PreparedStatement stmt = conn.prepareStatement(
-            "SELECT t.id, t.name, t.text, t.estimated_time_minutes, t.bloom_level, t.task_format, t.module_id " +
-            "FROM tasks t WHERE t.module_id = ?")) {
+            "SELECT t.id, t.name, t.text, t.estimated_time_minutes, t.bloom_level, t.task_format, t.module_id, " +
+            "ot.sample_solution, ct.closed_task_type, ct.correct_answer " +
+            "FROM tasks t " +
+            "LEFT JOIN open_tasks ot ON t.id = ot.task_id " +
+            "LEFT JOIN closed_tasks ct ON t.id = ct.task_id " +
+            "WHERE t.module_id = ?")) {
 
             stmt.setLong(1, moduleId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -180,6 +280,47 @@ public class TaskDAO {
         return tasks;
     }
 
+    /**
+     * Lädt die Basisdaten aller Aufgaben eines Moduls in einer Abfrage, z.B. für die
+     * automatische Klausurerstellung. Antwortoptionen und Lösungen werden nicht geladen,
+     * alle Aufgaben teilen sich dieselbe Modul-Instanz.
+     * 
+     * @param moduleId Die Modul-ID
+     * @return Liste von Aufgaben des Moduls ohne Detaildaten
+     */
+    public List<Task> findSummariesByModule(Long moduleId) {
+        Optional<Module> module = moduleDAO.findById(moduleId);
+        if (!module.isPresent()) {
+            return Collections.emptyList();
+        }
+        
+        List<Task> tasks = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, name, estimated_time_minutes, bloom_level, task_format " +
+                "FROM tasks WHERE module_id = ?")) {
+            
+            stmt.setLong(1, moduleId);
+            stmt.setFetchSize(10_000);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Task task = "OPEN".equalsIgnoreCase(rs.getString("task_format")) ? new OpenTask() : new ClosedTask();
+                    task.setId(rs.getLong("id"));
+                    task.setName(rs.getString("name"));
+                    task.setEstimatedTimeMinutes(rs.getInt("estimated_time_minutes"));
+                    task.setBloomLevel(BloomLevel.valueOf(rs.getString("bloom_level")));
+                    task.setModule(module.get());
+                    tasks.add(task);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden der Aufgabenübersicht des Moduls", e);
+            throw new RuntimeException("Fehler beim Laden der Aufgabenübersicht des Moduls", e);
+        }
+        return tasks;
+    }
+
     /**
      * Aktualisiert eine bestehende Aufgabe.
      */
@@ -385,6 +526,24 @@ public class TaskDAO {
     }
     
     private Task mapResultSetToTask(Connection conn, ResultSet rs) throws SQLException {
+        Task task = mapTaskRow(rs);
+        
+        // Get the module by its ID and set it on the task
+        long moduleId = rs.getLong("module_id");
+        moduleDAO.findById(moduleId).ifPresent(task::setModule);
+        
+        // If it's a closed task, load the options using the same connection
+        if (task instanceof ClosedTask) {
+            loadClosedTaskOptions(conn, (ClosedTask) task);
+        }
+        
+        return task;
+    }
+    
+    /**
+     * Liest die Felder einer Aufgabenzeile ohne Modul und Antwortoptionen.
+     */
+    private Task mapTaskRow(ResultSet rs) throws SQLException {
         // First set the ID to avoid null ID issues
         long taskId = rs.getLong("id");
         
@@ -404,13 +563,16 @@ public class TaskDAO {
         task.setEstimatedTimeMinutes(rs.getInt("estimated_time_minutes"));
         task.setBloomLevel(BloomLevel.valueOf(rs.getString("bloom_level")));
         
-        // Get the module by its ID and set it on the task
-        long moduleId = rs.getLong("module_id");
-        moduleDAO.findById(moduleId).ifPresent(task::setModule);
-        
-        // If it's a closed task, load the options using the same connection
-        if (task instanceof ClosedTask) {
-            loadClosedTaskOptions(conn, (ClosedTask) task);
+        // Type-specific data from the joined tables
+        if (task instanceof OpenTask) {
+            ((OpenTask) task).setSampleSolution(rs.getString("sample_solution"));
+        } else {
+            ClosedTask closedTask = (ClosedTask) task;
+            String closedTaskType = rs.getString("closed_task_type");
+            if (closedTaskType != null) {
+                closedTask.setClosedTaskType(ClosedTaskType.valueOf(closedTaskType));
+            }
+            closedTask.setCorrectAnswer(rs.getString("correct_answer"));
         }
         
         return task;
@@ -0,0 +1,362 @@
+package com.klasurapp.dao;
+
+import com.klasurapp.model.BloomLevel;
+import com.klasurapp.model.ExamPoolSlot;
+import com.klasurapp.model.Task;
+import com.klasurapp.model.TaskPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Data Access Object für Aufgabenpools und die daraus gezogenen Klausur-Slots.
+ */
+public class TaskPoolDAO {
+    private static final Logger logger = LoggerFactory.getLogger(TaskPoolDAO.class);
+
+    /**
+     * Erstellt die Datenbanktabellen für Aufgabenpools.
+     */
+    public void initializeTable() {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS task_pools (" +
+                "id SERIAL PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, " +
+                "module_id INTEGER NOT NULL, " +
+                "bloom_level VARCHAR(20), " +
+                "auto_include BOOLEAN NOT NULL DEFAULT FALSE, " +
+                "favor_low_exposure BOOLEAN NOT NULL DEFAULT TRUE" +
+                ")"
+            );
+
+            // Mitglieder eines Pools mit ihrem Grundgewicht
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS task_pool_members (" +
+                "pool_id INTEGER NOT NULL REFERENCES task_pools(id) ON DELETE CASCADE, " +
+                "task_id INTEGER NOT NULL REFERENCES tasks(id) ON DELETE CASCADE, " +
+                "weight DOUBLE PRECISION NOT NULL DEFAULT 1.0, " +
+                "PRIMARY KEY (pool_id, task_id)" +
+                ")"
+            );
+
+            // Slots einer Klausur: "ziehe count Aufgaben aus Pool pool_id"
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS exam_pool_slots (" +
+                "exam_id INTEGER NOT NULL REFERENCES exams(id) ON DELETE CASCADE, " +
+                "pool_id INTEGER NOT NULL REFERENCES task_pools(id) ON DELETE CASCADE, " +
+                "pick_count INTEGER NOT NULL, " +
+                "slot_order INTEGER NOT NULL, " +
+                "PRIMARY KEY (exam_id, slot_order)" +
+                ")"
+            );
+
+            logger.info("Aufgabenpool-Tabellen initialisiert");
+        } catch (SQLException e) {
+            logger.error("Fehler beim Initialisieren der Aufgabenpool-Tabellen", e);
+        }
+    }
+
+    /**
+     * Erstellt einen neuen Aufgabenpool.
+     *
+     * @param pool Der zu erstellende Pool
+     * @return Der erstellte Pool mit generierter ID
+     */
+    public TaskPool create(TaskPool pool) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO task_pools (name, module_id, bloom_level, auto_include, favor_low_exposure) " +
+                "VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+
+            stmt.setString(1, pool.getName());
+            stmt.setLong(2, pool.getModuleId());
+            stmt.setString(3, pool.getBloomLevel() != null ? pool.getBloomLevel().name() : null);
+            stmt.setBoolean(4, pool.isAutoInclude());
+            stmt.setBoolean(5, pool.isFavorLowExposure());
+
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Erstellen des Aufgabenpools fehlgeschlagen, keine Zeilen betroffen.");
+            }
+
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    pool.setId(generatedKeys.getLong(1));
+                } else {
+                    throw new SQLException("Erstellen des Aufgabenpools fehlgeschlagen, keine ID erhalten.");
+                }
+            }
+
+            logger.info("Aufgabenpool erstellt: {}", pool.getName());
+            return pool;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Erstellen des Aufgabenpools", e);
+            throw new RuntimeException("Fehler beim Erstellen des Aufgabenpools", e);
+        }
+    }
+
+    /**
+     * Findet einen Aufgabenpool anhand seiner ID.
+     *
+     * @param id Die Pool-ID
+     * @return Optional mit dem Pool oder leer wenn nicht gefunden
+     */
+    public Optional<TaskPool> findById(Long id) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, name, module_id, bloom_level, auto_include, favor_low_exposure " +
+                "FROM task_pools WHERE id = ?")) {
+
+            stmt.setLong(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(mapResultSetToPool(rs)) : Optional.empty();
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen des Aufgabenpools nach ID", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Findet alle Aufgabenpools eines Moduls.
+     *
+     * @param moduleId Die Modul-ID
+     * @return Liste der Pools des Moduls
+     */
+    public List<TaskPool> findByModule(Long moduleId) {
+        List<TaskPool> pools = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, name, module_id, bloom_level, auto_include, favor_low_exposure " +
+                "FROM task_pools WHERE module_id = ? ORDER BY name")) {
+
+            stmt.setLong(1, moduleId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pools.add(mapResultSetToPool(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Aufgabenpools nach Modul", e);
+        }
+
+        return pools;
+    }
+
+    /**
+     * Fügt eine Aufgabe einem Pool hinzu oder ändert ihr Gewicht.
+     *
+     * @param poolId Die Pool-ID
+     * @param taskId Die Aufgaben-ID
+     * @param weight Das Grundgewicht (größer 0)
+     */
+    public void addMember(Long poolId, Long taskId, double weight) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO task_pool_members (pool_id, task_id, weight) VALUES (?, ?, ?) " +
+                "ON CONFLICT (pool_id, task_id) DO UPDATE SET weight = EXCLUDED.weight")) {
+
+            stmt.setLong(1, poolId);
+            stmt.setLong(2, taskId);
+            stmt.setDouble(3, weight);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Fehler beim Hinzufügen der Aufgabe zum Pool", e);
+            throw new RuntimeException("Fehler beim Hinzufügen der Aufgabe zum Pool", e);
+        }
+    }
+
+    /**
+     * Fügt alle passenden Aufgaben eines Moduls in einer Anweisung einem Pool hinzu.
+     *
+     * @param pool Der Pool
+     * @return Anzahl der neu hinzugefügten Aufgaben
+     */
+    public int addMatchingTasks(TaskPool pool) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO task_pool_members (pool_id, task_id, weight) " +
+                "SELECT ?, t.id, 1.0 FROM tasks t " +
+                "WHERE t.module_id = ? AND (?::varchar IS NULL OR t.bloom_level = ?) " +
+                "ON CONFLICT (pool_id, task_id) DO NOTHING")) {
+
+            String bloomLevel = pool.getBloomLevel() != null ? pool.getBloomLevel().name() : null;
+            stmt.setLong(1, pool.getId());
+            stmt.setLong(2, pool.getModuleId());
+            stmt.setString(3, bloomLevel);
+            stmt.setString(4, bloomLevel);
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Fehler beim Befüllen des Aufgabenpools", e);
+            throw new RuntimeException("Fehler beim Befüllen des Aufgabenpools", e);
+        }
+    }
+
+    /**
+     * Lädt die Pools, denen eine neue Aufgabe automatisch beitritt.
+     *
+     * @param moduleId Die Modul-ID der Aufgabe
+     * @return Liste der Pools mit automatischer Aufnahme
+     */
+    public List<TaskPool> findAutoIncludePools(Long moduleId) {
+        List<TaskPool> pools = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, name, module_id, bloom_level, auto_include, favor_low_exposure " +
+                "FROM task_pools WHERE module_id = ? AND auto_include")) {
+
+            stmt.setLong(1, moduleId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pools.add(mapResultSetToPool(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der automatischen Aufgabenpools", e);
+        }
+
+        return pools;
+    }
+
+    /**
+     * Lädt die wirksamen Gewichte aller Mitglieder eines Pools. Bei Pools, die selten
+     * gezeigte Aufgaben bevorzugen, wird das Grundgewicht durch (1 + Anzahl Antworten) geteilt.
+     *
+     * @param pool Der Pool
+     * @return Aufgaben-ID -> wirksames Gewicht, sortiert nach Aufgaben-ID
+     */
+    public Map<Long, Double> findEffectiveWeights(TaskPool pool) {
+        Map<Long, Double> weights = new LinkedHashMap<>();
+        String sql = pool.isFavorLowExposure()
+                ? "SELECT m.task_id, m.weight / (1 + COUNT(a.id)) AS weight " +
+                  "FROM task_pool_members m LEFT JOIN answers a ON a.task_id = m.task_id " +
+                  "WHERE m.pool_id = ? GROUP BY m.task_id, m.weight ORDER BY m.task_id"
+                : "SELECT task_id, weight FROM task_pool_members WHERE pool_id = ? ORDER BY task_id";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, pool.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    weights.put(rs.getLong("task_id"), rs.getDouble("weight"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Laden der Poolgewichte", e);
+            throw new RuntimeException("Fehler beim Laden der Poolgewichte", e);
+        }
+        return weights;
+    }
+
+    /**
+     * Hängt einen Pool-Slot an eine Klausur an.
+     *
+     * @param slot Der Slot (Klausur, Pool, Anzahl)
+     * @return Der Slot mit seiner Position
+     */
+    public ExamPoolSlot addSlot(ExamPoolSlot slot) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO exam_pool_slots (exam_id, pool_id, pick_count, slot_order) " +
+                "SELECT ?, ?, ?, COALESCE(MAX(slot_order) + 1, 0) FROM exam_pool_slots WHERE exam_id = ? " +
+                "RETURNING slot_order")) {
+
+            stmt.setLong(1, slot.getExamId());
+            stmt.setLong(2, slot.getPoolId());
+            stmt.setInt(3, slot.getCount());
+            stmt.setLong(4, slot.getExamId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    slot.setSlotOrder(rs.getInt(1));
+                }
+            }
+            return slot;
+        } catch (SQLException e) {
+            logger.error("Fehler beim Hinzufügen des Klausur-Slots", e);
+            throw new RuntimeException("Fehler beim Hinzufügen des Klausur-Slots", e);
+        }
+    }
+
+    /**
+     * Findet die Pool-Slots einer Klausur.
+     *
+     * @param examId Die Klausur-ID
+     * @return Liste der Slots in ihrer Reihenfolge
+     */
+    public List<ExamPoolSlot> findSlots(Long examId) {
+        List<ExamPoolSlot> slots = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT exam_id, pool_id, pick_count, slot_order FROM exam_pool_slots " +
+                "WHERE exam_id = ? ORDER BY slot_order")) {
+
+            stmt.setLong(1, examId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ExamPoolSlot slot = new ExamPoolSlot(rs.getLong("exam_id"), rs.getLong("pool_id"),
+                            rs.getInt("pick_count"));
+                    slot.setSlotOrder(rs.getInt("slot_order"));
+                    slots.add(slot);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fehler beim Suchen der Klausur-Slots", e);
+        }
+
+        return slots;
+    }
+
+    // Hilfsmethoden
+
+    private TaskPool mapResultSetToPool(ResultSet rs) throws SQLException {
+        TaskPool pool = new TaskPool(rs.getString("name"), rs.getLong("module_id"));
+        pool.setId(rs.getLong("id"));
+        String bloomLevel = rs.getString("bloom_level");
+        if (bloomLevel != null) {
+            pool.setBloomLevel(BloomLevel.valueOf(bloomLevel));
+        }
+        pool.setAutoInclude(rs.getBoolean("auto_include"));
+        pool.setFavorLowExposure(rs.getBoolean("favor_low_exposure"));
+        return pool;
+    }
+
+    /**
+     * Nimmt eine neu erstellte Aufgabe in alle passenden Pools mit automatischer Aufnahme auf.
+     *
+     * @param task Die neue Aufgabe
+     * @return Die Pools, denen die Aufgabe beigetreten ist
+     */
+    public List<TaskPool> addToAutoIncludePools(Task task) {
+        List<TaskPool> joined = new ArrayList<>();
+        if (task.getModule() == null || task.getModule().getId() == null) {
+            return joined;
+        }
+
+        for (TaskPool pool : findAutoIncludePools(task.getModule().getId())) {
+            if (pool.accepts(task)) {
+                addMember(pool.getId(), task.getId(), 1.0);
+                joined.add(pool);
+            }
+        }
+        return joined;
+    }
+}
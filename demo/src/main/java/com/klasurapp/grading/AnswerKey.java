@@ -0,0 +1,24 @@
+package com.klasurapp.grading;
+
+/**
+ * The solution of a closed task, parsed once so that answers are scored without
+ * parsing the solution again and without allocating.
+ * <p>
+ * Answers use the stored option numbers, as {@link com.klasurapp.service.ExamInstance}
+ * maps them back before they are saved.
+ */
+public interface AnswerKey {
+
+    /**
+     * @param answer the selected option(s) as stored; may be null
+     * @return the share of the full score the answer earns, from 0 to 1
+     */
+    double score(String answer);
+
+    /**
+     * @return true if the answer earns the full score
+     */
+    default boolean isCorrect(String answer) {
+        return score(answer) == 1.0;
+    }
+}
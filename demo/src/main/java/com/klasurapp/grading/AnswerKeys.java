@@ -0,0 +1,118 @@
+package com.klasurapp.grading;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.klasurapp.model.ClosedTaskType;
+
+/**
+ * Compiles the solution of a closed task into an {@link AnswerKey}.
+ * <p>
+ * Multiple choice keys are a bit set of options, ranking keys a permutation, matching
+ * keys a map from left to right items, gap text keys a trie of accepted words per gap.
+ * A solution that does not parse for its type, and every other type, is compared as
+ * trimmed text.
+ * <p>
+ * Keys hold no state, so the most recently compiled ones are shared: tasks loaded again
+ * with the same solution do not compile it again.
+ */
+public final class AnswerKeys {
+    // Bit sets and masks are one long
+    static final int MAX_ITEMS = 64;
+    private static final int CACHE_SIZE = 4096;
+    /**
+     * Edits a gap text word may be away from an accepted word, set with
+     * {@code -Dklasurapp.gaptext.maxEdits}; 0, the default, asks for the word itself.
+     */
+    private static final int GAP_TEXT_MAX_EDITS = Integer.getInteger("klasurapp.gaptext.maxEdits", 0);
+
+    // Least recently used first; guarded by itself
+    private static final Map<String, AnswerKey> compiled = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AnswerKey> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private AnswerKeys() {
+    }
+
+    /**
+     * @param type the type of the task
+     * @param solution the stored solution, e.g. "1,3", "2,1,3", "1-b,2-a" or "Berlin|Bonn;1990"
+     * @param optionCount the number of options of the task, 0 if it has none
+     * @return the compiled key; never null
+     */
+    public static AnswerKey compile(ClosedTaskType type, String solution, int optionCount) {
+        if (solution == null) {
+            return ExactKey.NONE;
+        }
+        String cacheKey = type + ":" + optionCount + ":" + solution;
+        AnswerKey key;
+        synchronized (compiled) {
+            key = compiled.get(cacheKey);
+        }
+        if (key == null) {
+            key = compileUncached(type, solution, optionCount);
+            synchronized (compiled) {
+                compiled.put(cacheKey, key);
+            }
+        }
+        return key;
+    }
+
+    private static AnswerKey compileUncached(ClosedTaskType type, String solution, int optionCount) {
+        AnswerKey key = null;
+        if (type == ClosedTaskType.MULTIPLE_CHOICE) {
+            key = OptionSetKey.compile(solution, optionCount);
+        } else if (type == ClosedTaskType.RANKING) {
+            key = RankingKey.compile(solution, optionCount);
+        } else if (type == ClosedTaskType.MATCHING) {
+            key = MatchingKey.compile(solution);
+        } else if (type == ClosedTaskType.TRUE_FALSE) {
+            key = TrueFalseKey.compile(solution);
+        } else if (type == ClosedTaskType.GAP_TEXT) {
+            key = GapTextKey.compile(solution, GAP_TEXT_MAX_EDITS);
+        }
+        return key != null ? key : new ExactKey(solution);
+    }
+
+    /**
+     * Read the option number starting at {@code from}: digits with optional blanks
+     * around them, ended by a comma or the end of the text.
+     *
+     * @return the number in the low 32 bits and the index after the comma in the high
+     *         32 bits; -1 if there is no number there
+     */
+    static long nextNumber(String text, int from) {
+        int length = text.length();
+        int i = skipBlanks(text, from, length);
+        int number = 0;
+        int digits = 0;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            if (++digits > 4) {
+                return -1;
+            }
+            number = number * 10 + (text.charAt(i++) - '0');
+        }
+        i = skipBlanks(text, i, length);
+        if (digits == 0 || (i < length && text.charAt(i) != ',')) {
+            return -1;
+        }
+        return ((long) (i < length ? i + 1 : length) << 32) | number;
+    }
+
+    static int skipBlanks(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    static int trimEnd(String text, int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,26 @@
+package com.klasurapp.grading;
+
+/**
+ * Full score if the answer equals the solution, ignoring blanks around both.
+ */
+final class ExactKey implements AnswerKey {
+    // A task without solution: nothing is correct
+    static final ExactKey NONE = new ExactKey(null);
+
+    private final String solution;
+
+    ExactKey(String solution) {
+        this.solution = solution != null ? solution.trim() : null;
+    }
+
+    @Override
+    public double score(String answer) {
+        if (solution == null || answer == null) {
+            return 0;
+        }
+        int start = AnswerKeys.skipBlanks(answer, 0, answer.length());
+        int end = AnswerKeys.trimEnd(answer, start, answer.length());
+        return end - start == solution.length() && answer.regionMatches(start, solution, 0, solution.length())
+                ? 1 : 0;
+    }
+}
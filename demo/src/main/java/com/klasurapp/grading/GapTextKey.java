@@ -0,0 +1,216 @@
+package com.klasurapp.grading;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Gap text: the accepted words for each gap, written as {@code "Berlin|Bonn;1990"} with
+ * gaps separated by ';' and alternatives of a gap by '|'. The answer lists its gaps in
+ * the same order, separated by ';'. Each gap filled with an accepted word earns an
+ * equal share of the score.
+ * <p>
+ * Words are compared after {@link #normalize}: so "  Müller ", "MUELLER" and
+ * "müller" all match "Müller". The accepted words of a gap are kept in a trie.
+ * With {@code maxEdits} above 0, a word also matches if it is that many insertions,
+ * deletions or substitutions away from an accepted word; the trie is then searched
+ * with one row of the edit distance table per level, skipping branches that are
+ * already too far away. Words shorter than {@link #MIN_FUZZY_LENGTH} must match
+ * exactly, as a single edit changes them too much.
+ */
+final class GapTextKey implements AnswerKey {
+    static final int MIN_FUZZY_LENGTH = 4;
+
+    private final Node[] gaps;
+    private final int maxEdits;
+
+    private GapTextKey(Node[] gaps, int maxEdits) {
+        this.gaps = gaps;
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * @return the key, or null if a gap has no accepted word
+     */
+    static GapTextKey compile(String solution, int maxEdits) {
+        String[] gapTexts = solution.split(";", -1);
+        Node[] gaps = new Node[gapTexts.length];
+        for (int g = 0; g < gaps.length; g++) {
+            Builder root = new Builder();
+            for (String alternative : gapTexts[g].split("\\|")) {
+                String word = normalize(alternative);
+                if (!word.isEmpty()) {
+                    root.add(word);
+                }
+            }
+            if (!root.terminal && root.children.isEmpty()) {
+                return null;
+            }
+            gaps[g] = root.build();
+        }
+        return new GapTextKey(gaps, Math.max(0, maxEdits));
+    }
+
+    @Override
+    public double score(String answer) {
+        if (answer == null) {
+            return 0;
+        }
+        int correct = 0;
+        int from = 0;
+        for (int g = 0; g < gaps.length && from <= answer.length(); g++) {
+            int end = answer.indexOf(';', from);
+            if (end < 0 || g == gaps.length - 1) {
+                // The last gap takes the rest, so a stray ';' costs only that gap
+                end = answer.length();
+            }
+            if (matches(gaps[g], normalize(answer.substring(from, end)))) {
+                correct++;
+            }
+            from = end + 1;
+        }
+        return (double) correct / gaps.length;
+    }
+
+    private boolean matches(Node root, String word) {
+        if (root.find(word)) {
+            return true;
+        }
+        int edits = word.length() < MIN_FUZZY_LENGTH ? 0 : maxEdits;
+        if (edits == 0) {
+            return false;
+        }
+        int n = word.length();
+        int[] first = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            first[i] = i;
+        }
+        // One row per trie level, reused for every branch on that level
+        int[][] rows = new int[root.height + 1][n + 1];
+        rows[0] = first;
+        return search(root, word, rows, 1, edits);
+    }
+
+    private static boolean search(Node node, String word, int[][] rows, int depth, int edits) {
+        int n = word.length();
+        int[] previous = rows[depth - 1];
+        int[] row = rows[depth];
+        for (int c = 0; c < node.labels.length; c++) {
+            char label = node.labels[c];
+            Node child = node.children[c];
+            row[0] = depth;
+            int best = row[0];
+            for (int i = 1; i <= n; i++) {
+                int cost = word.charAt(i - 1) == label ? 0 : 1;
+                int value = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                row[i] = value;
+                best = Math.min(best, value);
+            }
+            if (child.terminal && row[n] <= edits) {
+                return true;
+            }
+            if (best <= edits && child.labels.length > 0 && search(child, word, rows, depth + 1, edits)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Normalize a word for comparison: Unicode NFC, blanks trimmed and runs of blanks
+     * made one space, lower case, and ä, ö, ü and ß written as ae, oe, ue and ss.
+     */
+    static String normalize(String text) {
+        String composed = Normalizer.isNormalized(text, Normalizer.Form.NFC)
+                ? text : Normalizer.normalize(text, Normalizer.Form.NFC);
+        StringBuilder out = new StringBuilder(composed.length() + 4);
+        boolean blank = false;
+        for (int i = 0; i < composed.length(); i++) {
+            char c = composed.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                blank = out.length() > 0;
+                continue;
+            }
+            if (blank) {
+                out.append(' ');
+                blank = false;
+            }
+            c = Character.toLowerCase(Character.toUpperCase(c));
+            switch (c) {
+                case 'ä':
+                    out.append("ae");
+                    break;
+                case 'ö':
+                    out.append("oe");
+                    break;
+                case 'ü':
+                    out.append("ue");
+                    break;
+                case 'ß':
+                    out.append("ss");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A trie node after compiling: child labels sorted for binary search.
+     */
+    private static final class Node {
+        final char[] labels;
+        final Node[] children;
+        final boolean terminal;
+        // Longest path below this node
+        final int height;
+
+        Node(char[] labels, Node[] children, boolean terminal, int height) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+            this.height = height;
+        }
+
+        boolean find(String word) {
+            Node node = this;
+            for (int i = 0; i < word.length(); i++) {
+                int c = Arrays.binarySearch(node.labels, word.charAt(i));
+                if (c < 0) {
+                    return false;
+                }
+                node = node.children[c];
+            }
+            return node.terminal;
+        }
+    }
+
+    private static final class Builder {
+        final Map<Character, Builder> children = new TreeMap<>();
+        boolean terminal;
+
+        void add(String word) {
+            Builder node = this;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), c -> new Builder());
+            }
+            node.terminal = true;
+        }
+
+        Node build() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int height = 0;
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                height = Math.max(height, nodes[i].height + 1);
+                i++;
+            }
+            return new Node(labels, nodes, terminal, height);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.klasurapp.grading;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matching: the correct partner of each left item, written as pairs like
+ * {@code "1-b,2-a"}; items may be numbers or words, pairs are joined by '-', ':' or
+ * '=' and separated by ',' or ';'. Each left item matched correctly earns an equal
+ * share of the score. A left item matched more than once earns nothing, so listing
+ * every combination does not pay; pairs with unknown items are ignored.
+ */
+final class MatchingKey implements AnswerKey {
+    private final String[] left;
+    private final String[] right;
+    // Index into right of the partner of each left item
+    private final int[] partner;
+
+    private MatchingKey(String[] left, String[] right, int[] partner) {
+        this.left = left;
+        this.right = right;
+        this.partner = partner;
+    }
+
+    /**
+     * @return the key, or null if the solution is not a list of pairs
+     */
+    static MatchingKey compile(String solution) {
+        List<String> lefts = new ArrayList<>();
+        List<String> rights = new ArrayList<>();
+        List<Integer> partners = new ArrayList<>();
+        int i = 0;
+        int length = solution.length();
+        while (i < length) {
+            int end = pairEnd(solution, i, length);
+            int join = joinIndex(solution, i, end);
+            if (join < 0) {
+                return null;
+            }
+            String l = token(solution, i, join);
+            String r = token(solution, rightStart(solution, join, end), end);
+            if (l.isEmpty() || r.isEmpty() || indexOf(lefts, l) >= 0 || lefts.size() == AnswerKeys.MAX_ITEMS) {
+                return null;
+            }
+            int ri = indexOf(rights, r);
+            if (ri < 0) {
+                ri = rights.size();
+                rights.add(r);
+            }
+            lefts.add(l);
+            partners.add(ri);
+            i = end + 1;
+        }
+        if (lefts.isEmpty()) {
+            return null;
+        }
+        int[] partner = new int[partners.size()];
+        for (int p = 0; p < partner.length; p++) {
+            partner[p] = partners.get(p);
+        }
+        return new MatchingKey(lefts.toArray(new String[0]), rights.toArray(new String[0]), partner);
+    }
+
+    @Override
+    public double score(String answer) {
+        if (answer == null) {
+            return 0;
+        }
+        long seen = 0;
+        long twice = 0;
+        long correct = 0;
+        int i = 0;
+        int length = answer.length();
+        while (i < length) {
+            int end = pairEnd(answer, i, length);
+            int join = joinIndex(answer, i, end);
+            if (join >= 0) {
+                int l = find(left, answer, i, join);
+                if (l >= 0) {
+                    long bit = 1L << l;
+                    twice |= seen & bit;
+                    seen |= bit;
+                    if (find(right, answer, rightStart(answer, join, end), end) == partner[l]) {
+                        correct |= bit;
+                    }
+                }
+            }
+            i = end + 1;
+        }
+        return (double) Long.bitCount(correct & ~twice) / left.length;
+    }
+
+    private static int pairEnd(String text, int from, int length) {
+        while (from < length && text.charAt(from) != ',' && text.charAt(from) != ';') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int joinIndex(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ':' || c == '=') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the start of the right item, after the join and an optional '>' as in "->"
+     */
+    private static int rightStart(String text, int join, int end) {
+        return join + 1 < end && text.charAt(join + 1) == '>' ? join + 2 : join + 1;
+    }
+
+    private static String token(String text, int from, int to) {
+        int start = AnswerKeys.skipBlanks(text, from, to);
+        return text.substring(start, AnswerKeys.trimEnd(text, start, to));
+    }
+
+    private static int indexOf(List<String> tokens, String token) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).equalsIgnoreCase(token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the item written in text[from, to), ignoring case and blanks; -1 if unknown
+     */
+    private static int find(String[] items, String text, int from, int to) {
+        int start = AnswerKeys.skipBlanks(text, from, to);
+        int end = AnswerKeys.trimEnd(text, start, to);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].length() == end - start && text.regionMatches(true, start, items[i], 0, end - start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
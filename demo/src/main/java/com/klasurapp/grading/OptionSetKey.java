@@ -0,0 +1,70 @@
+package com.klasurapp.grading;
+
+/**
+ * Multiple choice: the correct options as a bit set, so the order in which options are
+ * listed does not matter.
+ * <p>
+ * Each correct option chosen earns an equal share of the score and each wrong option
+ * chosen costs the same share, never below 0; choosing every option earns nothing.
+ * An answer naming an option the task does not have earns nothing.
+ */
+final class OptionSetKey implements AnswerKey {
+    private final long correct;
+    private final int correctCount;
+    private final int optionCount;
+
+    private OptionSetKey(long correct, int optionCount) {
+        this.correct = correct;
+        this.correctCount = Long.bitCount(correct);
+        this.optionCount = optionCount;
+    }
+
+    /**
+     * @return the key, or null if the solution is not a list of option numbers
+     */
+    static OptionSetKey compile(String solution, int optionCount) {
+        int limit = optionCount > 0 ? Math.min(optionCount, AnswerKeys.MAX_ITEMS) : AnswerKeys.MAX_ITEMS;
+        long set = parse(solution, limit);
+        return set > 0 ? new OptionSetKey(set, limit) : null;
+    }
+
+    @Override
+    public double score(String answer) {
+        if (answer == null) {
+            return 0;
+        }
+        long chosen = parse(answer, optionCount);
+        if (chosen < 0) {
+            return 0;
+        }
+        int earned = Long.bitCount(chosen & correct) - Long.bitCount(chosen & ~correct);
+        return earned <= 0 ? 0 : (double) earned / correctCount;
+    }
+
+    /**
+     * @return the options as bits, bit 0 for option 1; -1 if the text does not parse or
+     *         names an option above the limit. Option 64 cannot be told apart from an
+     *         error and is not supported.
+     */
+    private static long parse(String text, int limit) {
+        long set = 0;
+        int i = 0;
+        int length = text.length();
+        if (AnswerKeys.skipBlanks(text, 0, length) == length) {
+            return 0;
+        }
+        while (i < length) {
+            long next = AnswerKeys.nextNumber(text, i);
+            if (next < 0) {
+                return -1;
+            }
+            int number = (int) next;
+            if (number < 1 || number > Math.min(limit, AnswerKeys.MAX_ITEMS - 1)) {
+                return -1;
+            }
+            set |= 1L << (number - 1);
+            i = (int) (next >>> 32);
+        }
+        return set;
+    }
+}
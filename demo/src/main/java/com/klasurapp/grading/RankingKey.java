@@ -0,0 +1,93 @@
+package com.klasurapp.grading;
+
+/**
+ * Ranking: the correct order as a permutation. The score is one minus the normalized
+ * Kendall tau distance, the share of item pairs the answer puts in the wrong order; a
+ * reversed order earns nothing. An answer that does not name every item exactly once
+ * earns nothing.
+ * <p>
+ * Pairs are counted while the answer is read: for each item, the items already read
+ * that belong after it are found in a bit mask of correct positions, so scoring takes
+ * one pass and no memory.
+ */
+final class RankingKey implements AnswerKey {
+    // Correct position of each item, indexed by item number - 1
+    private final int[] position;
+    private final double pairs;
+
+    private RankingKey(int[] position) {
+        this.position = position;
+        int n = position.length;
+        this.pairs = n * (n - 1) / 2.0;
+    }
+
+    /**
+     * @return the key, or null if the solution is not a permutation of the items
+     */
+    static RankingKey compile(String solution, int optionCount) {
+        int[] order = new int[AnswerKeys.MAX_ITEMS];
+        int count = 0;
+        long seen = 0;
+        int i = 0;
+        while (i < solution.length()) {
+            long next = AnswerKeys.nextNumber(solution, i);
+            if (next < 0 || count == order.length) {
+                return null;
+            }
+            int number = (int) next;
+            if (number < 1 || number > AnswerKeys.MAX_ITEMS || (seen & (1L << (number - 1))) != 0) {
+                return null;
+            }
+            seen |= 1L << (number - 1);
+            order[count++] = number;
+            i = (int) (next >>> 32);
+        }
+        if (count == 0 || (optionCount > 0 && count != optionCount) || Long.bitCount(seen) != count
+                || Long.numberOfTrailingZeros(~seen) != count) {
+            // Not exactly the items 1..n
+            return null;
+        }
+        int[] position = new int[count];
+        for (int p = 0; p < count; p++) {
+            position[order[p] - 1] = p;
+        }
+        return new RankingKey(position);
+    }
+
+    @Override
+    public double score(String answer) {
+        if (answer == null) {
+            return 0;
+        }
+        int n = position.length;
+        long placed = 0;
+        int count = 0;
+        int discordant = 0;
+        int i = 0;
+        while (i < answer.length()) {
+            long next = AnswerKeys.nextNumber(answer, i);
+            if (next < 0) {
+                return 0;
+            }
+            int number = (int) next;
+            if (number < 1 || number > n) {
+                return 0;
+            }
+            int p = position[number - 1];
+            long bit = 1L << p;
+            if ((placed & bit) != 0) {
+                return 0;
+            }
+            // Items already placed whose correct position is after this one
+            long after = p == AnswerKeys.MAX_ITEMS - 1 ? 0 : -1L << (p + 1);
+            discordant += Long.bitCount(placed & after);
+            placed |= bit;
+            count++;
+            i = (int) (next >>> 32);
+        }
+        if (count != n) {
+            return 0;
+        }
+        return n == 1 ? 1 : 1 - discordant / pairs;
+    }
+}
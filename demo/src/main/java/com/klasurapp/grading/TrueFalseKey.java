@@ -0,0 +1,54 @@
+package com.klasurapp.grading;
+
+/**
+ * Full score if the answer states the same truth value as the solution, whichever of
+ * the accepted spellings it uses, e.g. "1", "wahr" or "true".
+ */
+final class TrueFalseKey implements AnswerKey {
+    private static final String[] TRUE = {"1", "w", "wahr", "true", "richtig"};
+    private static final String[] FALSE = {"0", "2", "f", "falsch", "false"};
+
+    private final boolean value;
+
+    private TrueFalseKey(boolean value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the key, or null if the solution is no truth value
+     */
+    static TrueFalseKey compile(String solution) {
+        int value = parse(solution);
+        return value < 0 ? null : new TrueFalseKey(value == 1);
+    }
+
+    @Override
+    public double score(String answer) {
+        int parsed = parse(answer);
+        return parsed >= 0 && (parsed == 1) == value ? 1 : 0;
+    }
+
+    /**
+     * @return 1 for true, 0 for false, -1 if the text is neither
+     */
+    private static int parse(String text) {
+        if (text == null) {
+            return -1;
+        }
+        int start = AnswerKeys.skipBlanks(text, 0, text.length());
+        int end = AnswerKeys.trimEnd(text, start, text.length());
+        if (matches(text, start, end, TRUE)) {
+            return 1;
+        }
+        return matches(text, start, end, FALSE) ? 0 : -1;
+    }
+
+    private static boolean matches(String text, int start, int end, String[] spellings) {
+        for (String spelling : spellings) {
+            if (spelling.length() == end - start && text.regionMatches(true, start, spelling, 0, spelling.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
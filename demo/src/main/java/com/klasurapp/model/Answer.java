@@ -3,6 +3,7 @@ package com.klasurapp.model;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Base class for all answers to exam tasks.
@@ -11,6 +12,8 @@ public abstract class Answer {
     private Long id;
     private Long taskId;
     private Long userId;
+    private Long attemptId;
+    private UUID submissionKey;
     private LocalDateTime submissionTime;
     private boolean isGraded;
     private Double score;
@@ -52,6 +55,29 @@ public abstract class Answer {
         this.userId = userId;
     }
 
+    /**
+     * @return the exam attempt the answer was given in, null for answers outside an exam
+     */
+    public Long getAttemptId() {
+        return attemptId;
+    }
+
+    public void setAttemptId(Long attemptId) {
+        this.attemptId = attemptId;
+    }
+
+    /**
+     * @return identifies one submission of the answer; storing the same submission
+     *         again does not create a second row. Null for answers stored directly.
+     */
+    public UUID getSubmissionKey() {
+        return submissionKey;
+    }
+
+    public void setSubmissionKey(UUID submissionKey) {
+        this.submissionKey = submissionKey;
+    }
+
     public LocalDateTime getSubmissionTime() {
         return submissionTime;
     }
@@ -0,0 +1,113 @@
+package com.klasurapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * The latest unsubmitted state of an answer during an exam attempt. Becomes an
+ * {@link Answer} when the attempt is submitted.
+ */
+public class AnswerDraft {
+    private Long attemptId;
+    private Long taskId;
+    private Long userId;
+    private TaskFormat format;
+    private String content;
+    private long version;
+    private LocalDateTime updatedAt;
+
+    public AnswerDraft() {
+    }
+
+    public AnswerDraft(Long attemptId, Long taskId, Long userId, TaskFormat format, String content, long version) {
+        this.attemptId = attemptId;
+        this.taskId = taskId;
+        this.userId = userId;
+        this.format = format;
+        this.content = content;
+        this.version = version;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * @return a draft holding the content of the answer
+     */
+    public static AnswerDraft of(Answer answer, long version) {
+        TaskFormat format = answer instanceof OpenAnswer ? TaskFormat.OPEN : TaskFormat.CLOSED;
+        return new AnswerDraft(answer.getAttemptId(), answer.getTaskId(), answer.getUserId(), format,
+                answer.getAnswerContent(), version);
+    }
+
+    /**
+     * @return a new, unsaved answer with the draft's content
+     */
+    public Answer toAnswer() {
+        Answer answer = format == TaskFormat.OPEN
+                ? new OpenAnswer(taskId, userId, content)
+                : new ClosedAnswer(taskId, userId, content);
+        answer.setAttemptId(attemptId);
+        if (updatedAt != null) {
+            answer.setSubmissionTime(updatedAt);
+        }
+        return answer;
+    }
+
+    // Getters and setters
+    public Long getAttemptId() {
+        return attemptId;
+    }
+
+    public void setAttemptId(Long attemptId) {
+        this.attemptId = attemptId;
+    }
+
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public TaskFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(TaskFormat format) {
+        this.format = format;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    /**
+     * @return increases with every edit; a stored draft is only replaced by a newer one
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,73 @@
+package com.klasurapp.model;
+
+/**
+ * Ungraded closed answers to one task that selected the same option(s), graded
+ * together.
+ */
+public class AnswerGroup {
+    private Long taskId;
+    private String selectedOption;
+    private int count;
+    private Double score;
+    private String feedback;
+
+    public AnswerGroup() {
+    }
+
+    public AnswerGroup(Long taskId, String selectedOption, int count) {
+        this.taskId = taskId;
+        this.selectedOption = selectedOption;
+        this.count = count;
+    }
+
+    // Getters and setters
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * @return the selected option(s) shared by the answers, blanks around them removed;
+     *         null for answers without a selection
+     */
+    public String getSelectedOption() {
+        return selectedOption;
+    }
+
+    public void setSelectedOption(String selectedOption) {
+        this.selectedOption = selectedOption;
+    }
+
+    /**
+     * @return the number of answers in the group
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * @return the score every answer in the group gets; null until graded
+     */
+    public Double getScore() {
+        return score;
+    }
+
+    public void setScore(Double score) {
+        this.score = score;
+    }
+
+    public String getFeedback() {
+        return feedback;
+    }
+
+    public void setFeedback(String feedback) {
+        this.feedback = feedback;
+    }
+}
@@ -34,32 +34,20 @@ public class ClosedAnswer extends Answer {
         if (!(task instanceof ClosedTask)) {
             return false;
         }
-        
-        ClosedTask closedTask = (ClosedTask) task;
-        
-        // Compare the selected option with the correct answer
-        // Format depends on the closed task type
-        switch (closedTask.getClosedTaskType()) {
-            case SINGLE_CHOICE:
-            case TRUE_FALSE:
-                return selectedOption.equals(closedTask.getCorrectAnswer());
-                
-            case MULTIPLE_CHOICE:
-                // For multiple choice, we expect comma-separated indices
-                return selectedOption.equals(closedTask.getCorrectAnswer());
-                
-            case GAP_TEXT:
-                // For gap text, we might expect exact match
-                return selectedOption.equals(closedTask.getCorrectAnswer());
-                
-            case MATCHING:
-            case RANKING:
-                // For matching and ranking, we expect special formats
-                // that would need to be parsed and compared
-                return selectedOption.equals(closedTask.getCorrectAnswer());
-                
-            default:
-                return false;
+        return ((ClosedTask) task).getAnswerKey().isCorrect(selectedOption);
+    }
+
+    /**
+     * Get the share of the full score this answer earns. Multiple choice, ranking,
+     * matching and gap text answers earn partial credit; other answers earn all or nothing.
+     *
+     * @param task the task this answer belongs to
+     * @return the share from 0 to 1
+     */
+    public double getCredit(Task task) {
+        if (!(task instanceof ClosedTask)) {
+            return 0;
         }
+        return ((ClosedTask) task).getAnswerKey().score(selectedOption);
     }
-}
\ No newline at end of file
+}
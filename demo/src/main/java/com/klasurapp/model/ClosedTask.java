@@ -3,6 +3,9 @@ package com.klasurapp.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.klasurapp.grading.AnswerKey;
+import com.klasurapp.grading.AnswerKeys;
+
 /**
  * Represents a closed task with specific answer options.
  */
@@ -10,6 +13,8 @@ public class ClosedTask extends Task {
     private ClosedTaskType closedTaskType;
     private String correctAnswer;
     private List<String> options = new ArrayList<>();
+    // Compiled on first use, dropped when type, solution or options change
+    private volatile AnswerKey answerKey;
 
     public ClosedTask() {
         super();
@@ -28,6 +33,7 @@ public class ClosedTask extends Task {
 
     public void setClosedTaskType(ClosedTaskType closedTaskType) {
         this.closedTaskType = closedTaskType;
+        this.answerKey = null;
     }
 
     public List<String> getOptions() {
@@ -36,10 +42,12 @@ public class ClosedTask extends Task {
 
     public void setOptions(List<String> options) {
         this.options = options;
+        this.answerKey = null;
     }
 
     public void addOption(String option) {
         this.options.add(option);
+        this.answerKey = null;
     }
 
     public String getCorrectAnswer() {
@@ -48,6 +56,23 @@ public class ClosedTask extends Task {
 
     public void setCorrectAnswer(String correctAnswer) {
         this.correctAnswer = correctAnswer;
+        this.answerKey = null;
+    }
+
+    /**
+     * Get the solution compiled for scoring answers. It is compiled once and kept until
+     * the type, solution or options are set again; after changing the list returned by
+     * {@link #getOptions()} directly, set it again.
+     *
+     * @return the compiled solution
+     */
+    public AnswerKey getAnswerKey() {
+        AnswerKey key = answerKey;
+        if (key == null) {
+            key = AnswerKeys.compile(closedTaskType, correctAnswer, options.size());
+            answerKey = key;
+        }
+        return key;
     }
 
     @Override
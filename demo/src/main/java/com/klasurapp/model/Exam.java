@@ -16,6 +16,9 @@ public class Exam {
     private int durationMinutes;
     private Module module;
     private List<Task> tasks = new ArrayList<>();
+    private Long parentExamId;
+    private String variantLabel;
+    private Long instanceSeed;
 
     public Exam() {
     }
@@ -82,6 +85,39 @@ public class Exam {
         this.tasks = tasks;
     }
 
+    /**
+     * @return the ID of the exam this one is a parallel variant of, or null
+     */
+    public Long getParentExamId() {
+        return parentExamId;
+    }
+
+    public void setParentExamId(Long parentExamId) {
+        this.parentExamId = parentExamId;
+    }
+
+    /**
+     * @return the group label of a variant (e.g. "B"), or null
+     */
+    public String getVariantLabel() {
+        return variantLabel;
+    }
+
+    public void setVariantLabel(String variantLabel) {
+        this.variantLabel = variantLabel;
+    }
+
+    /**
+     * @return the seed for per-student task and option order, or null if the exam is not shuffled
+     */
+    public Long getInstanceSeed() {
+        return instanceSeed;
+    }
+
+    public void setInstanceSeed(Long instanceSeed) {
+        this.instanceSeed = instanceSeed;
+    }
+
     public void addTask(Task task) {
         tasks.add(task);
     }
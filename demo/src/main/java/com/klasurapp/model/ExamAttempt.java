@@ -0,0 +1,86 @@
+package com.klasurapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * One sitting of an exam by a student. Answers given during the sitting refer to it.
+ */
+public class ExamAttempt {
+    private Long id;
+    private Long examId;
+    private Long userId;
+    private LocalDateTime startedAt;
+    private LocalDateTime submittedAt;
+    private Long instanceSeed;
+
+    public ExamAttempt() {
+        this.startedAt = LocalDateTime.now();
+    }
+
+    public ExamAttempt(Long examId, Long userId, Long instanceSeed) {
+        this();
+        this.examId = examId;
+        this.userId = userId;
+        this.instanceSeed = instanceSeed;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getExamId() {
+        return examId;
+    }
+
+    public void setExamId(Long examId) {
+        this.examId = examId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * @return when the attempt was handed in, null while it is running
+     */
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public boolean isSubmitted() {
+        return submittedAt != null;
+    }
+
+    /**
+     * @return the exam's seed for the task and option order at the start of the
+     *         attempt, null if the exam was not shuffled
+     */
+    public Long getInstanceSeed() {
+        return instanceSeed;
+    }
+
+    public void setInstanceSeed(Long instanceSeed) {
+        this.instanceSeed = instanceSeed;
+    }
+}
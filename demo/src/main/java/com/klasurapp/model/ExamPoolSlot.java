@@ -0,0 +1,56 @@
+package com.klasurapp.model;
+
+/**
+ * An exam slot that is filled at delivery time with tasks drawn from a pool.
+ */
+public class ExamPoolSlot {
+    private Long examId;
+    private Long poolId;
+    private int count;
+    private int slotOrder;
+
+    public ExamPoolSlot() {
+    }
+
+    public ExamPoolSlot(Long examId, Long poolId, int count) {
+        this.examId = examId;
+        this.poolId = poolId;
+        this.count = count;
+    }
+
+    // Getters and setters
+    public Long getExamId() {
+        return examId;
+    }
+
+    public void setExamId(Long examId) {
+        this.examId = examId;
+    }
+
+    public Long getPoolId() {
+        return poolId;
+    }
+
+    public void setPoolId(Long poolId) {
+        this.poolId = poolId;
+    }
+
+    /**
+     * @return the number of distinct tasks drawn for this slot
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int getSlotOrder() {
+        return slotOrder;
+    }
+
+    public void setSlotOrder(int slotOrder) {
+        this.slotOrder = slotOrder;
+    }
+}
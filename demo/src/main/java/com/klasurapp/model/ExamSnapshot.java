@@ -0,0 +1,66 @@
+package com.klasurapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * The frozen content of a published exam: the whole exam with its module and tasks
+ * encoded into one binary document, with the SHA-256 hash of that document.
+ */
+public class ExamSnapshot {
+    private Long examId;
+    private int formatVersion;
+    private byte[] payload;
+    private byte[] sha256;
+    private LocalDateTime publishedAt;
+
+    public ExamSnapshot() {
+    }
+
+    public ExamSnapshot(Long examId, int formatVersion, byte[] payload, byte[] sha256) {
+        this.examId = examId;
+        this.formatVersion = formatVersion;
+        this.payload = payload;
+        this.sha256 = sha256;
+    }
+
+    // Getters and setters
+    public Long getExamId() {
+        return examId;
+    }
+
+    public void setExamId(Long examId) {
+        this.examId = examId;
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public byte[] getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(byte[] sha256) {
+        this.sha256 = sha256;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+
+    public void setPublishedAt(LocalDateTime publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+}
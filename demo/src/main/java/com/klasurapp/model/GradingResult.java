@@ -0,0 +1,50 @@
+package com.klasurapp.model;
+
+/**
+ * The outcome of automatically grading the answers to one task.
+ */
+public class GradingResult {
+    private Long taskId;
+    private int graded;
+    private int correct;
+
+    public GradingResult() {
+    }
+
+    public GradingResult(Long taskId, int graded, int correct) {
+        this.taskId = taskId;
+        this.graded = graded;
+        this.correct = correct;
+    }
+
+    // Getters and setters
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * @return the number of answers graded
+     */
+    public int getGraded() {
+        return graded;
+    }
+
+    public void setGraded(int graded) {
+        this.graded = graded;
+    }
+
+    /**
+     * @return the number of those answers that were correct
+     */
+    public int getCorrect() {
+        return correct;
+    }
+
+    public void setCorrect(int correct) {
+        this.correct = correct;
+    }
+}
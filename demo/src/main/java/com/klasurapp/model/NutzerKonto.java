@@ -3,9 +3,11 @@ package com.klasurapp.model;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a user account with authentication details and task storage.
@@ -22,6 +24,10 @@ public class NutzerKonto {
     private List<Task> erstellteAufgaben = new ArrayList<>();
     private Map<Long, String> aufgabenAntworten = new HashMap<>(); // TaskId -> Answer
 
+    // Last persisted state of the associations, null if unknown
+    private Set<Long> gespeicherteAufgabenIds;
+    private Map<Long, String> gespeicherteAntworten;
+
     public NutzerKonto() {
     }
 
@@ -110,6 +116,81 @@ public class NutzerKonto {
         return this.aufgabenAntworten.get(aufgabeId);
     }
 
+    // Dirty tracking for task and answer associations
+
+    /**
+     * Remember the current tasks and answers as the persisted state.
+     * Called by the DAO after loading or saving the associations.
+     */
+    public void markAssociationsPersisted() {
+        this.gespeicherteAufgabenIds = aktuelleAufgabenIds();
+        this.gespeicherteAntworten = aufgabenAntworten == null
+                ? new HashMap<>() : new HashMap<>(aufgabenAntworten);
+    }
+
+    /**
+     * @return true if the persisted state of the associations is known
+     */
+    public boolean isAssociationStateKnown() {
+        return gespeicherteAufgabenIds != null && gespeicherteAntworten != null;
+    }
+
+    /**
+     * @return task IDs added since the associations were last persisted
+     */
+    public Set<Long> getHinzugefuegteAufgabenIds() {
+        Set<Long> added = aktuelleAufgabenIds();
+        added.removeAll(gespeicherteAufgabenIds);
+        return added;
+    }
+
+    /**
+     * @return task IDs removed since the associations were last persisted
+     */
+    public Set<Long> getEntfernteAufgabenIds() {
+        Set<Long> removed = new HashSet<>(gespeicherteAufgabenIds);
+        removed.removeAll(aktuelleAufgabenIds());
+        return removed;
+    }
+
+    /**
+     * @return answers that are new or changed since the associations were last persisted
+     */
+    public Map<Long, String> getGeaenderteAntworten() {
+        Map<Long, String> changed = new HashMap<>();
+        if (aufgabenAntworten != null) {
+            for (Map.Entry<Long, String> entry : aufgabenAntworten.entrySet()) {
+                if (!Objects.equals(entry.getValue(), gespeicherteAntworten.get(entry.getKey()))) {
+                    changed.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return task IDs whose answers were removed since the associations were last persisted
+     */
+    public Set<Long> getEntfernteAntwortIds() {
+        Set<Long> removed = new HashSet<>(gespeicherteAntworten.keySet());
+        if (aufgabenAntworten != null) {
+            removed.removeAll(aufgabenAntworten.keySet());
+        }
+        return removed;
+    }
+
+    private Set<Long> aktuelleAufgabenIds() {
+        Set<Long> ids = new HashSet<>();
+        if (erstellteAufgaben != null) {
+            for (Task task : erstellteAufgaben) {
+                if (task.getId() != null) {
+                    ids.add(task.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,64 @@
+package com.klasurapp.model;
+
+/**
+ * An authenticated session. The raw token is only known to the client;
+ * the session itself is identified by the hash of that token.
+ */
+public class Session {
+    private final String tokenHash;
+    private final NutzerKonto konto;
+    private final long createdAtMillis;
+    private final long expiresAtMillis;
+    private volatile long lastAccessMillis;
+
+    public Session(String tokenHash, NutzerKonto konto, long createdAtMillis, long expiresAtMillis) {
+        this(tokenHash, konto, createdAtMillis, expiresAtMillis, createdAtMillis);
+    }
+
+    public Session(String tokenHash, NutzerKonto konto, long createdAtMillis, long expiresAtMillis,
+                   long lastAccessMillis) {
+        this.tokenHash = tokenHash;
+        this.konto = konto;
+        this.createdAtMillis = createdAtMillis;
+        this.expiresAtMillis = expiresAtMillis;
+        this.lastAccessMillis = lastAccessMillis;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public NutzerKonto getKonto() {
+        return konto;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    public void touch(long nowMillis) {
+        // Benign race: concurrent touches all write roughly the same value
+        if (nowMillis > lastAccessMillis) {
+            lastAccessMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Check whether the session has run past its lifetime or idle timeout.
+     *
+     * @param nowMillis the current time
+     * @param idleTimeoutMillis the maximum time between two accesses
+     * @return true if the session is no longer valid
+     */
+    public boolean isExpired(long nowMillis, long idleTimeoutMillis) {
+        return nowMillis >= expiresAtMillis || nowMillis - lastAccessMillis >= idleTimeoutMillis;
+    }
+}
@@ -0,0 +1,103 @@
+package com.klasurapp.model;
+
+import java.util.Objects;
+
+/**
+ * Represents a pool of interchangeable tasks from which exam slots draw at random.
+ */
+public class TaskPool {
+    private Long id;
+    private String name;
+    private Long moduleId;
+    private BloomLevel bloomLevel;
+    private boolean autoInclude;
+    private boolean favorLowExposure = true;
+
+    public TaskPool() {
+    }
+
+    public TaskPool(String name, Long moduleId) {
+        this.name = name;
+        this.moduleId = moduleId;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getModuleId() {
+        return moduleId;
+    }
+
+    public void setModuleId(Long moduleId) {
+        this.moduleId = moduleId;
+    }
+
+    /**
+     * @return the Bloom level new tasks must have to join the pool automatically, or null for any
+     */
+    public BloomLevel getBloomLevel() {
+        return bloomLevel;
+    }
+
+    public void setBloomLevel(BloomLevel bloomLevel) {
+        this.bloomLevel = bloomLevel;
+    }
+
+    /**
+     * @return true if new tasks of the module are added to the pool when they are created
+     */
+    public boolean isAutoInclude() {
+        return autoInclude;
+    }
+
+    public void setAutoInclude(boolean autoInclude) {
+        this.autoInclude = autoInclude;
+    }
+
+    /**
+     * @return true if a task's weight is divided by (1 + number of times it was answered)
+     */
+    public boolean isFavorLowExposure() {
+        return favorLowExposure;
+    }
+
+    public void setFavorLowExposure(boolean favorLowExposure) {
+        this.favorLowExposure = favorLowExposure;
+    }
+
+    /**
+     * Check whether a task qualifies for automatic membership.
+     */
+    public boolean accepts(Task task) {
+        return autoInclude
+                && task.getModule() != null && Objects.equals(moduleId, task.getModule().getId())
+                && (bloomLevel == null || bloomLevel == task.getBloomLevel());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaskPool taskPool = (TaskPool) o;
+        return Objects.equals(id, taskPool.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -0,0 +1,257 @@
+package com.klasurapp.pdf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+
+import com.klasurapp.model.ClosedTask;
+import com.klasurapp.model.ClosedTaskType;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.OpenTask;
+import com.klasurapp.model.Task;
+import com.klasurapp.service.ExamInstance;
+
+/**
+ * Renders grading sheets: for every task the correct options of closed tasks and the
+ * sample solution of open tasks, numbered as on the sheet the student worked on.
+ * <p>
+ * An exam and all its parallel versions go into one document, one section per version,
+ * so that fonts are stored once and the whole set is written in one pass. Personal keys
+ * follow a student's task and option order, for exams that are shuffled per student.
+ * Like {@link ExamPdfRenderer}, a renderer holds no per-document state.
+ */
+public class AnswerKeyRenderer {
+    private static final float TITLE_SIZE = 16;
+    private static final float HEADING_SIZE = 12;
+    private static final float TEXT_SIZE = 10.5f;
+    private static final float NOTE_SIZE = 9;
+
+    private final PdfFonts baseFonts;
+    private final byte[] logo;
+
+    public AnswerKeyRenderer() {
+        this(PdfFonts.standard(), null);
+    }
+
+    /**
+     * @param fonts the fonts; embedded fonts are subset per document
+     * @param logo PNG or JPEG bytes shown at the top of every page, or null
+     */
+    public AnswerKeyRenderer(PdfFonts fonts, byte[] logo) {
+        this.baseFonts = fonts;
+        this.logo = logo;
+    }
+
+    /**
+     * Render the keys of several exams, typically an exam and its variants, with the
+     * tasks and options in their stored order. Each exam starts on a new page.
+     *
+     * @param exams the exams with their tasks
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(List<Exam> exams, OutputStream out) throws IOException {
+        String title = exams.isEmpty() ? "Lösungsschlüssel" : "Lösungsschlüssel " + exams.get(0).getTitle();
+        try (PDDocument document = newDocument(title)) {
+            PdfResources resources = new PdfResources(document, baseFonts);
+            for (Exam exam : exams) {
+                write(resources, exam, exam.getTasks(), ClosedTask::getOptions,
+                        (task, answer) -> answer, null);
+            }
+            document.save(out);
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Render the personal keys of several students in one document, one section each.
+     *
+     * @param instances the students' instances of the exam
+     * @param copies the student of each instance, in the same order
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(List<ExamInstance> instances, List<ExamCopy> copies, OutputStream out) throws IOException {
+        if (instances.size() != copies.size()) {
+            throw new IllegalArgumentException("One copy per instance expected");
+        }
+        String title = instances.isEmpty() ? "Lösungsschlüssel"
+                : "Lösungsschlüssel " + instances.get(0).getExam().getTitle();
+        try (PDDocument document = newDocument(title)) {
+            PdfResources resources = new PdfResources(document, baseFonts);
+            for (int i = 0; i < instances.size(); i++) {
+                ExamInstance instance = instances.get(i);
+                write(resources, instance.getExam(), instance.getTasks(), instance::getOptions,
+                        instance::toDisplayedAnswer, copies.get(i));
+            }
+            document.save(out);
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Render the key of one student's instance, numbered as on their copy.
+     *
+     * @param instance the student's instance of the exam
+     * @param copy the student
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(ExamInstance instance, ExamCopy copy, OutputStream out) throws IOException {
+        return render(List.of(instance), List.of(copy), out);
+    }
+
+    private static PDDocument newDocument(String title) {
+        PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
+        PDDocumentInformation info = document.getDocumentInformation();
+        info.setTitle(title);
+        info.setCreator("Klasur App");
+        return document;
+    }
+
+    /**
+     * Append the key of one exam or instance to the document.
+     *
+     * @param displayed maps a key in stored option numbers to the displayed numbers
+     */
+    private void write(PdfResources resources, Exam exam, List<Task> tasks,
+                       Function<ClosedTask, List<String>> options,
+                       BiFunction<ClosedTask, String, String> displayed, ExamCopy copy) throws IOException {
+        try (PageLayout layout = new PageLayout(resources, null)) {
+            PdfFonts fonts = layout.getFonts();
+            layout.newPage();
+            layout.paragraph("Lösungsschlüssel: " + sectionTitle(exam), fonts.getBold(), TITLE_SIZE);
+            if (copy != null) {
+                layout.paragraph(copy.getSeat() != null
+                        ? copy.getStudentName() + ", Sitzplatz " + copy.getSeat() : copy.getStudentName(),
+                        fonts.getRegular(), HEADING_SIZE);
+            }
+            int number = 1;
+            for (Task task : tasks) {
+                writeTask(layout, number++, task, options, displayed);
+            }
+            String footer = "Lösungsschlüssel " + sectionTitle(exam);
+            layout.footer(copy != null ? footer + " - " + copy.getStudentName() : footer, logo);
+        }
+    }
+
+    private static String sectionTitle(Exam exam) {
+        return exam.getVariantLabel() != null
+                ? exam.getTitle() + " (Gruppe " + exam.getVariantLabel() + ")" : exam.getTitle();
+    }
+
+    private void writeTask(PageLayout layout, int number, Task task, Function<ClosedTask, List<String>> options,
+                           BiFunction<ClosedTask, String, String> displayed) throws IOException {
+        PdfFonts fonts = layout.getFonts();
+        layout.ensureSpace(HEADING_SIZE * 4);
+        layout.gap(HEADING_SIZE);
+        layout.paragraph("Aufgabe " + number + ": " + task.getName(), fonts.getBold(), HEADING_SIZE);
+        layout.gap(2);
+
+        if (task instanceof ClosedTask) {
+            ClosedTask closedTask = (ClosedTask) task;
+            writeClosedKey(layout, closedTask, options.apply(closedTask),
+                    displayed.apply(closedTask, closedTask.getCorrectAnswer()));
+        } else if (task instanceof OpenTask) {
+            String solution = task.getSolution();
+            if (solution == null || solution.trim().isEmpty()) {
+                layout.paragraph("Keine Musterlösung hinterlegt.", fonts.getItalic(), NOTE_SIZE);
+            } else {
+                layout.paragraph("Musterlösung:", fonts.getItalic(), NOTE_SIZE);
+                layout.paragraph(solution, fonts.getRegular(), TEXT_SIZE, 12);
+            }
+        }
+    }
+
+    /**
+     * @param key the correct answer in displayed option numbers
+     */
+    private void writeClosedKey(PageLayout layout, ClosedTask task, List<String> options, String key)
+            throws IOException {
+        PdfFonts fonts = layout.getFonts();
+        ClosedTaskType type = task.getClosedTaskType();
+        if (key == null || key.trim().isEmpty()) {
+            layout.paragraph("Keine Lösung hinterlegt.", fonts.getItalic(), NOTE_SIZE);
+            return;
+        }
+
+        if (type == ClosedTaskType.TRUE_FALSE) {
+            Boolean value = trueFalse(key);
+            if (value != null) {
+                layout.option("Wahr", fonts.getRegular(), TEXT_SIZE, 12, value);
+                layout.option("Falsch", fonts.getRegular(), TEXT_SIZE, 12, !value);
+                return;
+            }
+        } else if (type == ClosedTaskType.SINGLE_CHOICE || type == ClosedTaskType.MULTIPLE_CHOICE) {
+            Set<Integer> correct = optionNumbers(key, options.size());
+            if (correct != null) {
+                for (int i = 0; i < options.size(); i++) {
+                    boolean checked = correct.contains(i + 1);
+                    layout.option((i + 1) + ". " + options.get(i),
+                            checked ? fonts.getBold() : fonts.getRegular(), TEXT_SIZE, 12, checked);
+                }
+                return;
+            }
+        } else if (type == ClosedTaskType.RANKING && optionNumbers(key, options.size()) != null) {
+            layout.paragraph("Richtige Reihenfolge: " + key.replace(" ", ""), fonts.getItalic(), NOTE_SIZE);
+            for (String part : key.split(",")) {
+                int option = Integer.parseInt(part.trim());
+                layout.paragraph(option + ". " + options.get(option - 1), fonts.getRegular(), TEXT_SIZE, 12);
+            }
+            return;
+        }
+
+        // Gap texts, matchings and keys that are not option numbers are shown as stored
+        for (int i = 0; i < options.size(); i++) {
+            layout.paragraph((i + 1) + ". " + options.get(i), fonts.getRegular(), TEXT_SIZE, 12);
+        }
+        layout.paragraph("Lösung: " + key, fonts.getBold(), TEXT_SIZE);
+    }
+
+    /**
+     * @return the 1-based option numbers of a key like "1,3", or null if the key is
+     *         not a list of valid option numbers
+     */
+    private static Set<Integer> optionNumbers(String key, int optionCount) {
+        Set<Integer> numbers = new HashSet<>();
+        for (String part : key.split(",")) {
+            try {
+                int number = Integer.parseInt(part.trim());
+                if (number < 1 || number > optionCount) {
+                    return null;
+                }
+                numbers.add(number);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return numbers;
+    }
+
+    private static Boolean trueFalse(String key) {
+        switch (key.trim().toLowerCase()) {
+            case "1":
+            case "w":
+            case "wahr":
+            case "true":
+            case "richtig":
+                return Boolean.TRUE;
+            case "2":
+            case "0":
+            case "f":
+            case "falsch":
+            case "false":
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+}
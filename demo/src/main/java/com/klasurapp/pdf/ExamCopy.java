@@ -0,0 +1,33 @@
+package com.klasurapp.pdf;
+
+/**
+ * One personalised printed copy of an exam: the student it is for and their seat.
+ */
+public class ExamCopy {
+    private final long studentId;
+    private final String studentName;
+    private final String seat;
+
+    /**
+     * @param studentId the account ID; selects the student's task order and pool draws
+     * @param studentName printed on the cover and in the footer
+     * @param seat printed on the cover; may be null
+     */
+    public ExamCopy(long studentId, String studentName, String seat) {
+        this.studentId = studentId;
+        this.studentName = studentName;
+        this.seat = seat;
+    }
+
+    public long getStudentId() {
+        return studentId;
+    }
+
+    public String getStudentName() {
+        return studentName;
+    }
+
+    public String getSeat() {
+        return seat;
+    }
+}
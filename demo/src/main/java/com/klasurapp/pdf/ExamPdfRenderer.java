@@ -0,0 +1,317 @@
+package com.klasurapp.pdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import com.klasurapp.model.ClosedTask;
+import com.klasurapp.model.ClosedTaskType;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.OpenTask;
+import com.klasurapp.model.Task;
+import com.klasurapp.service.ExamInstance;
+
+/**
+ * Renders an exam as a printable PDF: a cover page followed by the tasks with their
+ * Bloom level and time, the options of closed tasks and ruled answer space for open tasks.
+ * <p>
+ * Page content is buffered in pdfbox scratch files instead of the heap, so memory use
+ * does not grow with the size of the exam, and the finished document is written
+ * straight to the given stream. A renderer holds no per-document state and can be
+ * shared by threads. For batches, {@link #forBatch()} returns a renderer that also
+ * shares the line wrapping of task texts between the documents.
+ * <p>
+ * Fonts, the logo and the page decoration are stored once per document and referenced
+ * by every page. A {@link PrintFile} puts many student copies into one document, so
+ * these resources are stored once for the whole print run.
+ */
+public class ExamPdfRenderer {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final float TITLE_SIZE = 20;
+    private static final float HEADING_SIZE = 12;
+    private static final float TEXT_SIZE = 10.5f;
+    private static final float NOTE_SIZE = 9;
+    private static final float ANSWER_LINE_SPACING = 22;
+    // Answer space for open tasks: lines per estimated minute, bounded
+    private static final int LINES_PER_MINUTE = 2;
+    private static final int MIN_ANSWER_LINES = 4;
+    private static final int MAX_ANSWER_LINES = 40;
+
+    private final PdfFonts baseFonts;
+    private final byte[] logo;
+    private final Map<String, List<String>> wrapCache;
+
+    public ExamPdfRenderer() {
+        this(PdfFonts.standard(), null);
+    }
+
+    /**
+     * @param fonts the fonts; embedded fonts are subset per document
+     * @param logo PNG or JPEG bytes shown at the top of every page, or null
+     */
+    public ExamPdfRenderer(PdfFonts fonts, byte[] logo) {
+        this(fonts, logo, null);
+    }
+
+    private ExamPdfRenderer(PdfFonts fonts, byte[] logo, Map<String, List<String>> wrapCache) {
+        this.baseFonts = fonts;
+        this.logo = logo;
+        this.wrapCache = wrapCache;
+    }
+
+    /**
+     * @return a renderer with the same fonts that wraps every text only once; meant
+     *         for one batch of copies of the same exam and dropped afterwards
+     */
+    public ExamPdfRenderer forBatch() {
+        return new ExamPdfRenderer(baseFonts, logo, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Render the exam with the tasks and options in their stored order.
+     *
+     * @param exam the exam with its tasks
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(Exam exam, OutputStream out) throws IOException {
+        return render(exam, exam.getTasks(), ClosedTask::getOptions, null, out);
+    }
+
+    /**
+     * Render one student's instance with its task and option order.
+     *
+     * @param instance the student's instance of the exam
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(ExamInstance instance, OutputStream out) throws IOException {
+        return render(instance.getExam(), instance.getTasks(), instance::getOptions, null, out);
+    }
+
+    /**
+     * Render one student's instance with their name and seat on the cover and in the footer.
+     *
+     * @param instance the student's instance of the exam
+     * @param copy the student and seat
+     * @param out receives the PDF; not closed
+     * @return the number of pages
+     */
+    public int render(ExamInstance instance, ExamCopy copy, OutputStream out) throws IOException {
+        return render(instance.getExam(), instance.getTasks(), instance::getOptions, copy, out);
+    }
+
+    /**
+     * Start a print file that collects many student copies in one document.
+     *
+     * @param title the document title
+     * @return the print file; must be closed
+     */
+    public PrintFile openPrintFile(String title) throws IOException {
+        return new PrintFile(title);
+    }
+
+    private int render(Exam exam, List<Task> tasks, Function<ClosedTask, List<String>> options,
+                       ExamCopy copy, OutputStream out) throws IOException {
+        try (PDDocument document = newDocument(exam.getTitle())) {
+            int pages = write(new PdfResources(document, baseFonts), exam, tasks, options, copy);
+            document.save(out);
+            return pages;
+        }
+    }
+
+    private static PDDocument newDocument(String title) {
+        PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
+        PDDocumentInformation info = document.getDocumentInformation();
+        info.setTitle(title);
+        info.setCreator("Klasur App");
+        return document;
+    }
+
+    /**
+     * Append one copy of the exam to the document.
+     *
+     * @return the number of pages written
+     */
+    private int write(PdfResources resources, Exam exam, List<Task> tasks,
+                      Function<ClosedTask, List<String>> options, ExamCopy copy) throws IOException {
+        try (PageLayout layout = new PageLayout(resources, wrapCache)) {
+            writeCover(layout, exam, tasks, copy);
+            layout.newPage();
+            int number = 1;
+            for (Task task : tasks) {
+                writeTask(layout, number++, task, options);
+            }
+            layout.footer(copy != null ? exam.getTitle() + " - " + copy.getStudentName() : exam.getTitle(), logo);
+            return layout.getPageCount();
+        }
+    }
+
+    private void writeCover(PageLayout layout, Exam exam, List<Task> tasks, ExamCopy copy) throws IOException {
+        PdfFonts fonts = layout.getFonts();
+        layout.newPage();
+        layout.gap(60);
+        layout.paragraph(exam.getTitle(), fonts.getBold(), TITLE_SIZE);
+        if (exam.getModule() != null) {
+            layout.gap(6);
+            String code = exam.getModule().getCode();
+            layout.paragraph(code != null ? code + " " + exam.getModule().getName() : exam.getModule().getName(),
+                    fonts.getRegular(), HEADING_SIZE);
+        }
+        layout.gap(18);
+
+        StringBuilder facts = new StringBuilder();
+        if (exam.getExamDate() != null) {
+            facts.append("Datum: ").append(exam.getExamDate().format(DATE_FORMAT)).append('\n');
+        }
+        facts.append("Bearbeitungszeit: ").append(exam.getDurationMinutes()).append(" Minuten\n");
+        facts.append("Aufgaben: ").append(tasks.size());
+        if (exam.getVariantLabel() != null) {
+            facts.append("\nGruppe: ").append(exam.getVariantLabel());
+        }
+        layout.paragraph(facts.toString(), fonts.getRegular(), TEXT_SIZE);
+
+        if (exam.getDescription() != null && !exam.getDescription().isEmpty()) {
+            layout.gap(12);
+            layout.paragraph(exam.getDescription(), fonts.getItalic(), TEXT_SIZE);
+        }
+
+        layout.gap(30);
+        layout.field("Name:", copy != null ? copy.getStudentName() : null, HEADING_SIZE);
+        if (copy != null && copy.getSeat() != null) {
+            layout.field("Sitzplatz:", copy.getSeat(), HEADING_SIZE);
+        }
+        layout.field("Matrikelnummer:", HEADING_SIZE);
+        layout.field("Unterschrift:", HEADING_SIZE);
+    }
+
+    private void writeTask(PageLayout layout, int number, Task task,
+                           Function<ClosedTask, List<String>> options) throws IOException {
+        PdfFonts fonts = layout.getFonts();
+        // Keep the heading together with the first lines of the task text
+        layout.ensureSpace(HEADING_SIZE * 6);
+        layout.gap(HEADING_SIZE);
+        layout.paragraph("Aufgabe " + number + ": " + task.getName(), fonts.getBold(), HEADING_SIZE);
+        layout.paragraph(annotation(task), fonts.getItalic(), NOTE_SIZE);
+        layout.gap(4);
+        layout.paragraph(task.getText(), fonts.getRegular(), TEXT_SIZE);
+
+        if (task instanceof ClosedTask) {
+            ClosedTask closedTask = (ClosedTask) task;
+            writeClosedAnswerArea(layout, closedTask, options.apply(closedTask));
+        } else if (task instanceof OpenTask) {
+            layout.gap(4);
+            int lines = Math.max(MIN_ANSWER_LINES,
+                    Math.min(MAX_ANSWER_LINES, task.getEstimatedTimeMinutes() * LINES_PER_MINUTE));
+            layout.ruledLines(lines, ANSWER_LINE_SPACING);
+        }
+    }
+
+    private void writeClosedAnswerArea(PageLayout layout, ClosedTask task, List<String> options) throws IOException {
+        PdfFonts fonts = layout.getFonts();
+        ClosedTaskType type = task.getClosedTaskType();
+        layout.gap(4);
+        if (type == ClosedTaskType.TRUE_FALSE) {
+            layout.option("Wahr", fonts.getRegular(), TEXT_SIZE, 12);
+            layout.option("Falsch", fonts.getRegular(), TEXT_SIZE, 12);
+            return;
+        }
+        if (type == ClosedTaskType.RANKING) {
+            layout.paragraph("Reihenfolge als Nummern angeben, z.B. 2,1,3:", fonts.getItalic(), NOTE_SIZE);
+            for (int i = 0; i < options.size(); i++) {
+                layout.paragraph((i + 1) + ". " + options.get(i), fonts.getRegular(), TEXT_SIZE, 12);
+            }
+            layout.ruledLines(1, ANSWER_LINE_SPACING);
+            return;
+        }
+        if (type == ClosedTaskType.GAP_TEXT || type == ClosedTaskType.MATCHING || options.isEmpty()) {
+            for (int i = 0; i < options.size(); i++) {
+                layout.paragraph((i + 1) + ". " + options.get(i), fonts.getRegular(), TEXT_SIZE, 12);
+            }
+            layout.ruledLines(Math.max(2, options.size()), ANSWER_LINE_SPACING);
+            return;
+        }
+
+        if (type == ClosedTaskType.MULTIPLE_CHOICE) {
+            layout.paragraph("Mehrere Antworten können richtig sein.", fonts.getItalic(), NOTE_SIZE);
+        }
+        for (int i = 0; i < options.size(); i++) {
+            layout.option((i + 1) + ". " + options.get(i), fonts.getRegular(), TEXT_SIZE, 12);
+        }
+    }
+
+    private static String annotation(Task task) {
+        StringBuilder annotation = new StringBuilder();
+        if (task.getBloomLevel() != null) {
+            annotation.append("Stufe ").append(task.getBloomLevel().getLevel())
+                    .append(" (").append(task.getBloomLevel().getName()).append("), ");
+        }
+        annotation.append(task.getEstimatedTimeMinutes()).append(" Minuten");
+        if (task instanceof ClosedTask && ((ClosedTask) task).getClosedTaskType() != null) {
+            annotation.append(", ").append(((ClosedTask) task).getClosedTaskType().getName());
+        }
+        return annotation.toString();
+    }
+
+    /**
+     * Many student copies in one PDF for the print shop. Fonts and images are stored
+     * once for all copies, and embedded fonts are subset over the whole file. Every copy
+     * starts on an odd page so that duplex printing never puts two students on one sheet.
+     * Copies are added one after another; not thread-safe.
+     */
+    public final class PrintFile implements Closeable {
+        private final PDDocument document;
+        private final PdfResources resources;
+        private int copies;
+
+        private PrintFile(String title) throws IOException {
+            this.document = newDocument(title);
+            this.resources = new PdfResources(document, baseFonts);
+        }
+
+        /**
+         * Append one student's copy.
+         *
+         * @return the number of pages of the copy, without a blank page added for duplex
+         */
+        public int add(ExamInstance instance, ExamCopy copy) throws IOException {
+            int pages = write(resources, instance.getExam(), instance.getTasks(), instance::getOptions, copy);
+            if (pages % 2 == 1) {
+                document.addPage(new PDPage(PDRectangle.A4));
+            }
+            copies++;
+            return pages;
+        }
+
+        public int getCopies() {
+            return copies;
+        }
+
+        public int getPageCount() {
+            return document.getNumberOfPages();
+        }
+
+        /**
+         * Write the print file; the file stays open for {@link #close()}.
+         */
+        public void save(OutputStream out) throws IOException {
+            document.save(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+}
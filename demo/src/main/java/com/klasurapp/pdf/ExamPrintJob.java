@@ -0,0 +1,363 @@
+package com.klasurapp.pdf;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.model.Exam;
+import com.klasurapp.service.ExamInstance;
+import com.klasurapp.service.TaskPoolService;
+
+/**
+ * Renders one personalised PDF per student for an exam and writes them into a ZIP file.
+ * <p>
+ * Documents are rendered in parallel on a fixed number of workers. Each worker writes
+ * its PDF to a temporary file; the calling thread moves finished files into the ZIP
+ * one at a time and deletes them. At most twice as many documents as workers are in
+ * flight, so heap and temporary disk use do not depend on the number of students.
+ * Pool draws, which need the database, are made on the calling thread.
+ * <p>
+ * Optionally all copies are also written into one merged print file, which stores fonts
+ * and images once for the whole class. Copies are appended to it on the calling thread.
+ * <p>
+ * The ZIP is written to a ".part" file next to the target and renamed when complete;
+ * a cancelled or failed job leaves no archive behind.
+ */
+public class ExamPrintJob implements Callable<ExamPrintJob.Result> {
+    private static final Logger logger = LoggerFactory.getLogger(ExamPrintJob.class);
+    private static final int IN_FLIGHT_PER_WORKER = 2;
+    private static final long POLL_MILLIS = 100;
+
+    private final ExamPdfRenderer renderer;
+    private final TaskPoolService taskPoolService;
+    private final Exam exam;
+    private final List<ExamCopy> copies;
+    private final Path zipFile;
+    private final int workers;
+    private Path printFile;
+    private final AtomicInteger completed = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile ProgressListener progressListener;
+
+    /**
+     * @param renderer the renderer; a batch renderer is derived from it for this job
+     * @param taskPoolService draws pool slots per student; null if the exam has none
+     * @param exam the exam with its tasks
+     * @param copies one entry per printed copy
+     * @param zipFile the archive to create
+     * @param workers number of documents rendered at the same time
+     */
+    public ExamPrintJob(ExamPdfRenderer renderer, TaskPoolService taskPoolService, Exam exam,
+                        List<ExamCopy> copies, Path zipFile, int workers) {
+        this.renderer = renderer.forBatch();
+        this.taskPoolService = taskPoolService;
+        this.exam = exam;
+        this.copies = copies;
+        this.zipFile = zipFile;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * @param printFile where to write all copies as one PDF, or null for the ZIP only
+     */
+    public void setPrintFile(Path printFile) {
+        this.printFile = printFile;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Stop the job. Documents in progress are abandoned and the archive is not created.
+     * May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the number of documents written to the archive so far
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getTotal() {
+        return copies.size();
+    }
+
+    /**
+     * Run the job on the calling thread.
+     *
+     * @return the statistics of the run; {@link Result#isCancelled()} if it was cancelled
+     * @throws IOException if a document or the archive cannot be written
+     */
+    @Override
+    public Result call() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean pooled = taskPoolService != null && taskPoolService.hasSlots(exam);
+        Path partFile = zipFile.resolveSibling(zipFile.getFileName() + ".part");
+        Path printPartFile = printFile != null ? printFile.resolveSibling(printFile.getFileName() + ".part") : null;
+        ExamPdfRenderer.PrintFile merged = printFile != null ? renderer.openPrintFile(exam.getTitle()) : null;
+        Path tempDir = Files.createTempDirectory("exam-print");
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CompletionService<Rendered> renders = new ExecutorCompletionService<>(pool);
+        int maxInFlight = workers * IN_FLIGHT_PER_WORKER;
+        long pages = 0;
+        boolean success = false;
+
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(partFile)))) {
+                // PDF streams are already compressed; only the little uncompressed structure is deflated
+                zip.setLevel(Deflater.BEST_SPEED);
+                Set<String> entryNames = new HashSet<>();
+                int submitted = 0;
+
+                while (completed.get() < copies.size() && !cancelled) {
+                    if (submitted < copies.size() && submitted - completed.get() < maxInFlight) {
+                        ExamCopy copy = copies.get(submitted);
+                        Exam delivered = pooled ? taskPoolService.deliver(exam, copy.getStudentId()) : exam;
+                        ExamInstance instance = ExamInstance.of(delivered, copy.getStudentId());
+                        String entryName = entryName(copy, submitted, entryNames);
+                        Path file = tempDir.resolve(submitted + ".pdf");
+                        renders.submit(() -> render(instance, copy, entryName, file));
+                        if (merged != null) {
+                            merged.add(instance, copy);
+                        }
+                        submitted++;
+                        continue;
+                    }
+
+                    Future<Rendered> next = renders.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        continue;
+                    }
+                    Rendered rendered = get(next);
+                    zip.putNextEntry(new ZipEntry(rendered.entryName));
+                    Files.copy(rendered.file, zip);
+                    zip.closeEntry();
+                    Files.delete(rendered.file);
+                    pages += rendered.pages;
+
+                    int done = completed.incrementAndGet();
+                    ProgressListener listener = progressListener;
+                    if (listener != null) {
+                        listener.progress(done, copies.size());
+                    }
+                }
+                if (completed.get() == copies.size() && merged != null) {
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(printPartFile))) {
+                        merged.save(out);
+                    }
+                }
+            }
+            // Only once the archive and the print file are completely on disk
+            success = completed.get() == copies.size();
+        } finally {
+            if (merged != null) {
+                merged.close();
+            }
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            deleteRecursively(tempDir);
+            if (!success) {
+                Files.deleteIfExists(partFile);
+                if (printPartFile != null) {
+                    Files.deleteIfExists(printPartFile);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (!success) {
+            logger.info("Print job for exam {} cancelled after {} of {} documents", exam.getId(),
+                    completed.get(), copies.size());
+            return new Result(completed.get(), pages, 0, 0, 0, elapsed, true);
+        }
+
+        Files.move(partFile, zipFile, StandardCopyOption.REPLACE_EXISTING);
+        long bytes = Files.size(zipFile);
+        long printFileBytes = 0;
+        int printFilePages = 0;
+        if (printFile != null) {
+            Files.move(printPartFile, printFile, StandardCopyOption.REPLACE_EXISTING);
+            printFileBytes = Files.size(printFile);
+            printFilePages = merged.getPageCount();
+        }
+        logger.info("Print job for exam {}: {} documents, {} pages, {} bytes in {} ms", exam.getId(),
+                copies.size(), pages, bytes, elapsed / 1_000_000);
+        return new Result(copies.size(), pages, bytes, printFilePages, printFileBytes, elapsed, false);
+    }
+
+    private Rendered render(ExamInstance instance, ExamCopy copy, String entryName, Path file) throws IOException {
+        int pages;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            pages = renderer.render(instance, copy, out);
+        }
+        return new Rendered(entryName, file, pages);
+    }
+
+    private static Rendered get(Future<Rendered> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Rendering failed", cause);
+        }
+    }
+
+    /**
+     * File name in the archive: seat, name and student ID, so that a sorted listing is
+     * in seat order. Unique even if two copies have the same seat and name.
+     */
+    private static String entryName(ExamCopy copy, int index, Set<String> used) {
+        StringBuilder name = new StringBuilder();
+        if (copy.getSeat() != null && !copy.getSeat().isEmpty()) {
+            name.append(copy.getSeat()).append('_');
+        }
+        name.append(copy.getStudentName()).append('_').append(copy.getStudentId());
+        String base = name.toString().replaceAll("[^\\p{L}\\p{N}._-]+", "_");
+        String entryName = base + ".pdf";
+        if (!used.add(entryName)) {
+            entryName = base + "_" + index + ".pdf";
+            used.add(entryName);
+        }
+        return entryName;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Could not delete temporary file {}", file);
+                }
+            });
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            logger.warn("Could not delete temporary directory {}", dir);
+        }
+    }
+
+    /**
+     * Receives the number of finished documents; called on the thread running the job.
+     */
+    public interface ProgressListener {
+        void progress(int completed, int total);
+    }
+
+    private static final class Rendered {
+        private final String entryName;
+        private final Path file;
+        private final int pages;
+
+        Rendered(String entryName, Path file, int pages) {
+            this.entryName = entryName;
+            this.file = file;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * Statistics of a finished or cancelled job.
+     */
+    public static class Result {
+        private final int documents;
+        private final long pages;
+        private final long bytes;
+        private final int printFilePages;
+        private final long printFileBytes;
+        private final long elapsedNanos;
+        private final boolean cancelled;
+
+        Result(int documents, long pages, long bytes, int printFilePages, long printFileBytes,
+               long elapsedNanos, boolean cancelled) {
+            this.documents = documents;
+            this.pages = pages;
+            this.bytes = bytes;
+            this.printFilePages = printFilePages;
+            this.printFileBytes = printFileBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public long getPages() {
+            return pages;
+        }
+
+        /**
+         * @return the size of the archive, 0 if cancelled
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return archive bytes per rendered page, 0 if cancelled
+         */
+        public long getBytesPerPage() {
+            return pages > 0 ? bytes / pages : 0;
+        }
+
+        /**
+         * @return pages of the merged print file including duplex blanks, 0 if none was written
+         */
+        public int getPrintFilePages() {
+            return printFilePages;
+        }
+
+        public long getPrintFileBytes() {
+            return printFileBytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public double getDocumentsPerSecond() {
+            return elapsedNanos > 0 ? documents * 1e9 / elapsedNanos : 0;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.klasurapp.pdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Flows text top to bottom over A4 pages and starts a new page when the current one is full.
+ * Several layouts may write one after another into the same document, e.g. the copies
+ * of a merged print file; each numbers only its own pages. Not thread-safe.
+ */
+class PageLayout implements AutoCloseable {
+    static final float MARGIN = 56;
+    private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+    private static final float LINE_SPACING = 1.3f;
+    private static final float FOOTER_SIZE = 8;
+    private static final float LOGO_HEIGHT = 28;
+
+    private final PDDocument document;
+    private final PdfResources resources;
+    private final PdfFonts fonts;
+    private final Map<String, List<String>> wrapCache;
+    private final int firstPage;
+    private PDPageContentStream content;
+    private float y;
+
+    /**
+     * @param resources the fonts and images of the document
+     * @param wrapCache wrapped lines by font, size, width and text, shared by the
+     *                  documents of a batch; null to wrap every paragraph anew
+     */
+    PageLayout(PdfResources resources, Map<String, List<String>> wrapCache) {
+        this.document = resources.getDocument();
+        this.resources = resources;
+        this.fonts = resources.getFonts();
+        this.wrapCache = wrapCache;
+        this.firstPage = document.getNumberOfPages();
+    }
+
+    PdfFonts getFonts() {
+        return fonts;
+    }
+
+    /**
+     * @return the number of pages written by this layout
+     */
+    int getPageCount() {
+        return document.getNumberOfPages() - firstPage;
+    }
+
+    float getWidth() {
+        return PAGE_SIZE.getWidth() - 2 * MARGIN;
+    }
+
+    void newPage() throws IOException {
+        closeContent();
+        PDPage page = new PDPage(PAGE_SIZE);
+        document.addPage(page);
+        content = new PDPageContentStream(document, page);
+        y = PAGE_SIZE.getHeight() - MARGIN;
+    }
+
+    /**
+     * Start a new page unless the given height still fits on the current one.
+     */
+    void ensureSpace(float height) throws IOException {
+        if (content == null || y - height < MARGIN) {
+            newPage();
+        }
+    }
+
+    void gap(float height) {
+        y -= height;
+    }
+
+    /**
+     * Write wrapped text. Line breaks in the text start new lines.
+     */
+    void paragraph(String text, PDFont font, float size) throws IOException {
+        paragraph(text, font, size, 0);
+    }
+
+    void paragraph(String text, PDFont font, float size, float indent) throws IOException {
+        if (text == null) {
+            return;
+        }
+        for (String line : lines(text, font, size, getWidth() - indent)) {
+            ensureSpace(size * LINE_SPACING);
+            y -= size * LINE_SPACING;
+            showText(line, font, size, MARGIN + indent, y);
+        }
+    }
+
+    /**
+     * Write a label and a line to fill in, e.g. for the student's name.
+     */
+    void field(String label, float size) throws IOException {
+        field(label, null, size);
+    }
+
+    /**
+     * Write a label and a line, prefilled with the given value if it is not null.
+     */
+    void field(String label, String value, float size) throws IOException {
+        ensureSpace(size * 2.5f);
+        y -= size * 2.5f;
+        PDFont font = fonts.getRegular();
+        showText(label, font, size, MARGIN, y);
+        float start = MARGIN + font.getStringWidth(label) / 1000 * size + 6;
+        if (value != null) {
+            showText(printable(fonts.getBold(), value), fonts.getBold(), size, start + 4, y);
+        }
+        line(start, y - 2, MARGIN + getWidth(), y - 2);
+    }
+
+    /**
+     * Draw ruled lines as answer space. Continues on the next page if needed.
+     */
+    void ruledLines(int count, float spacing) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ensureSpace(spacing);
+            y -= spacing;
+            line(MARGIN, y, MARGIN + getWidth(), y);
+        }
+    }
+
+    /**
+     * Write an answer option with a check box in front of its first line.
+     */
+    void option(String text, PDFont font, float size, float indent) throws IOException {
+        option(text, font, size, indent, false);
+    }
+
+    /**
+     * @param checked true to draw a cross into the box, e.g. for an answer key
+     */
+    void option(String text, PDFont font, float size, float indent, boolean checked) throws IOException {
+        float box = size * 0.8f;
+        float textIndent = indent + box + 8;
+        boolean first = true;
+        for (String line : lines(text, font, size, getWidth() - textIndent)) {
+            ensureSpace(size * LINE_SPACING);
+            y -= size * LINE_SPACING;
+            if (first) {
+                content.setLineWidth(0.6f);
+                content.addRect(MARGIN + indent, y - size * 0.1f, box, box);
+                content.stroke();
+                if (checked) {
+                    line(MARGIN + indent, y - size * 0.1f, MARGIN + indent + box, y - size * 0.1f + box);
+                    line(MARGIN + indent, y - size * 0.1f + box, MARGIN + indent + box, y - size * 0.1f);
+                }
+                first = false;
+            }
+            showText(line, font, size, MARGIN + textIndent, y);
+        }
+    }
+
+    /**
+     * Write "Seite x von n", the given text and the logo on every page of this layout.
+     * Text and logo are the same on every page, so they are drawn once into a form
+     * XObject that each page refers to; only the page number is written per page.
+     *
+     * @param text the footer text
+     * @param logo PNG or JPEG bytes shown at the top right, or null
+     */
+    void footer(String text, byte[] logo) throws IOException {
+        closeContent();
+        PDFormXObject decoration = decoration(text, logo);
+        PDFont font = fonts.getRegular();
+        int total = document.getNumberOfPages() - firstPage;
+        for (int i = 0; i < total; i++) {
+            PDPage page = document.getPage(firstPage + i);
+            try (PDPageContentStream stream = new PDPageContentStream(document, page,
+                    PDPageContentStream.AppendMode.APPEND, true)) {
+                stream.drawForm(decoration);
+                String pageLabel = "Seite " + (i + 1) + " von " + total;
+                float width = font.getStringWidth(pageLabel) / 1000 * FOOTER_SIZE;
+                write(stream, pageLabel, font, FOOTER_SIZE, MARGIN + getWidth() - width, MARGIN / 2);
+            }
+        }
+    }
+
+    private PDFormXObject decoration(String text, byte[] logo) throws IOException {
+        PDFormXObject form = new PDFormXObject(document);
+        form.setBBox(new PDRectangle(PAGE_SIZE.getWidth(), PAGE_SIZE.getHeight()));
+        form.setResources(new PDResources());
+        try (PDPageContentStream stream = new PDPageContentStream(document, form,
+                form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+            PDFont font = fonts.getRegular();
+            write(stream, printable(font, text), font, FOOTER_SIZE, MARGIN, MARGIN / 2);
+            if (logo != null) {
+                PDImageXObject image = resources.image(logo);
+                float width = image.getWidth() * LOGO_HEIGHT / image.getHeight();
+                stream.drawImage(image, MARGIN + getWidth() - width,
+                        PAGE_SIZE.getHeight() - MARGIN / 2 - LOGO_HEIGHT / 2, width, LOGO_HEIGHT);
+            }
+        }
+        return form;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeContent();
+    }
+
+    private void closeContent() throws IOException {
+        if (content != null) {
+            content.close();
+            content = null;
+        }
+    }
+
+    private void showText(String text, PDFont font, float size, float x, float baseline) throws IOException {
+        write(content, text, font, size, x, baseline);
+    }
+
+    private static void write(PDPageContentStream stream, String text, PDFont font, float size,
+                              float x, float baseline) throws IOException {
+        stream.beginText();
+        stream.setFont(font, size);
+        stream.newLineAtOffset(x, baseline);
+        stream.showText(text);
+        stream.endText();
+    }
+
+    private void line(float x1, float y1, float x2, float y2) throws IOException {
+        content.setLineWidth(0.4f);
+        content.moveTo(x1, y1);
+        content.lineTo(x2, y2);
+        content.stroke();
+    }
+
+    private List<String> lines(String text, PDFont font, float size, float width) throws IOException {
+        if (wrapCache == null) {
+            return wrap(printable(font, text), font, size, width);
+        }
+        String key = font.getName() + '|' + size + '|' + width + '|' + text;
+        List<String> lines = wrapCache.get(key);
+        if (lines == null) {
+            lines = wrap(printable(font, text), font, size, width);
+            wrapCache.put(key, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Greedy word wrap; words longer than a line are broken by character.
+     */
+    static List<String> wrap(String text, PDFont font, float size, float width) throws IOException {
+        List<String> lines = new ArrayList<>();
+        float scale = size / 1000;
+        for (String paragraph : text.split("\r?\n", -1)) {
+            StringBuilder line = new StringBuilder();
+            float lineWidth = 0;
+            float spaceWidth = font.getStringWidth(" ") * scale;
+            for (String word : paragraph.split(" +")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                float wordWidth = font.getStringWidth(word) * scale;
+                if (line.length() > 0 && lineWidth + spaceWidth + wordWidth <= width) {
+                    line.append(' ').append(word);
+                    lineWidth += spaceWidth + wordWidth;
+                    continue;
+                }
+                if (line.length() > 0) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    lineWidth = 0;
+                }
+                while (wordWidth > width) {
+                    int end = fittingPrefix(word, font, scale, width);
+                    lines.add(word.substring(0, end));
+                    word = word.substring(end);
+                    wordWidth = font.getStringWidth(word) * scale;
+                }
+                line.append(word);
+                lineWidth = wordWidth;
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static int fittingPrefix(String word, PDFont font, float scale, float width) throws IOException {
+        int end = 1;
+        while (end < word.length() && font.getStringWidth(word.substring(0, end + 1)) * scale <= width) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Replace characters the font cannot encode, e.g. symbols outside WinAnsi for the
+     * standard fonts, and tabs, which have no glyph.
+     */
+    static String printable(PDFont font, String text) throws IOException {
+        String cleaned = text.replace('\t', ' ');
+        try {
+            font.encode(cleaned.replace("\r", "").replace("\n", ""));
+            return cleaned;
+        } catch (IllegalArgumentException e) {
+            StringBuilder result = new StringBuilder(cleaned.length());
+            for (int i = 0; i < cleaned.length(); ) {
+                int codePoint = cleaned.codePointAt(i);
+                String character = new String(Character.toChars(codePoint));
+                if (codePoint == '\n' || codePoint == '\r') {
+                    result.append(character);
+                } else {
+                    try {
+                        font.encode(character);
+                        result.append(character);
+                    } catch (IllegalArgumentException unsupported) {
+                        result.append('?');
+                    }
+                }
+                i += Character.charCount(codePoint);
+            }
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.klasurapp.pdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * The fonts used for exam documents.
+ * <p>
+ * The standard 14 fonts are built into every PDF viewer, so they are not embedded and
+ * the same font objects are shared by all documents and threads. They only cover
+ * WinAnsi characters.
+ * <p>
+ * TrueType fonts cover all of Unicode but must be embedded. The font files are read
+ * once; each thread parses them once and reuses the parsed fonts for every document
+ * it renders, and only the glyphs a document uses are embedded (subsetting).
+ */
+public final class PdfFonts {
+    private static final PdfFonts STANDARD =
+            new PdfFonts(PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD, PDType1Font.HELVETICA_OBLIQUE);
+
+    private final PDFont regular;
+    private final PDFont bold;
+    private final PDFont italic;
+    private final byte[][] fontFiles;
+    private final boolean subset;
+    private final ThreadLocal<TrueTypeFont[]> parsed;
+
+    private PdfFonts(PDFont regular, PDFont bold, PDFont italic) {
+        this.regular = regular;
+        this.bold = bold;
+        this.italic = italic;
+        this.fontFiles = null;
+        this.subset = false;
+        this.parsed = null;
+    }
+
+    private PdfFonts(byte[][] fontFiles, boolean subset) {
+        this.regular = null;
+        this.bold = null;
+        this.italic = null;
+        this.fontFiles = fontFiles;
+        this.subset = subset;
+        this.parsed = ThreadLocal.withInitial(() -> new TrueTypeFont[fontFiles.length]);
+    }
+
+    /**
+     * @return Helvetica in regular, bold and oblique
+     */
+    public static PdfFonts standard() {
+        return STANDARD;
+    }
+
+    /**
+     * TrueType fonts embedded as subsets.
+     *
+     * @param regular the regular font file
+     * @param bold the bold font file, or null to use the regular font
+     * @param italic the italic font file, or null to use the regular font
+     * @throws IOException if a font file cannot be read
+     */
+    public static PdfFonts embedded(Path regular, Path bold, Path italic) throws IOException {
+        return embedded(regular, bold, italic, true);
+    }
+
+    /**
+     * @param subset false to embed the complete font files, which only makes sense
+     *               when the documents are edited afterwards
+     */
+    public static PdfFonts embedded(Path regular, Path bold, Path italic, boolean subset) throws IOException {
+        byte[] regularFile = Files.readAllBytes(regular);
+        byte[] boldFile = bold != null ? Files.readAllBytes(bold) : regularFile;
+        byte[] italicFile = italic != null ? Files.readAllBytes(italic) : regularFile;
+        // The same file given twice is embedded once
+        if (Arrays.equals(boldFile, regularFile)) {
+            boldFile = regularFile;
+        }
+        if (Arrays.equals(italicFile, regularFile)) {
+            italicFile = regularFile;
+        } else if (Arrays.equals(italicFile, boldFile)) {
+            italicFile = boldFile;
+        }
+        return new PdfFonts(new byte[][] {regularFile, boldFile, italicFile}, subset);
+    }
+
+    public boolean isEmbedded() {
+        return fontFiles != null;
+    }
+
+    /**
+     * Fonts for one document. Standard fonts are returned as they are; embedded fonts
+     * are added to the document, each distinct font file once.
+     */
+    PdfFonts forDocument(PDDocument document) throws IOException {
+        if (!isEmbedded()) {
+            return this;
+        }
+        PDFont[] fonts = new PDFont[fontFiles.length];
+        for (int i = 0; i < fontFiles.length; i++) {
+            for (int j = 0; j < i && fonts[i] == null; j++) {
+                if (fontFiles[i] == fontFiles[j]) {
+                    fonts[i] = fonts[j];
+                }
+            }
+            if (fonts[i] == null) {
+                fonts[i] = PDType0Font.load(document, parsed(i), subset);
+            }
+        }
+        return new PdfFonts(fonts[0], fonts[1], fonts[2]);
+    }
+
+    private TrueTypeFont parsed(int index) throws IOException {
+        TrueTypeFont[] fonts = parsed.get();
+        if (fonts[index] == null) {
+            fonts[index] = new TTFParser().parse(new ByteArrayInputStream(fontFiles[index]));
+        }
+        return fonts[index];
+    }
+
+    public PDFont getRegular() {
+        return regular;
+    }
+
+    public PDFont getBold() {
+        return bold;
+    }
+
+    public PDFont getItalic() {
+        return italic;
+    }
+}
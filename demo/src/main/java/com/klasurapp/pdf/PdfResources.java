@@ -0,0 +1,58 @@
+package com.klasurapp.pdf;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * The shared resources of one PDF document: its fonts and its images.
+ * <p>
+ * Every distinct image is added to the document once, however many pages or student
+ * copies show it; pages refer to the same XObject. Not thread-safe, like the document.
+ */
+class PdfResources {
+    private final PDDocument document;
+    private final PdfFonts fonts;
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+
+    PdfResources(PDDocument document, PdfFonts fonts) throws IOException {
+        this.document = document;
+        this.fonts = fonts.forDocument(document);
+    }
+
+    PDDocument getDocument() {
+        return document;
+    }
+
+    PdfFonts getFonts() {
+        return fonts;
+    }
+
+    /**
+     * @param data PNG or JPEG bytes
+     * @return the document's XObject for this image, created on first use
+     */
+    PDImageXObject image(byte[] data) throws IOException {
+        String key = digest(data);
+        PDImageXObject image = images.get(key);
+        if (image == null) {
+            image = PDImageXObject.createFromByteArray(document, data, key);
+            images.put(key, image);
+        }
+        return image;
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            return Base64.getUrlEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
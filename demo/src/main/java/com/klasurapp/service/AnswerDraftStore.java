@@ -0,0 +1,246 @@
+package com.klasurapp.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.AnswerDraftDAO;
+import com.klasurapp.model.Answer;
+import com.klasurapp.model.AnswerDraft;
+import com.klasurapp.model.OpenAnswer;
+import com.klasurapp.model.TaskFormat;
+
+/**
+ * Autosave for answers while an attempt is running.
+ * <p>
+ * Every edit replaces the draft of its (attempt, task) in memory and marks it dirty;
+ * a draft that is already dirty is not queued again. A single thread writes the dirty
+ * drafts at a fixed interval in one batched upsert, so a student typing continuously
+ * costs one row per interval instead of one write per keystroke, and at most one
+ * interval of typing is lost if the server goes down. Drafts go to an UNLOGGED table.
+ * <p>
+ * When an attempt is submitted its answers are written to {@code answers} and its
+ * drafts are discarded. Discarding runs on the same thread as the writes, so no
+ * write of a discarded draft can land after the delete. The writer thread has its own
+ * database connection.
+ */
+public class AnswerDraftStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AnswerDraftStore.class);
+    private static final long DEFAULT_INTERVAL_MILLIS = 2000;
+    private static final int MAX_BATCH = 1000;
+
+    private final AnswerDraftDAO answerDraftDAO;
+    private final Map<Long, Map<Long, Entry>> drafts = new ConcurrentHashMap<>();
+    private final Queue<Entry> dirty = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService writer;
+    // Versions continue above those of drafts stored before a restart
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final AtomicLong edits = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public AnswerDraftStore(AnswerDraftDAO answerDraftDAO) {
+        this(answerDraftDAO, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param intervalMillis how often dirty drafts are written
+     */
+    public AnswerDraftStore(AnswerDraftDAO answerDraftDAO, long intervalMillis) {
+        this.answerDraftDAO = answerDraftDAO;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "answer-draft-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writeDirty, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the current state of an answer. The answer must belong to an attempt that
+     * is still running: a save after {@link #discard} would store the draft again.
+     * {@link ExamSessionEngine} saves under the attempt's lock and only while it runs.
+     * May be called from any thread.
+     */
+    public void save(Answer answer) {
+        Entry entry = drafts.computeIfAbsent(answer.getAttemptId(), id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(answer.getTaskId(), id -> new Entry(answer));
+        edits.incrementAndGet();
+        synchronized (entry) {
+            if (entry.discarded) {
+                return;
+            }
+            entry.format = answer instanceof OpenAnswer ? TaskFormat.OPEN : TaskFormat.CLOSED;
+            entry.content = answer.getAnswerContent();
+            entry.version = versions.incrementAndGet();
+            entry.updatedAt = LocalDateTime.now();
+            if (!entry.queued) {
+                entry.queued = true;
+                dirty.add(entry);
+            }
+        }
+    }
+
+    /**
+     * @return the stored drafts of an attempt, to resume it after a restart
+     */
+    public List<AnswerDraft> load(long attemptId) {
+        return answerDraftDAO.findByAttempt(attemptId);
+    }
+
+    /**
+     * Drop the drafts of submitted attempts, in memory and in the database. Runs
+     * asynchronously after any write in progress.
+     */
+    public void discard(Collection<Long> attemptIds) {
+        List<Long> ids = new ArrayList<>(attemptIds);
+        for (Long id : ids) {
+            Map<Long, Entry> entries = drafts.remove(id);
+            if (entries == null) {
+                continue;
+            }
+            for (Entry entry : entries.values()) {
+                synchronized (entry) {
+                    entry.discarded = true;
+                }
+            }
+        }
+        writer.execute(() -> {
+            try {
+                answerDraftDAO.deleteByAttempts(ids);
+            } catch (RuntimeException e) {
+                logger.warn("Could not delete the drafts of {} submitted attempts", ids.size(), e);
+            }
+        });
+    }
+
+    /**
+     * Write all dirty drafts now and wait for it.
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(this::writeDirty).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Writing drafts failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of edits recorded
+     */
+    public long getEditCount() {
+        return edits.get();
+    }
+
+    /**
+     * @return the number of draft rows written to the database
+     */
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * @return the number of batched upserts
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Write the remaining dirty drafts and stop.
+     */
+    @Override
+    public void close() {
+        writer.execute(this::writeDirty);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeDirty() {
+        List<Entry> entries = new ArrayList<>(Math.min(MAX_BATCH, dirty.size()));
+        List<AnswerDraft> batch = new ArrayList<>(Math.min(MAX_BATCH, dirty.size()));
+        Entry entry;
+        while ((entry = dirty.poll()) != null) {
+            synchronized (entry) {
+                // An edit from here on queues the entry again
+                entry.queued = false;
+                if (entry.discarded) {
+                    continue;
+                }
+                AnswerDraft draft = new AnswerDraft(entry.attemptId, entry.taskId, entry.userId, entry.format,
+                        entry.content, entry.version);
+                draft.setUpdatedAt(entry.updatedAt);
+                batch.add(draft);
+            }
+            entries.add(entry);
+            if (batch.size() == MAX_BATCH) {
+                if (!write(batch, entries)) {
+                    return;
+                }
+                batch.clear();
+                entries.clear();
+            }
+        }
+        write(batch, entries);
+    }
+
+    /**
+     * @return false if the write failed; the entries are queued again
+     */
+    private boolean write(List<AnswerDraft> batch, List<Entry> entries) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            rowsWritten.addAndGet(answerDraftDAO.upsertBatch(batch));
+            batches.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Writing {} drafts failed, retrying with the next interval", batch.size(), e);
+            for (Entry failed : entries) {
+                synchronized (failed) {
+                    if (!failed.queued && !failed.discarded) {
+                        failed.queued = true;
+                        dirty.add(failed);
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Long attemptId;
+        private final Long taskId;
+        private final Long userId;
+        private TaskFormat format;
+        private String content;
+        private long version;
+        private LocalDateTime updatedAt;
+        private boolean queued;
+        private boolean discarded;
+
+        Entry(Answer answer) {
+            this.attemptId = answer.getAttemptId();
+            this.taskId = answer.getTaskId();
+            this.userId = answer.getUserId();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.klasurapp.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.AnswerDAO;
+import com.klasurapp.model.Answer;
+
+/**
+ * Accepts single answers from clients that may send the same answer again, e.g. after
+ * a timeout.
+ * <p>
+ * The client gives every answer a submission key and keeps it for its retries. The
+ * service remembers the most recent keys with the outcome of their submission; a retry
+ * of a recent key gets that outcome, or waits for it if the first submission is still
+ * in progress, without touching the journal or the database. Retries of older keys
+ * reach the database, where the unique submission key stops a second row. The first
+ * submission of a key wins; a retry with changed content is ignored.
+ */
+public class AnswerSubmissionService {
+    private static final Logger logger = LoggerFactory.getLogger(AnswerSubmissionService.class);
+    private static final int DEFAULT_RECENT_KEYS = 10_000;
+
+    private final AnswerDAO answerDAO;
+    private final SubmissionJournal journal;
+    // Least recently used first; guarded by itself
+    private final Map<UUID, CompletableFuture<Void>> recent;
+    private final AtomicLong submissions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    public AnswerSubmissionService(AnswerDAO answerDAO, SubmissionJournal journal) {
+        this(answerDAO, journal, DEFAULT_RECENT_KEYS);
+    }
+
+    /**
+     * @param journal takes the answers instead of the database; may be null
+     * @param recentKeys how many submission keys are remembered
+     */
+    public AnswerSubmissionService(AnswerDAO answerDAO, SubmissionJournal journal, int recentKeys) {
+        this.answerDAO = answerDAO;
+        this.journal = journal;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CompletableFuture<Void>> eldest) {
+                return size() > recentKeys;
+            }
+        };
+    }
+
+    /**
+     * Submit an answer. An answer without a submission key gets one; send the same
+     * answer object again to retry.
+     *
+     * @return completes when the answer is stored, or journaled if there is a journal;
+     *         fails if it could not be, and the answer may then be submitted again
+     */
+    public CompletableFuture<Void> submit(Answer answer) {
+        if (answer.getSubmissionKey() == null) {
+            answer.setSubmissionKey(UUID.randomUUID());
+        }
+        UUID key = answer.getSubmissionKey();
+        CompletableFuture<Void> submission = new CompletableFuture<>();
+        synchronized (recent) {
+            CompletableFuture<Void> earlier = recent.get(key);
+            if (earlier != null && !earlier.isCompletedExceptionally()) {
+                retries.incrementAndGet();
+                logger.debug("Answered retry of submission {} from memory", key);
+                return earlier;
+            }
+            recent.put(key, submission);
+        }
+        submissions.incrementAndGet();
+
+        if (journal != null) {
+            journal.submit(null, List.of(answer)).whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    submission.completeExceptionally(failure);
+                } else {
+                    submission.complete(null);
+                }
+            });
+            return submission;
+        }
+        try {
+            answerDAO.create(answer);
+            submission.complete(null);
+        } catch (RuntimeException e) {
+            submission.completeExceptionally(e);
+        }
+        return submission;
+    }
+
+    /**
+     * @return the number of submissions passed on to the journal or the database
+     */
+    public long getSubmissionCount() {
+        return submissions.get();
+    }
+
+    /**
+     * @return the number of retries answered from memory
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+}
@@ -1,108 +1,165 @@
 package com.klasurapp.service;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.time.LocalDateTime;
-import java.util.Base64;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.klasurapp.dao.NutzerDAO;
 import com.klasurapp.dao.NutzerKontoDAO;
 import com.klasurapp.model.NutzerKonto;
+import com.klasurapp.model.Session;
 
 /**
  * Service for user authentication.
  */
 public class AuthenticationService {
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationService.class);
-    private static final int SALT_LENGTH = 16;
+    private static final String LOCAL_CLIENT = "local";
     
     private NutzerKontoDAO nutzerKontoDAO;
-    private NutzerKonto currentUser;
+    private final LastLoginTracker lastLoginTracker;
+    private final SessionManager sessionManager;
+    private final PasswordHasher passwordHasher;
+    private final LoginRateLimiter usernameLimiter;
+    private final LoginRateLimiter clientLimiter;
+    private final AvailabilityIndex availabilityIndex;
 
     public AuthenticationService(NutzerKontoDAO nutzerKontoDAO) {
+        this(nutzerKontoDAO, new LastLoginTracker(nutzerKontoDAO), new SessionManager(), new PasswordHasher(),
+             new LoginRateLimiter(5, 5, 100_000), new LoginRateLimiter(30, 30, 100_000),
+             new AvailabilityIndex(nutzerKontoDAO, new NutzerDAO()));
+    }
+
+    public AuthenticationService(NutzerKontoDAO nutzerKontoDAO, LastLoginTracker lastLoginTracker,
+                                 SessionManager sessionManager, PasswordHasher passwordHasher,
+                                 LoginRateLimiter usernameLimiter, LoginRateLimiter clientLimiter,
+                                 AvailabilityIndex availabilityIndex) {
         this.nutzerKontoDAO = nutzerKontoDAO;
+        this.lastLoginTracker = lastLoginTracker;
+        this.sessionManager = sessionManager;
+        this.passwordHasher = passwordHasher;
+        this.usernameLimiter = usernameLimiter;
+        this.clientLimiter = clientLimiter;
+        this.availabilityIndex = availabilityIndex;
+    }
+
+    /**
+     * Authenticate a user with username and password from the local console.
+     * 
+     * @param benutzername the username
+     * @param passwort the password (plain text)
+     * @return the session token, or empty if authentication failed
+     */
+    public Optional<String> login(String benutzername, String passwort) {
+        return login(benutzername, passwort, LOCAL_CLIENT);
     }
 
     /**
      * Authenticate a user with username and password.
+     * Attempts over the per-username or per-client limit are rejected
+     * before the database is queried.
      * 
      * @param benutzername the username
      * @param passwort the password (plain text)
-     * @return true if authentication was successful
+     * @param client an identifier of the client, e.g. its address
+     * @return the session token, or empty if authentication failed
      */
-    public boolean login(String benutzername, String passwort) {
+    public Optional<String> login(String benutzername, String passwort, String client) {
+        String usernameKey = benutzername.toLowerCase(Locale.ROOT);
+        if (!clientLimiter.tryAcquire(client) || !usernameLimiter.tryAcquire(usernameKey)) {
+            logger.warn("Login rate limit exceeded for user: {} (client {})", benutzername, client);
+            return Optional.empty();
+        }
+        
         try {
             Optional<NutzerKonto> kontoOpt = nutzerKontoDAO.findByBenutzername(benutzername);
             
             if (!kontoOpt.isPresent() || !kontoOpt.get().isAktiv()) {
                 logger.warn("Login failed for user: {}", benutzername);
-                return false;
+                return Optional.empty();
             }
             
             NutzerKonto konto = kontoOpt.get();
             String storedHash = konto.getPasswortHash();
             
-            // Extract salt from stored hash
-            String[] parts = storedHash.split(":");
-            if (parts.length != 2) {
-                logger.error("Invalid hash format for user: {}", benutzername);
-                return false;
-            }
-            
-            String salt = parts[0];
-            String expectedHash = parts[1];
-            
-            // Hash the provided password with the same salt
-            String actualHash = hashPassword(passwort, Base64.getDecoder().decode(salt));
-            
-            if (expectedHash.equals(actualHash)) {
-                // Update last login time
+            if (passwordHasher.verify(passwort, storedHash)) {
+                // Upgrade legacy or weak hashes in the background
+                if (passwordHasher.needsRehash(storedHash)) {
+                    rehash(konto, passwort);
+                }
+                
+                // Update last login time (written in the next batch flush)
                 konto.setLetzteAnmeldung(LocalDateTime.now());
-                nutzerKontoDAO.update(konto);
+                lastLoginTracker.touch(konto.getId(), konto.getLetzteAnmeldung());
+                
+                // Successful logins don't count against the username
+                usernameLimiter.reset(usernameKey);
                 
-                // Set current user
-                currentUser = konto;
+                // Open a session for the user
+                String token = sessionManager.create(konto);
                 logger.info("User logged in successfully: {}", benutzername);
-                return true;
+                return Optional.of(token);
             } else {
                 logger.warn("Invalid password for user: {}", benutzername);
-                return false;
+                return Optional.empty();
             }
+        } catch (RejectedExecutionException e) {
+            logger.warn("Login rejected, password hashing is saturated: {}", benutzername);
+            return Optional.empty();
         } catch (Exception e) {
             logger.error("Authentication error", e);
-            return false;
+            return Optional.empty();
         }
     }
     
     /**
-     * Log out the current user.
+     * Log out the user of the given session.
+     * 
+     * @param token the session token
      */
-    public void logout() {
-        currentUser = null;
+    public void logout(String token) {
+        sessionManager.invalidate(token);
         logger.info("User logged out");
     }
     
     /**
-     * Check if a user is currently logged in.
+     * Check if a session token belongs to a logged-in user.
      * 
-     * @return true if a user is logged in
+     * @param token the session token
+     * @return true if the session is valid
      */
-    public boolean isLoggedIn() {
-        return currentUser != null;
+    public boolean isLoggedIn(String token) {
+        return sessionManager.validate(token).isPresent();
     }
     
     /**
-     * Get the currently logged-in user.
+     * Get the user of a session.
      * 
-     * @return the current user or null if no user is logged in
+     * @param token the session token
+     * @return the user, or empty if the session is unknown or expired
      */
-    public NutzerKonto getCurrentUser() {
-        return currentUser;
+    public Optional<NutzerKonto> getUser(String token) {
+        return sessionManager.validate(token).map(Session::getKonto);
+    }
+    
+    /**
+     * Delete a user account and end all of its sessions.
+     * 
+     * @param kontoId the ID of the account to delete
+     * @return true if the account was deleted
+     */
+    public boolean deleteAccount(Long kontoId) {
+        Optional<String> benutzername = nutzerKontoDAO.findBenutzernameById(kontoId);
+        boolean deleted = nutzerKontoDAO.delete(kontoId);
+        if (deleted) {
+            sessionManager.invalidateAll(kontoId);
+            benutzername.ifPresent(availabilityIndex::removed);
+        }
+        return deleted;
     }
     
     /**
@@ -114,21 +171,26 @@ public class AuthenticationService {
      */
     public boolean register(NutzerKonto konto, String passwort) {
         try {
-            // Check if username already exists
-            if (nutzerKontoDAO.findByBenutzername(konto.getBenutzername()).isPresent()) {
+            // Check if username or email already exist (usually answered from memory)
+            if (!availabilityIndex.isBenutzernameAvailable(konto.getBenutzername())) {
                 logger.warn("Username already exists: {}", konto.getBenutzername());
                 return false;
             }
+            // Only a new Nutzer row adds an email, existing users keep theirs
+            String email = konto.getNutzer().getId() == null ? konto.getNutzer().getEmail() : null;
+            if (email != null && !availabilityIndex.isEmailAvailable(email)) {
+                logger.warn("Email already exists: {}", email);
+                return false;
+            }
             
-            // Generate salt and hash password
-            byte[] salt = generateSalt();
-            String hash = hashPassword(passwort, salt);
-            String saltAndHash = Base64.getEncoder().encodeToString(salt) + ":" + hash;
+            // Hash password
+            String hash = passwordHasher.hash(passwort);
             
             // Set password hash and save account
-            konto.setPasswortHash(saltAndHash);
+            konto.setPasswortHash(hash);
             konto.setAktiv(true);
             nutzerKontoDAO.create(konto);
+            availabilityIndex.added(konto.getBenutzername(), email);
             
             logger.info("User registered successfully: {}", konto.getBenutzername());
             return true;
@@ -139,32 +201,47 @@ public class AuthenticationService {
     }
     
     /**
-     * Generate a random salt.
-     * 
-     * @return random salt bytes
+     * @return the state of the per-username login limiter
      */
-    private byte[] generateSalt() {
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[SALT_LENGTH];
-        random.nextBytes(salt);
-        return salt;
+    public LoginRateLimiter.Stats getUsernameLimiterStats() {
+        return usernameLimiter.getStats();
     }
     
     /**
-     * Hash a password with a salt using SHA-256.
-     * 
-     * @param password the password to hash
-     * @param salt the salt to use
-     * @return the hashed password
+     * @return the state of the per-client login limiter
      */
-    private String hashPassword(String password, byte[] salt) {
+    public LoginRateLimiter.Stats getClientLimiterStats() {
+        return clientLimiter.getStats();
+    }
+    
+    /**
+     * @return the state of the username and email availability index
+     */
+    public AvailabilityIndex.Stats getAvailabilityStats() {
+        return availabilityIndex.getStats();
+    }
+    
+    /**
+     * Flush pending last login updates and stop background work.
+     */
+    public void shutdown() {
+        lastLoginTracker.close();
+        sessionManager.close();
+        passwordHasher.close();
+    }
+    
+    private void rehash(NutzerKonto konto, String passwort) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            byte[] hashedPassword = md.digest(password.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(hashedPassword);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
+            passwordHasher.hashAsync(passwort).thenAccept(hash -> {
+                nutzerKontoDAO.updatePasswortHash(konto.getId(), hash);
+                logger.info("Upgraded password hash for user: {}", konto.getBenutzername());
+            }).exceptionally(e -> {
+                logger.warn("Could not upgrade password hash for user: {}", konto.getBenutzername(), e);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            // Try again on the next login
+            logger.debug("Skipped password hash upgrade, hashing is saturated");
         }
     }
-}
\ No newline at end of file
+}
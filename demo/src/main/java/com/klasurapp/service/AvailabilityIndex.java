@@ -0,0 +1,249 @@
+package com.klasurapp.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.NutzerDAO;
+import com.klasurapp.dao.NutzerKontoDAO;
+
+/**
+ * In-memory index answering "is this username / email still free?" without a
+ * database round trip in the common case.
+ * <p>
+ * Backed by one counting Bloom filter per column. A definite negative from the
+ * filter means the value is free; a possible positive is confirmed against the
+ * database. Until {@link #build()} has finished every check goes to the database.
+ * <p>
+ * Sizing: with the default of 1M entries at 1 % false positives each filter uses
+ * about 9.6M counters and 7 hash functions, i.e. roughly 4.8 MB with 4-bit counters
+ * (9.6 MB for both filters).
+ */
+public class AvailabilityIndex {
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityIndex.class);
+    private static final long DEFAULT_CAPACITY = 1_000_000;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final NutzerKontoDAO nutzerKontoDAO;
+    private final NutzerDAO nutzerDAO;
+    private final CountingBloomFilter benutzernamen;
+    private final CountingBloomFilter emails;
+    private volatile boolean ready;
+
+    private final LongAdder definiteNegatives = new LongAdder();
+    private final LongAdder databaseChecks = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public AvailabilityIndex(NutzerKontoDAO nutzerKontoDAO, NutzerDAO nutzerDAO) {
+        this(nutzerKontoDAO, nutzerDAO, DEFAULT_CAPACITY, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param capacity number of accounts the filters are sized for
+     * @param falsePositiveRate desired false positive rate at that size
+     */
+    public AvailabilityIndex(NutzerKontoDAO nutzerKontoDAO, NutzerDAO nutzerDAO,
+                             long capacity, double falsePositiveRate) {
+        this.nutzerKontoDAO = nutzerKontoDAO;
+        this.nutzerDAO = nutzerDAO;
+        this.benutzernamen = new CountingBloomFilter(capacity, falsePositiveRate);
+        this.emails = new CountingBloomFilter(capacity, falsePositiveRate);
+    }
+
+    /**
+     * Fill the filters with a streaming scan of all usernames and emails.
+     * Values created while the scan runs may be counted twice, which only
+     * costs a few extra false positives.
+     */
+    public void build() {
+        long start = System.nanoTime();
+        long benutzernamenCount = nutzerKontoDAO.forEachBenutzername(benutzernamen::add);
+        long emailCount = nutzerDAO.forEachEmail(emails::add);
+        ready = true;
+
+        logger.info("Availability index built in {} ms: {} usernames, {} emails, {} KB, expected false positive rate {}",
+                (System.nanoTime() - start) / 1_000_000, benutzernamenCount, emailCount,
+                (benutzernamen.getMemoryBytes() + emails.getMemoryBytes()) / 1024,
+                String.format("%.4f", Math.max(benutzernamen.getExpectedFalsePositiveRate(),
+                                               emails.getExpectedFalsePositiveRate())));
+    }
+
+    /**
+     * @param benutzername the username
+     * @return true if no account uses the username
+     */
+    public boolean isBenutzernameAvailable(String benutzername) {
+        return findTakenBenutzernamen(Collections.singleton(benutzername)).isEmpty();
+    }
+
+    /**
+     * @param email the email
+     * @return true if no user has the email
+     */
+    public boolean isEmailAvailable(String email) {
+        return findTakenEmails(Collections.singleton(email)).isEmpty();
+    }
+
+    /**
+     * Find which of the given usernames are taken. Only possible positives are
+     * sent to the database, all in one query.
+     *
+     * @param candidates the usernames to check
+     * @return the subset of usernames that already exist
+     */
+    public Set<String> findTakenBenutzernamen(Collection<String> candidates) {
+        List<String> possible = filter(benutzernamen, candidates);
+        Set<String> taken = nutzerKontoDAO.findExistingBenutzernamen(possible);
+        countDatabaseCheck(possible, taken);
+        return taken;
+    }
+
+    /**
+     * Find which of the given emails are taken. Only possible positives are
+     * sent to the database, all in one query.
+     *
+     * @param candidates the emails to check
+     * @return the subset of emails that already exist
+     */
+    public Set<String> findTakenEmails(Collection<String> candidates) {
+        List<String> possible = filter(emails, candidates);
+        Set<String> taken = nutzerDAO.findExistingEmails(possible);
+        countDatabaseCheck(possible, taken);
+        return taken;
+    }
+
+    /**
+     * Record a newly created account.
+     *
+     * @param benutzername the new username
+     * @param email the email of the new user, may be null
+     */
+    public void added(String benutzername, String email) {
+        benutzernamen.add(benutzername);
+        if (email != null) {
+            emails.add(email);
+        }
+    }
+
+    /**
+     * Record a deleted account. The Nutzer row and its email are kept when an
+     * account is deleted, so only the username becomes free again.
+     *
+     * @param benutzername the deleted username
+     */
+    public void removed(String benutzername) {
+        benutzernamen.remove(benutzername);
+    }
+
+    /**
+     * @return a snapshot of the index state for monitoring
+     */
+    public Stats getStats() {
+        return new Stats(ready, benutzernamen.size(), emails.size(),
+                benutzernamen.getMemoryBytes() + emails.getMemoryBytes(),
+                Math.max(benutzernamen.getExpectedFalsePositiveRate(), emails.getExpectedFalsePositiveRate()),
+                definiteNegatives.sum(), databaseChecks.sum(), falsePositives.sum());
+    }
+
+    private List<String> filter(CountingBloomFilter filter, Collection<String> candidates) {
+        if (!ready) {
+            return new ArrayList<>(candidates);
+        }
+
+        List<String> possible = new ArrayList<>();
+        for (String candidate : candidates) {
+            if (filter.mightContain(candidate)) {
+                possible.add(candidate);
+            } else {
+                definiteNegatives.increment();
+            }
+        }
+        return possible;
+    }
+
+    private void countDatabaseCheck(List<String> possible, Set<String> taken) {
+        databaseChecks.add(possible.size());
+        if (ready) {
+            falsePositives.add(possible.size() - taken.size());
+        }
+    }
+
+    /**
+     * Snapshot of the index state.
+     */
+    public static class Stats {
+        private final boolean ready;
+        private final long benutzernamen;
+        private final long emails;
+        private final long memoryBytes;
+        private final double expectedFalsePositiveRate;
+        private final long definiteNegatives;
+        private final long databaseChecks;
+        private final long falsePositives;
+
+        public Stats(boolean ready, long benutzernamen, long emails, long memoryBytes,
+                     double expectedFalsePositiveRate, long definiteNegatives,
+                     long databaseChecks, long falsePositives) {
+            this.ready = ready;
+            this.benutzernamen = benutzernamen;
+            this.emails = emails;
+            this.memoryBytes = memoryBytes;
+            this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+            this.definiteNegatives = definiteNegatives;
+            this.databaseChecks = databaseChecks;
+            this.falsePositives = falsePositives;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public long getBenutzernamen() {
+            return benutzernamen;
+        }
+
+        public long getEmails() {
+            return emails;
+        }
+
+        public long getMemoryBytes() {
+            return memoryBytes;
+        }
+
+        public double getExpectedFalsePositiveRate() {
+            return expectedFalsePositiveRate;
+        }
+
+        public long getDefiniteNegatives() {
+            return definiteNegatives;
+        }
+
+        public long getDatabaseChecks() {
+            return databaseChecks;
+        }
+
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "ready=" + ready +
+                    ", benutzernamen=" + benutzernamen +
+                    ", emails=" + emails +
+                    ", memoryBytes=" + memoryBytes +
+                    ", expectedFalsePositiveRate=" + String.format("%.4f", expectedFalsePositiveRate) +
+                    ", definiteNegatives=" + definiteNegatives +
+                    ", databaseChecks=" + databaseChecks +
+                    ", falsePositives=" + falsePositives +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.klasurapp.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.NutzerKontoDAO;
+import com.klasurapp.model.Nutzer;
+import com.klasurapp.model.NutzerKonto;
+
+/**
+ * Creates many user accounts at once from a roster file.
+ * <p>
+ * Roster format (one account per line, optional header):
+ * {@code benutzername;vorname;nachname;email;rolle;passwort}. Fields are separated
+ * by ';' or ','; the first line decides which for the whole file. A field may be
+ * quoted with '"' to contain the separator, a quote inside is written twice. Role
+ * and password may be left out. An empty role defaults to STUDENT; an empty
+ * password is replaced by a generated one that is returned in the report.
+ */
+public class BulkProvisioningService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkProvisioningService.class);
+    private static final String PASSWORD_CHARS = "ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz23456789";
+    private static final int GENERATED_PASSWORD_LENGTH = 12;
+
+    private final NutzerKontoDAO nutzerKontoDAO;
+    private final AvailabilityIndex availabilityIndex;
+    private final PasswordHasher passwordHasher;
+    private final int hashingThreads;
+    private final SecureRandom random = new SecureRandom();
+
+    public BulkProvisioningService(NutzerKontoDAO nutzerKontoDAO, AvailabilityIndex availabilityIndex,
+                                   PasswordHasher passwordHasher) {
+        this(nutzerKontoDAO, availabilityIndex, passwordHasher, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkProvisioningService(NutzerKontoDAO nutzerKontoDAO, AvailabilityIndex availabilityIndex,
+                                   PasswordHasher passwordHasher, int hashingThreads) {
+        this.nutzerKontoDAO = nutzerKontoDAO;
+        this.availabilityIndex = availabilityIndex;
+        this.passwordHasher = passwordHasher;
+        this.hashingThreads = hashingThreads;
+    }
+
+    /**
+     * Read a roster file and create all accounts in it.
+     *
+     * @param roster the roster file
+     * @return one result per roster line
+     * @throws IOException if the file cannot be read
+     */
+    public List<Result> provision(Path roster) throws IOException {
+        List<Result> results = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(roster, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            char separator = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (separator == 0) {
+                    separator = detectSeparator(line);
+                    if (line.toLowerCase(Locale.ROOT).startsWith("benutzername")) {
+                        continue;
+                    }
+                }
+
+                List<String> fields = splitFields(line, separator);
+                if (fields == null || fields.size() < 4 || fields.size() > 6
+                        || fields.get(0).isBlank() || fields.get(3).isBlank()) {
+                    results.add(new Result(lineNumber, fields != null ? fields.get(0).trim() : "", Status.INVALID,
+                            "Expected benutzername" + separator + "vorname" + separator + "nachname" + separator
+                            + "email[" + separator + "rolle[" + separator + "passwort]]"));
+                    continue;
+                }
+
+                entries.add(new Entry(lineNumber,
+                        fields.get(0).trim(), fields.get(1).trim(), fields.get(2).trim(), fields.get(3).trim(),
+                        fields.size() > 4 ? fields.get(4).trim() : "",
+                        fields.size() > 5 ? fields.get(5) : ""));
+            }
+        }
+
+        results.addAll(provision(entries));
+        results.sort((a, b) -> Integer.compare(a.getLineNumber(), b.getLineNumber()));
+        return results;
+    }
+
+    /**
+     * Create accounts for the given roster entries.
+     *
+     * @param entries the roster entries
+     * @return one result per entry
+     */
+    public List<Result> provision(List<Entry> entries) {
+        List<Result> results = new ArrayList<>();
+
+        // Detect existing usernames and emails; only possible hits of the index reach the database
+        Set<String> benutzernamen = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (Entry entry : entries) {
+            benutzernamen.add(entry.benutzername);
+            emails.add(entry.email);
+        }
+        Set<String> existingBenutzernamen = availabilityIndex.findTakenBenutzernamen(benutzernamen);
+        Set<String> existingEmails = availabilityIndex.findTakenEmails(emails);
+
+        // Duplicates within the roster itself count as taken as well
+        Set<String> seenBenutzernamen = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+        List<Entry> accepted = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (existingBenutzernamen.contains(entry.benutzername) || !seenBenutzernamen.add(entry.benutzername)) {
+                results.add(new Result(entry.lineNumber, entry.benutzername, Status.DUPLICATE_USERNAME,
+                        "Username already exists"));
+            } else if (existingEmails.contains(entry.email) || !seenEmails.add(entry.email)) {
+                results.add(new Result(entry.lineNumber, entry.benutzername, Status.DUPLICATE_EMAIL,
+                        "Email already exists: " + entry.email));
+            } else {
+                accepted.add(entry);
+            }
+        }
+
+        List<NutzerKonto> konten = hashAll(accepted, results);
+
+        Map<String, String> failures = nutzerKontoDAO.createBatch(konten);
+        for (int i = 0; i < konten.size(); i++) {
+            Entry entry = accepted.get(i);
+            String failure = failures.get(entry.benutzername);
+            if (failure != null) {
+                results.add(new Result(entry.lineNumber, entry.benutzername, Status.FAILED, failure));
+            } else {
+                availabilityIndex.added(entry.benutzername, entry.email);
+                Result result = new Result(entry.lineNumber, entry.benutzername, Status.CREATED, null);
+                if (entry.passwort.isEmpty()) {
+                    result.generatedPassword = entry.generatedPasswort;
+                }
+                results.add(result);
+            }
+        }
+
+        logger.info("Bulk provisioning finished: {} entries, {} created",
+                entries.size(), results.stream().filter(r -> r.getStatus() == Status.CREATED).count());
+        return results;
+    }
+
+    /**
+     * Write a provisioning report as CSV, separated by ';' and quoted like the roster.
+     *
+     * @param results the provisioning results
+     * @param report the report file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeReport(List<Result> results, Path report) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            writer.write("zeile;benutzername;status;meldung;initialpasswort");
+            writer.newLine();
+            for (Result result : results) {
+                writer.write(result.getLineNumber() + ";" + csvField(result.getBenutzername()) + ";" +
+                        result.getStatus() + ";" + csvField(result.getMessage()) + ";" +
+                        csvField(result.getGeneratedPassword()));
+                writer.newLine();
+            }
+        }
+    }
+
+    private List<NutzerKonto> hashAll(List<Entry> accepted, List<Result> results) {
+        ExecutorService pool = Executors.newFixedThreadPool(hashingThreads, r -> {
+            Thread thread = new Thread(r, "bulk-hashing");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<String>> hashes = new ArrayList<>();
+            for (Entry entry : accepted) {
+                if (entry.passwort.isEmpty()) {
+                    entry.generatedPasswort = generatePassword();
+                }
+                String passwort = entry.passwort.isEmpty() ? entry.generatedPasswort : entry.passwort;
+                hashes.add(pool.submit(() -> passwordHasher.hashOnCallerThread(passwort)));
+            }
+
+            List<NutzerKonto> konten = new ArrayList<>();
+            List<Entry> hashed = new ArrayList<>();
+            for (int i = 0; i < accepted.size(); i++) {
+                Entry entry = accepted.get(i);
+                try {
+                    String rolle = entry.rolle.isEmpty() ? "STUDENT" : entry.rolle.toUpperCase(Locale.ROOT);
+                    NutzerKonto konto = new NutzerKonto(entry.benutzername, hashes.get(i).get(),
+                            new Nutzer(entry.vorname, entry.nachname, entry.email, rolle));
+                    konten.add(konto);
+                    hashed.add(entry);
+                } catch (ExecutionException e) {
+                    results.add(new Result(entry.lineNumber, entry.benutzername, Status.FAILED,
+                            "Hashing failed: " + e.getCause().getMessage()));
+                }
+            }
+
+            accepted.retainAll(hashed);
+            return konten;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing passwords", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the value quoted if it contains a separator, a quote or a line break, with
+     *         quotes inside written twice; empty for null
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ';' || c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return ';' if the line has one outside quotes, ',' otherwise
+     */
+    private static char detectSeparator(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ';' && !quoted) {
+                return ';';
+            }
+        }
+        return ',';
+    }
+
+    /**
+     * Split a roster line into fields, unquoting quoted fields.
+     *
+     * @return the fields, or null if a quote is not closed
+     */
+    private static List<String> splitFields(String line, char separator) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.toString().isBlank()) {
+                // Blanks before an opening quote are not part of the field
+                field.setLength(0);
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private String generatePassword() {
+        StringBuilder passwort = new StringBuilder(GENERATED_PASSWORD_LENGTH);
+        for (int i = 0; i < GENERATED_PASSWORD_LENGTH; i++) {
+            passwort.append(PASSWORD_CHARS.charAt(random.nextInt(PASSWORD_CHARS.length())));
+        }
+        return passwort.toString();
+    }
+
+    /**
+     * Outcome of a single roster entry.
+     */
+    public enum Status {
+        CREATED, DUPLICATE_USERNAME, DUPLICATE_EMAIL, INVALID, FAILED
+    }
+
+    /**
+     * One line of a roster.
+     */
+    public static class Entry {
+        private final int lineNumber;
+        private final String benutzername;
+        private final String vorname;
+        private final String nachname;
+        private final String email;
+        private final String rolle;
+        private final String passwort;
+        private String generatedPasswort;
+
+        public Entry(int lineNumber, String benutzername, String vorname, String nachname,
+                     String email, String rolle, String passwort) {
+            this.lineNumber = lineNumber;
+            this.benutzername = benutzername;
+            this.vorname = vorname;
+            this.nachname = nachname;
+            this.email = email;
+            this.rolle = rolle;
+            this.passwort = passwort;
+        }
+    }
+
+    /**
+     * Result for one roster line.
+     */
+    public static class Result {
+        private final int lineNumber;
+        private final String benutzername;
+        private final Status status;
+        private final String message;
+        private String generatedPassword;
+
+        public Result(int lineNumber, String benutzername, Status status, String message) {
+            this.lineNumber = lineNumber;
+            this.benutzername = benutzername;
+            this.status = status;
+            this.message = message;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getBenutzername() {
+            return benutzername;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getGeneratedPassword() {
+            return generatedPassword;
+        }
+    }
+}
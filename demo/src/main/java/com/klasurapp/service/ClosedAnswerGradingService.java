@@ -0,0 +1,124 @@
+package com.klasurapp.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.AnswerDAO;
+import com.klasurapp.dao.TaskDAO;
+import com.klasurapp.grading.AnswerKey;
+import com.klasurapp.model.AnswerGroup;
+import com.klasurapp.model.ClosedTask;
+import com.klasurapp.model.GradingResult;
+import com.klasurapp.model.Task;
+
+/**
+ * Grades closed answers with partial credit, using each task's compiled
+ * {@link AnswerKey}.
+ * <p>
+ * Most students of an exam pick one of a handful of option combinations per task, so
+ * answers are grouped by task and selection in the database and each distinct selection
+ * is scored once. The score and feedback of a group are written to all its answers with
+ * one statement; no single answer is loaded.
+ */
+public class ClosedAnswerGradingService {
+    private static final Logger logger = LoggerFactory.getLogger(ClosedAnswerGradingService.class);
+    private static final double FULL_SCORE = 100.0;
+
+    private final AnswerDAO answerDAO;
+    private final TaskDAO taskDAO;
+
+    public ClosedAnswerGradingService(AnswerDAO answerDAO, TaskDAO taskDAO) {
+        this.answerDAO = answerDAO;
+        this.taskDAO = taskDAO;
+    }
+
+    /**
+     * Grade the ungraded closed answers to a task.
+     *
+     * @return the number of graded and correct answers
+     */
+    public List<GradingResult> gradeTask(Long taskId) {
+        return grade(answerDAO.findUngradedClosedAnswerGroupsForTask(taskId),
+                groups -> answerDAO.gradeClosedAnswerGroupsForTask(groups, taskId));
+    }
+
+    /**
+     * Grade the ungraded closed answers from attempts at an exam and its variants.
+     *
+     * @return the number of graded and correct answers per task
+     */
+    public List<GradingResult> gradeExam(Long examId) {
+        return grade(answerDAO.findUngradedClosedAnswerGroupsForExam(examId),
+                groups -> answerDAO.gradeClosedAnswerGroupsForExam(groups, examId));
+    }
+
+    /**
+     * Grade the ungraded closed answers to the tasks of a module.
+     *
+     * @return the number of graded and correct answers per task
+     */
+    public List<GradingResult> gradeModule(Long moduleId) {
+        return grade(answerDAO.findUngradedClosedAnswerGroupsForModule(moduleId),
+                groups -> answerDAO.gradeClosedAnswerGroupsForModule(groups, moduleId));
+    }
+
+    /**
+     * @param store writes the scored groups back with the same selection of answers
+     *              they were grouped from and returns the number of answers graded
+     */
+    private List<GradingResult> grade(List<AnswerGroup> groups, ToIntFunction<List<AnswerGroup>> store) {
+        if (groups.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> taskIds = groups.stream().map(AnswerGroup::getTaskId).collect(Collectors.toSet());
+        Map<Long, Task> tasks = taskDAO.findByIds(taskIds);
+
+        for (AnswerGroup group : groups) {
+            Task task = tasks.get(group.getTaskId());
+            if (!(task instanceof ClosedTask)) {
+                logger.warn("Task {} is missing or not closed; {} answers stay ungraded",
+                        group.getTaskId(), group.getCount());
+                continue;
+            }
+            double credit = ((ClosedTask) task).getAnswerKey().score(group.getSelectedOption());
+            group.setScore(credit * FULL_SCORE);
+            group.setFeedback(feedback(credit));
+        }
+
+        // Sets each group's count to the answers actually updated
+        int answers = store.applyAsInt(groups);
+
+        Map<Long, GradingResult> results = new LinkedHashMap<>();
+        for (AnswerGroup group : groups) {
+            if (group.getScore() == null) {
+                continue;
+            }
+            GradingResult result = results.computeIfAbsent(group.getTaskId(), id -> new GradingResult(id, 0, 0));
+            result.setGraded(result.getGraded() + group.getCount());
+            if (group.getScore() == FULL_SCORE) {
+                result.setCorrect(result.getCorrect() + group.getCount());
+            }
+        }
+        logger.info("Graded {} closed answers to {} tasks from {} distinct selections",
+                answers, results.size(), groups.size());
+        return new ArrayList<>(results.values());
+    }
+
+    private static String feedback(double credit) {
+        if (credit == 1.0) {
+            return "Correct.";
+        }
+        if (credit > 0) {
+            return String.format("Partly correct: %.0f%% of the full score.", credit * 100.0);
+        }
+        return "Incorrect.";
+    }
+}
@@ -0,0 +1,168 @@
+package com.klasurapp.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counting Bloom filter over strings with 4-bit counters, so entries can be removed again.
+ * <p>
+ * Counters are packed 16 per {@code long} and updated with compare-and-set, which makes
+ * concurrent adds and removes safe without locking. A counter that reaches its maximum
+ * stays there, so an overflow can only cause false positives, never false negatives.
+ */
+public class CountingBloomFilter {
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashFunctions;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param expectedInsertions number of entries the filter is sized for
+     * @param falsePositiveRate desired false positive rate at that size
+     */
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double ln2 = Math.log(2);
+        this.counters = Math.max(COUNTERS_PER_WORD, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashFunctions = Math.max(1, (int) Math.round((double) counters / n * ln2));
+        this.words = new AtomicLongArray((int) ((counters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD));
+    }
+
+    /**
+     * @param value the value to add
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            increment(index(h1, h2, i));
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Remove a value that was added before. Removing a value that was never
+     * added corrupts the filter, so callers must only remove known entries.
+     *
+     * @param value the value to remove
+     */
+    public void remove(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            decrement(index(h1, h2, i));
+        }
+        size.decrementAndGet();
+    }
+
+    /**
+     * @param value the value to check
+     * @return false if the value is definitely absent, true if it may be present
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            if (counter(index(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the approximate number of entries
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return the false positive rate expected at the current number of entries
+     */
+    public double getExpectedFalsePositiveRate() {
+        return expectedFalsePositiveRate(counters, hashFunctions, size());
+    }
+
+    /**
+     * @return the memory used by the counters in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public long getCounters() {
+        return counters;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * Expected false positive rate of a filter with m counters and k hash functions holding n entries.
+     */
+    public static double expectedFalsePositiveRate(long m, int k, long n) {
+        return Math.pow(1 - Math.exp(-(double) k * n / m), k);
+    }
+
+    private long index(int h1, int h2, int i) {
+        return Integer.toUnsignedLong(h1 + i * h2) % counters;
+    }
+
+    private long counter(long index) {
+        long word = words.get((int) (index / COUNTERS_PER_WORD));
+        return (word >>> shift(index)) & COUNTER_MAX;
+    }
+
+    private void increment(long index) {
+        int wordIndex = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while (true) {
+            long word = words.get(wordIndex);
+            long value = (word >>> shift) & COUNTER_MAX;
+            if (value == COUNTER_MAX || words.compareAndSet(wordIndex, word, word + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long index) {
+        int wordIndex = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while (true) {
+            long word = words.get(wordIndex);
+            long value = (word >>> shift) & COUNTER_MAX;
+            // Saturated counters are sticky since their true count is unknown
+            if (value == 0 || value == COUNTER_MAX || words.compareAndSet(wordIndex, word, word - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private static int shift(long index) {
+        return (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the UTF-16 chars followed by the murmur3 finalizer
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
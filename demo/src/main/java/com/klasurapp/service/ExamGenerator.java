@@ -0,0 +1,524 @@
+package com.klasurapp.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.ExamDAO;
+import com.klasurapp.dao.TaskDAO;
+import com.klasurapp.model.BloomLevel;
+import com.klasurapp.model.Module;
+import com.klasurapp.model.Task;
+import com.klasurapp.model.TaskFormat;
+
+/**
+ * Assembles exams from a module's task bank.
+ * <p>
+ * The requested duration is split into per-cell minute budgets, one cell per
+ * (Bloom level, format) combination, according to the Bloom distribution and the
+ * open/closed ratio. Each cell is then a subset-sum knapsack over the tasks'
+ * estimated minutes:
+ * <ul>
+ *   <li>Tasks with the same duration are interchangeable, so a cell only needs
+ *       {@code budget / minutes} tasks of each duration. This bounds the exact problem
+ *       to roughly {@code budget * ln(budget)} items, independent of the bank size.</li>
+ *   <li>If the reduced problem is small enough, it is solved exactly with a bitset DP.</li>
+ *   <li>Otherwise, or once the time budget is used up, a largest-first greedy fill
+ *       followed by swap-based local search is used.</li>
+ * </ul>
+ * Minutes a cell cannot fill (e.g. too few tasks of a level) are filled from the
+ * other cells afterwards. Candidates are shuffled with the request's seed, so equal
+ * inputs give equal exams and different seeds give different exams.
+ */
+public class ExamGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(ExamGenerator.class);
+    // Upper bound for items x minutes of one exact DP (8 MB of bitsets)
+    private static final long EXACT_DP_LIMIT = 64L * 1024 * 1024;
+    private static final int FORMATS = TaskFormat.values().length;
+
+    private final TaskDAO taskDAO;
+    private final ExamDAO examDAO;
+
+    public ExamGenerator(TaskDAO taskDAO, ExamDAO examDAO) {
+        this.taskDAO = taskDAO;
+        this.examDAO = examDAO;
+    }
+
+    /**
+     * Select tasks for an exam of the given module.
+     *
+     * @param module the module whose task bank is used
+     * @param request the constraints
+     * @return the selection; its tasks only carry summary data (no options or solutions)
+     */
+    public Result generate(Module module, Request request) {
+        List<Task> bank = taskDAO.findSummariesByModule(module.getId());
+        Set<Long> excluded = examDAO.findRecentlyUsedTaskIds(
+                module.getId(), request.getExcludeUsedSince(), request.getExcludeLastExams());
+        Result result = select(bank, excluded, request);
+        logger.info("Generated exam for module {} with {} tasks, {} of {} minutes in {} ms",
+                module.getCode(), result.getTasks().size(), result.getTotalMinutes(),
+                request.getDurationMinutes(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * Select tasks from an already loaded bank.
+     *
+     * @param bank the available tasks
+     * @param excluded IDs of tasks that must not be used
+     * @param request the constraints
+     * @return the selection
+     */
+    public Result select(List<Task> bank, Set<Long> excluded, Request request) {
+        long start = System.nanoTime();
+        long deadline = start + request.getTimeBudget().toNanos();
+        int duration = request.getDurationMinutes();
+
+        // Split the duration into minute budgets per cell
+        int[] targets = new int[BloomLevel.values().length * FORMATS];
+        boolean byLevel;
+        boolean byFormat;
+        if (!request.getTargetMinutes().isEmpty()) {
+            byLevel = true;
+            byFormat = true;
+            request.getTargetMinutes().forEach((cell, minutes) -> targets[cell] = minutes);
+        } else {
+            double[] levelShares = levelShares(request.getBloomDistribution());
+            double[] formatShares = formatShares(request.getOpenShare());
+            byLevel = levelShares.length > 1;
+            byFormat = request.getOpenShare() != null;
+            for (int level = 0; level < levelShares.length; level++) {
+                for (int format = 0; format < FORMATS; format++) {
+                    targets[level * FORMATS + format] =
+                            (int) Math.round(duration * levelShares[level] * formatShares[format]);
+                }
+            }
+        }
+
+        // Distribute the usable tasks into their cells
+        List<List<Task>> cells = new ArrayList<>();
+        for (int i = 0; i < targets.length; i++) {
+            cells.add(new ArrayList<>());
+        }
+        List<Task> shuffled = new ArrayList<>(bank);
+        Collections.shuffle(shuffled, new Random(request.getSeed()));
+        int candidates = 0;
+        for (Task task : shuffled) {
+            int minutes = task.getEstimatedTimeMinutes();
+            int cell = cellOf(task, byLevel, byFormat);
+            if (minutes <= 0 || minutes > duration || excluded.contains(task.getId()) || targets[cell] == 0) {
+                continue;
+            }
+            cells.get(cell).add(task);
+            candidates++;
+        }
+
+        // Solve each cell on its own
+        boolean exact = true;
+        boolean timedOut = false;
+        List<List<Task>> chosen = new ArrayList<>();
+        for (int cell = 0; cell < targets.length; cell++) {
+            List<Task> items = cells.get(cell);
+            List<Task> selection = null;
+            if (!items.isEmpty() && targets[cell] > 0) {
+                List<Task> reduced = reduce(items, targets[cell]);
+                if ((long) reduced.size() * (targets[cell] + 1) <= EXACT_DP_LIMIT && !timedOut) {
+                    selection = solveExact(reduced, targets[cell], deadline);
+                    timedOut = selection == null;
+                }
+                if (selection == null) {
+                    exact = false;
+                    selection = solveGreedy(reduced, targets[cell], deadline);
+                }
+            }
+            chosen.add(selection != null ? selection : new ArrayList<>());
+        }
+
+        fillRemaining(cells, chosen, targets, duration);
+
+        List<Task> tasks = new ArrayList<>();
+        chosen.forEach(tasks::addAll);
+        tasks.sort(Comparator.comparing(Task::getBloomLevel).thenComparing(Task::getFormat));
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Result result = new Result(tasks, candidates, excluded.size(), exact, timedOut || System.nanoTime() > deadline,
+                elapsedMillis);
+        logger.debug("Generated exam with {} tasks, {} of {} minutes from {} candidates in {} ms (exact: {})",
+                tasks.size(), result.getTotalMinutes(), duration, candidates, elapsedMillis, exact);
+        return result;
+    }
+
+    /**
+     * Keep at most budget / minutes tasks per duration; more can never be selected.
+     */
+    private static List<Task> reduce(List<Task> items, int target) {
+        Map<Integer, Integer> perMinutes = new HashMap<>();
+        List<Task> reduced = new ArrayList<>();
+        for (Task task : items) {
+            int minutes = task.getEstimatedTimeMinutes();
+            if (minutes > target) {
+                continue;
+            }
+            int count = perMinutes.merge(minutes, 1, Integer::sum);
+            if (count <= target / minutes) {
+                reduced.add(task);
+            }
+        }
+        return reduced;
+    }
+
+    /**
+     * Subset-sum DP over bitsets: reach[i] holds every sum reachable with the first i items.
+     *
+     * @return the selection closest to the target, or null if the deadline passed
+     */
+    private static List<Task> solveExact(List<Task> items, int target, long deadline) {
+        int words = (target >>> 6) + 1;
+        long lastWordMask = (target & 63) == 63 ? -1L : (1L << ((target & 63) + 1)) - 1;
+        long[][] reach = new long[items.size() + 1][];
+        reach[0] = new long[words];
+        reach[0][0] = 1L;
+
+        int used = 0;
+        while (used < items.size()) {
+            if ((used & 63) == 0 && System.nanoTime() > deadline) {
+                return null;
+            }
+            long[] previous = reach[used];
+            long[] next = previous.clone();
+            orShifted(previous, next, items.get(used).getEstimatedTimeMinutes());
+            next[words - 1] &= lastWordMask;
+            reach[++used] = next;
+
+            // The target itself is reachable, nothing can beat that
+            if ((next[target >>> 6] & (1L << (target & 63))) != 0) {
+                break;
+            }
+        }
+
+        int sum = highestBit(reach[used]);
+        List<Task> selection = new ArrayList<>();
+        for (int i = used; i > 0 && sum > 0; i--) {
+            long[] previous = reach[i - 1];
+            if ((previous[sum >>> 6] & (1L << (sum & 63))) == 0) {
+                Task task = items.get(i - 1);
+                selection.add(task);
+                sum -= task.getEstimatedTimeMinutes();
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Fill largest tasks first, then swap selected tasks for slightly longer ones
+     * until the budget is met or nothing improves.
+     */
+    private static List<Task> solveGreedy(List<Task> items, int target, long deadline) {
+        List<Task> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingInt(Task::getEstimatedTimeMinutes).reversed());
+
+        List<Task> selection = new ArrayList<>();
+        Map<Integer, List<Task>> unusedByMinutes = new HashMap<>();
+        int slack = target;
+        for (Task task : sorted) {
+            int minutes = task.getEstimatedTimeMinutes();
+            if (minutes <= slack) {
+                selection.add(task);
+                slack -= minutes;
+            } else if (minutes <= target) {
+                unusedByMinutes.computeIfAbsent(minutes, m -> new ArrayList<>()).add(task);
+            }
+        }
+
+        boolean improved = true;
+        while (slack > 0 && improved && System.nanoTime() < deadline) {
+            improved = false;
+            for (int i = 0; i < selection.size() && slack > 0; i++) {
+                Task current = selection.get(i);
+                for (int delta = slack; delta > 0; delta--) {
+                    List<Task> replacements = unusedByMinutes.get(current.getEstimatedTimeMinutes() + delta);
+                    if (replacements != null && !replacements.isEmpty()) {
+                        Task replacement = replacements.remove(replacements.size() - 1);
+                        unusedByMinutes.computeIfAbsent(current.getEstimatedTimeMinutes(), m -> new ArrayList<>())
+                                .add(current);
+                        selection.set(i, replacement);
+                        slack -= delta;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Use minutes left over by under-filled cells for tasks of other cells,
+     * starting with the cells that are furthest below their budget.
+     */
+    private static void fillRemaining(List<List<Task>> cells, List<List<Task>> chosen, int[] targets, int duration) {
+        int[] achieved = new int[targets.length];
+        int total = 0;
+        for (int cell = 0; cell < targets.length; cell++) {
+            for (Task task : chosen.get(cell)) {
+                achieved[cell] += task.getEstimatedTimeMinutes();
+            }
+            total += achieved[cell];
+        }
+
+        int slack = duration - total;
+        if (slack <= 0) {
+            return;
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int cell = 0; cell < targets.length; cell++) {
+            if (targets[cell] > 0) {
+                order.add(cell);
+            }
+        }
+        order.sort(Comparator.comparingInt(cell -> achieved[cell] - targets[cell]));
+
+        for (int cell : order) {
+            List<Task> selected = chosen.get(cell);
+            Set<Task> taken = new HashSet<>(selected);
+            for (Task task : cells.get(cell)) {
+                if (slack == 0) {
+                    return;
+                }
+                if (!taken.contains(task) && task.getEstimatedTimeMinutes() <= slack) {
+                    selected.add(task);
+                    slack -= task.getEstimatedTimeMinutes();
+                }
+            }
+        }
+    }
+
+    private static int cellOf(Task task, boolean byLevel, boolean byFormat) {
+        int level = byLevel ? task.getBloomLevel().ordinal() : 0;
+        int format = byFormat ? task.getFormat().ordinal() : 0;
+        return level * FORMATS + format;
+    }
+
+    private static double[] levelShares(Map<BloomLevel, Double> distribution) {
+        double sum = distribution.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (distribution.isEmpty() || sum <= 0) {
+            return new double[] {1.0};
+        }
+        double[] shares = new double[BloomLevel.values().length];
+        distribution.forEach((level, weight) -> shares[level.ordinal()] = Math.max(0, weight) / sum);
+        return shares;
+    }
+
+    private static double[] formatShares(Double openShare) {
+        double[] shares = new double[FORMATS];
+        if (openShare == null) {
+            // Any format: all tasks share the first slot
+            shares[0] = 1.0;
+            return shares;
+        }
+        double open = Math.max(0, Math.min(1, openShare));
+        shares[TaskFormat.OPEN.ordinal()] = open;
+        shares[TaskFormat.CLOSED.ordinal()] = 1 - open;
+        return shares;
+    }
+
+    private static void orShifted(long[] source, long[] target, int shift) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = target.length - 1; i >= wordShift; i--) {
+            int from = i - wordShift;
+            long value = source[from] << bitShift;
+            if (bitShift != 0 && from > 0) {
+                value |= source[from - 1] >>> (64 - bitShift);
+            }
+            target[i] |= value;
+        }
+    }
+
+    private static int highestBit(long[] bits) {
+        for (int i = bits.length - 1; i >= 0; i--) {
+            if (bits[i] != 0) {
+                return i * 64 + 63 - Long.numberOfLeadingZeros(bits[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Constraints for one generated exam.
+     */
+    public static class Request {
+        private final int durationMinutes;
+        private final Map<BloomLevel, Double> bloomDistribution = new EnumMap<>(BloomLevel.class);
+        private final Map<Integer, Integer> targetMinutes = new HashMap<>();
+        private Double openShare;
+        private LocalDate excludeUsedSince;
+        private int excludeLastExams;
+        private Duration timeBudget = Duration.ofSeconds(2);
+        private long seed = System.currentTimeMillis();
+
+        public Request(int durationMinutes) {
+            this.durationMinutes = durationMinutes;
+        }
+
+        public int getDurationMinutes() {
+            return durationMinutes;
+        }
+
+        public Map<BloomLevel, Double> getBloomDistribution() {
+            return bloomDistribution;
+        }
+
+        /**
+         * Set the relative weight of a Bloom level. Levels without a weight are not used
+         * as long as at least one weight is set.
+         */
+        public void setBloomWeight(BloomLevel level, double weight) {
+            bloomDistribution.put(level, weight);
+        }
+
+        /**
+         * @return explicit minute budgets by cell index (level ordinal * formats + format ordinal)
+         */
+        Map<Integer, Integer> getTargetMinutes() {
+            return targetMinutes;
+        }
+
+        /**
+         * Set an explicit minute budget for one Bloom level and format, e.g. to mirror an
+         * existing exam. Once any budget is set, the distribution and open share are ignored
+         * and combinations without a budget are not used.
+         */
+        public void setTargetMinutes(BloomLevel level, TaskFormat format, int minutes) {
+            targetMinutes.put(level.ordinal() * FORMATS + format.ordinal(), minutes);
+        }
+
+        public Double getOpenShare() {
+            return openShare;
+        }
+
+        /**
+         * @param openShare share of the duration for open tasks (0..1), or null for any mix
+         */
+        public void setOpenShare(Double openShare) {
+            this.openShare = openShare;
+        }
+
+        public LocalDate getExcludeUsedSince() {
+            return excludeUsedSince;
+        }
+
+        public void setExcludeUsedSince(LocalDate excludeUsedSince) {
+            this.excludeUsedSince = excludeUsedSince;
+        }
+
+        public int getExcludeLastExams() {
+            return excludeLastExams;
+        }
+
+        public void setExcludeLastExams(int excludeLastExams) {
+            this.excludeLastExams = excludeLastExams;
+        }
+
+        public Duration getTimeBudget() {
+            return timeBudget;
+        }
+
+        public void setTimeBudget(Duration timeBudget) {
+            this.timeBudget = timeBudget;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Outcome of a generation run.
+     */
+    public static class Result {
+        private final List<Task> tasks;
+        private final int candidates;
+        private final int excluded;
+        private final boolean exact;
+        private final boolean timedOut;
+        private final long elapsedMillis;
+
+        public Result(List<Task> tasks, int candidates, int excluded, boolean exact, boolean timedOut,
+                      long elapsedMillis) {
+            this.tasks = tasks;
+            this.candidates = candidates;
+            this.excluded = excluded;
+            this.exact = exact;
+            this.timedOut = timedOut;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public List<Task> getTasks() {
+            return tasks;
+        }
+
+        public int getTotalMinutes() {
+            return tasks.stream().mapToInt(Task::getEstimatedTimeMinutes).sum();
+        }
+
+        /**
+         * @return selected minutes per Bloom level
+         */
+        public Map<BloomLevel, Integer> getMinutesPerLevel() {
+            Map<BloomLevel, Integer> minutes = new EnumMap<>(BloomLevel.class);
+            for (Task task : tasks) {
+                minutes.merge(task.getBloomLevel(), task.getEstimatedTimeMinutes(), Integer::sum);
+            }
+            return minutes;
+        }
+
+        public int getOpenMinutes() {
+            return tasks.stream()
+                    .filter(task -> task.getFormat() == TaskFormat.OPEN)
+                    .mapToInt(Task::getEstimatedTimeMinutes)
+                    .sum();
+        }
+
+        public int getCandidates() {
+            return candidates;
+        }
+
+        public int getExcluded() {
+            return excluded;
+        }
+
+        /**
+         * @return true if every cell was solved to optimality
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
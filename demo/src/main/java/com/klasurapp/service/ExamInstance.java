@@ -0,0 +1,213 @@
+package com.klasurapp.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.klasurapp.model.ClosedTask;
+import com.klasurapp.model.ClosedTaskType;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.Task;
+
+/**
+ * One student's instance of an exam: the order of the tasks and, for choice tasks,
+ * the order of the options.
+ * <p>
+ * Both orders are derived from (exam ID, student ID, instance seed) with a seeded
+ * Fisher-Yates shuffle, so only the seed on the exam is stored. Every permutation is
+ * recomputed in O(n) when it is needed for display or for mapping an answer.
+ * <p>
+ * Answers to choice tasks use 1-based option numbers separated by commas, as shown to
+ * the student. {@link #toOriginalAnswer} maps them back to the stored option order, so
+ * answers are persisted and graded against the unchanged answer key.
+ */
+public class ExamInstance {
+    private static final long TASK_ORDER_SALT = 0x5441534bL;
+
+    private final Exam exam;
+    private final long studentId;
+    private final boolean shuffled;
+    private final long instanceKey;
+
+    private ExamInstance(Exam exam, long studentId) {
+        this.exam = exam;
+        this.studentId = studentId;
+        this.shuffled = exam.getInstanceSeed() != null && exam.getId() != null;
+        this.instanceKey = shuffled
+                ? mix(mix(exam.getInstanceSeed() ^ mix(exam.getId())) ^ studentId)
+                : 0L;
+    }
+
+    /**
+     * @param exam the exam with its tasks
+     * @param studentId the account ID of the student
+     * @return the student's instance; unshuffled if the exam has no instance seed
+     */
+    public static ExamInstance of(Exam exam, long studentId) {
+        return new ExamInstance(exam, studentId);
+    }
+
+    public Exam getExam() {
+        return exam;
+    }
+
+    public long getStudentId() {
+        return studentId;
+    }
+
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    /**
+     * @return for each displayed position the index of the task in {@link Exam#getTasks()}
+     */
+    public int[] getTaskOrder() {
+        return permutation(exam.getTasks().size(), TASK_ORDER_SALT);
+    }
+
+    /**
+     * @return the exam's tasks in this student's order
+     */
+    public List<Task> getTasks() {
+        List<Task> tasks = exam.getTasks();
+        List<Task> ordered = new ArrayList<>(tasks.size());
+        for (int index : getTaskOrder()) {
+            ordered.add(tasks.get(index));
+        }
+        return ordered;
+    }
+
+    /**
+     * @param task a task of the exam
+     * @return for each displayed position the index of the option in {@link ClosedTask#getOptions()}
+     */
+    public int[] getOptionOrder(ClosedTask task) {
+        int size = task.getOptions().size();
+        if (!isShuffledType(task.getClosedTaskType()) || task.getId() == null) {
+            return permutation(size, 0L, false);
+        }
+        return permutation(size, task.getId());
+    }
+
+    /**
+     * @param task a task of the exam
+     * @return the task's options in this student's order
+     */
+    public List<String> getOptions(ClosedTask task) {
+        List<String> options = task.getOptions();
+        List<String> ordered = new ArrayList<>(options.size());
+        for (int index : getOptionOrder(task)) {
+            ordered.add(options.get(index));
+        }
+        return ordered;
+    }
+
+    /**
+     * Map an answer given with displayed option numbers to the stored option order.
+     * Answers to tasks whose options are not shuffled are returned unchanged.
+     *
+     * @param task the answered task
+     * @param displayedAnswer the answer as entered by the student, e.g. "2" or "1,3"
+     * @return the answer in stored option numbers
+     */
+    public String toOriginalAnswer(ClosedTask task, String displayedAnswer) {
+        if (!shuffled || !isShuffledType(task.getClosedTaskType()) || displayedAnswer == null) {
+            return displayedAnswer;
+        }
+        return remap(task, displayedAnswer, getOptionOrder(task));
+    }
+
+    /**
+     * Map an answer in stored option numbers to this student's displayed numbers,
+     * e.g. to print a personal answer key.
+     *
+     * @param task the task
+     * @param originalAnswer the answer or key in stored option numbers
+     * @return the answer in displayed option numbers
+     */
+    public String toDisplayedAnswer(ClosedTask task, String originalAnswer) {
+        if (!shuffled || !isShuffledType(task.getClosedTaskType()) || originalAnswer == null) {
+            return originalAnswer;
+        }
+        int[] order = getOptionOrder(task);
+        int[] inverse = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            inverse[order[position]] = position;
+        }
+        return remap(task, originalAnswer, inverse);
+    }
+
+    /**
+     * Replace every 1-based option number n by mapping[n - 1] + 1. Multiple choice
+     * answers are a set and are normalized to ascending order; rankings keep their order.
+     */
+    private static String remap(ClosedTask task, String answer, int[] mapping) {
+        String[] parts = answer.split(",");
+        String[] mapped = new String[parts.length];
+        int[] numbers = new int[parts.length];
+        boolean numeric = true;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            try {
+                int number = Integer.parseInt(part);
+                if (number >= 1 && number <= mapping.length) {
+                    numbers[i] = mapping[number - 1] + 1;
+                    mapped[i] = String.valueOf(numbers[i]);
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                // Not an option number, keep as entered
+            }
+            numeric = false;
+            mapped[i] = part;
+        }
+
+        if (numeric && task.getClosedTaskType() == ClosedTaskType.MULTIPLE_CHOICE) {
+            Arrays.sort(numbers);
+            for (int i = 0; i < numbers.length; i++) {
+                mapped[i] = String.valueOf(numbers[i]);
+            }
+        }
+        return String.join(",", mapped);
+    }
+
+    private int[] permutation(int size, long salt) {
+        return permutation(size, salt, shuffled);
+    }
+
+    private int[] permutation(int size, long salt, boolean shuffle) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (!shuffle) {
+            return order;
+        }
+
+        SplittableRandom random = new SplittableRandom(mix(instanceKey ^ mix(salt)));
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    private static boolean isShuffledType(ClosedTaskType type) {
+        return type == ClosedTaskType.SINGLE_CHOICE
+                || type == ClosedTaskType.MULTIPLE_CHOICE
+                || type == ClosedTaskType.RANKING;
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads IDs and seeds over all 64 bits.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,479 @@
+package com.klasurapp.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.AnswerDAO;
+import com.klasurapp.dao.ExamAttemptDAO;
+import com.klasurapp.model.Answer;
+import com.klasurapp.model.AnswerDraft;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.ExamAttempt;
+
+/**
+ * Runs timed exam attempts.
+ * <p>
+ * Each running attempt is a small state machine held in memory: RUNNING while the
+ * student answers, SUBMITTING once it was handed in or its time ran out, SUBMITTED
+ * when its answers are stored. Answers are kept in the session, the last answer per
+ * task wins, and are written when the attempt ends.
+ * <p>
+ * Deadlines are kept in one {@link HashedTimingWheel} instead of one scheduled task
+ * per student, so scheduling and cancelling are O(1) and one thread serves all
+ * attempts. A deadline moves the attempt to SUBMITTING on the wheel thread and queues
+ * it; a flusher thread, on its own database connection, writes queued attempts in
+ * batches, all their answers with one {@link AnswerDAO#createBatch} and the
+ * submission times with one {@link ExamAttemptDAO#submitAll}. When an exam ends for
+ * a whole room at once, its attempts are written in a few batches instead of one
+ * transaction per student. Attempts handed in by the student go through the same
+ * queue. A write that fails while the database is unavailable is retried; the answers
+ * stay in memory until it succeeds. Any other failure splits the batch, and an
+ * attempt that fails on its own is given up: {@link Session#whenStored} completes
+ * exceptionally and the attempt stays open in the database with its drafts, so the
+ * other attempts of the batch are still stored.
+ * <p>
+ * With an {@link AnswerDraftStore} every answer is also saved as a draft, so a running
+ * attempt can be {@linkplain #resume resumed} after a restart. The drafts of an attempt
+ * are discarded once its answers are stored.
+ * <p>
+ * With a {@link SubmissionJournal} a flush journals the batch instead of writing it to
+ * the database; an attempt counts as stored once its submission is on local disk, and
+ * the journal writes it to the database, also while the database is briefly down.
+ */
+public class ExamSessionEngine implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ExamSessionEngine.class);
+    private static final long DEFAULT_TICK_MILLIS = 100;
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+    private static final int DEFAULT_MAX_BATCH = 500;
+    private static final long DEFAULT_FLUSH_DELAY_MILLIS = 50;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * The states of an attempt.
+     */
+    public enum State {
+        RUNNING, SUBMITTING, SUBMITTED
+    }
+
+    private final AnswerDAO answerDAO;
+    private final ExamAttemptDAO examAttemptDAO;
+    private final AnswerDraftStore draftStore;
+    private final SubmissionJournal journal;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final HashedTimingWheel<Session> wheel;
+    private final BlockingQueue<Session> submitting = new LinkedBlockingQueue<>();
+    private final int maxBatch;
+    private final long flushDelayMillis;
+    private final Thread flusher;
+    private final AtomicLong autoSubmitted = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private volatile boolean running = true;
+
+    public ExamSessionEngine(AnswerDAO answerDAO, ExamAttemptDAO examAttemptDAO) {
+        this(answerDAO, examAttemptDAO, null, null);
+    }
+
+    /**
+     * @param draftStore saves the answers of running attempts as drafts; may be null
+     * @param journal takes submitted attempts instead of the database; may be null
+     */
+    public ExamSessionEngine(AnswerDAO answerDAO, ExamAttemptDAO examAttemptDAO, AnswerDraftStore draftStore,
+                             SubmissionJournal journal) {
+        this(answerDAO, examAttemptDAO, draftStore, journal, DEFAULT_TICK_MILLIS, DEFAULT_MAX_BATCH,
+                DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param draftStore saves the answers of running attempts as drafts; may be null
+     * @param journal takes submitted attempts instead of the database; may be null
+     * @param tickMillis resolution of the deadlines; attempts end at most this much late
+     * @param maxBatch most attempts written in one flush
+     * @param flushDelayMillis how long the flusher waits for more attempts before writing
+     */
+    public ExamSessionEngine(AnswerDAO answerDAO, ExamAttemptDAO examAttemptDAO, AnswerDraftStore draftStore,
+                             SubmissionJournal journal, long tickMillis, int maxBatch, long flushDelayMillis) {
+        this.answerDAO = answerDAO;
+        this.examAttemptDAO = examAttemptDAO;
+        this.draftStore = draftStore;
+        this.journal = journal;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.flushDelayMillis = flushDelayMillis;
+        this.wheel = new HashedTimingWheel<>(tickMillis, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE,
+                this::deadlineReached, "exam-deadlines");
+        this.flusher = new Thread(this::runFlusher, "exam-submit-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Start an attempt; the time limit is the exam's duration.
+     *
+     * @param exam the exam as delivered to the student
+     * @param userId the student's account ID
+     * @return the running session
+     */
+    public Session start(Exam exam, long userId) {
+        ExamAttempt attempt = examAttemptDAO.start(new ExamAttempt(exam.getId(), userId, exam.getInstanceSeed()));
+        Duration limit = exam.getDurationMinutes() > 0 ? Duration.ofMinutes(exam.getDurationMinutes()) : null;
+        return start(attempt, limit);
+    }
+
+    /**
+     * Run an attempt that is already stored.
+     *
+     * @param attempt the stored attempt
+     * @param timeLimit time from now until the attempt is submitted automatically,
+     *                  or null for no limit
+     * @return the running session
+     */
+    public Session start(ExamAttempt attempt, Duration timeLimit) {
+        return start(new Session(attempt, timeLimit));
+    }
+
+    private Session start(Session session) {
+        if (!running) {
+            throw new IllegalStateException("Session engine is stopped");
+        }
+        sessions.put(session.attempt.getId(), session);
+        if (session.deadline != null) {
+            session.timeout = wheel.schedule(session, Math.max(0, session.deadlineNanos - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        }
+        return session;
+    }
+
+    /**
+     * Continue an attempt that was running when the application stopped, with the
+     * answers saved as drafts.
+     *
+     * @param attempt the stored, unsubmitted attempt
+     * @param remaining time left, or null for no limit; negative if the time ran out
+     *                  while the application was down, the attempt is then submitted at
+     *                  once with its deadline as submission time
+     * @return the running session
+     */
+    public Session resume(ExamAttempt attempt, Duration remaining) {
+        if (attempt.isSubmitted()) {
+            throw new IllegalStateException("Attempt " + attempt.getId() + " is already submitted");
+        }
+        Session session = new Session(attempt, remaining);
+        if (draftStore != null) {
+            for (AnswerDraft draft : draftStore.load(attempt.getId())) {
+                session.answers.put(draft.getTaskId(), draft.toAnswer());
+            }
+        }
+        return start(session);
+    }
+
+    /**
+     * @return the running or submitting session of an attempt, empty once it is stored
+     */
+    public Optional<Session> find(long attemptId) {
+        return Optional.ofNullable(sessions.get(attemptId));
+    }
+
+    /**
+     * @return the running session of a student for an exam, e.g. one resumed after a
+     *         restart; empty if there is none
+     */
+    public Optional<Session> findRunning(long examId, long userId) {
+        for (Session session : sessions.values()) {
+            ExamAttempt attempt = session.attempt;
+            if (session.state == State.RUNNING && attempt.getExamId() == examId && attempt.getUserId() == userId) {
+                return Optional.of(session);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Record an answer; replaces an earlier answer to the same task.
+     *
+     * @return false if the attempt is unknown or no longer running, e.g. because its
+     *         time ran out
+     */
+    public boolean answer(long attemptId, Answer answer) {
+        Session session = sessions.get(attemptId);
+        return session != null && session.answer(answer, draftStore);
+    }
+
+    /**
+     * Hand in an attempt.
+     *
+     * @return completes when the answers are stored; completes at once if the attempt
+     *         is unknown, e.g. already stored
+     */
+    public CompletableFuture<Void> submit(long attemptId) {
+        Session session = sessions.get(attemptId);
+        if (session == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (session.timeout != null) {
+            session.timeout.cancel();
+        }
+        if (session.beginSubmit(LocalDateTime.now())) {
+            submitting.add(session);
+        }
+        return session.stored;
+    }
+
+    /**
+     * @return the number of attempts in memory, running or waiting to be stored
+     */
+    public int getActiveCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of attempts submitted because their time ran out
+     */
+    public long getAutoSubmittedCount() {
+        return autoSubmitted.get();
+    }
+
+    /**
+     * @return the number of batch writes so far
+     */
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    /**
+     * Stop the deadlines and store the attempts that were already submitted. Attempts
+     * still running stay open in the database.
+     */
+    @Override
+    public void close() {
+        running = false;
+        wheel.close();
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called on the wheel thread; the attempt ends at its deadline, not at the tick.
+     */
+    private void deadlineReached(Session session) {
+        if (session.beginSubmit(session.deadline)) {
+            autoSubmitted.incrementAndGet();
+            submitting.add(session);
+        }
+    }
+
+    private void runFlusher() {
+        List<Session> batch = new ArrayList<>(maxBatch);
+        while (running || !submitting.isEmpty()) {
+            try {
+                Session first = submitting.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Let attempts that end in the same moment join the batch
+                if (flushDelayMillis > 0 && running && submitting.size() < maxBatch - 1) {
+                    Thread.sleep(flushDelayMillis);
+                }
+            } catch (InterruptedException e) {
+                if (running) {
+                    continue;
+                }
+            }
+            submitting.drainTo(batch, maxBatch - batch.size());
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Session> batch) {
+        try {
+            if (journal != null) {
+                journal(batch);
+            } else {
+                store(batch);
+            }
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            // The journal only fails on local disk errors; nothing in the batch is rejected
+            if (journal != null || SqlFailures.isTransient(e)) {
+                logger.error("Storing {} submitted attempts failed, retrying", batch.size(), e);
+                retryLater(batch);
+            } else if (batch.size() > 1) {
+                logger.warn("Storing {} submitted attempts failed, storing them one by one", batch.size(), e);
+                for (Session session : batch) {
+                    flush(List.of(session));
+                }
+            } else {
+                fail(batch.get(0), e);
+            }
+            return;
+        }
+
+        for (Session session : batch) {
+            session.state = State.SUBMITTED;
+            sessions.remove(session.attempt.getId());
+            session.stored.complete(null);
+        }
+        if (draftStore != null) {
+            List<Long> attemptIds = new ArrayList<>(batch.size());
+            for (Session session : batch) {
+                attemptIds.add(session.attempt.getId());
+            }
+            draftStore.discard(attemptIds);
+        }
+        logger.debug("Stored {} submitted attempts", batch.size());
+    }
+
+    /**
+     * Give up an attempt the database rejects. It stays open in the database and keeps
+     * its drafts.
+     */
+    private void fail(Session session, RuntimeException cause) {
+        logger.error("Attempt {} was rejected by the database and stays unsubmitted", session.attempt.getId(), cause);
+        sessions.remove(session.attempt.getId());
+        session.stored.completeExceptionally(cause);
+    }
+
+    private void store(List<Session> batch) {
+        List<Answer> answers = new ArrayList<>();
+        for (Session session : batch) {
+            if (!session.answersStored) {
+                answers.addAll(session.answers.values());
+            }
+        }
+        answerDAO.createBatch(answers);
+        for (Session session : batch) {
+            session.answersStored = true;
+        }
+
+        List<ExamAttempt> attempts = new ArrayList<>(batch.size());
+        for (Session session : batch) {
+            attempts.add(session.attempt);
+        }
+        examAttemptDAO.submitAll(attempts);
+    }
+
+    /**
+     * Journal every attempt of the batch; the journal writes them to disk together.
+     * A retry journals them again with the same submission keys.
+     */
+    private void journal(List<Session> batch) {
+        List<CompletableFuture<Void>> journaled = new ArrayList<>(batch.size());
+        for (Session session : batch) {
+            journaled.add(journal.submit(session.attempt, session.answers.values()));
+        }
+        CompletableFuture.allOf(journaled.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private void retryLater(List<Session> batch) {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        submitting.addAll(batch);
+    }
+
+    /**
+     * One attempt in memory.
+     */
+    public static final class Session {
+        private final ExamAttempt attempt;
+        private final LocalDateTime deadline;
+        private final long deadlineNanos;
+        // Last answer per task, in the order of first answer
+        private final Map<Long, Answer> answers = new LinkedHashMap<>();
+        private final CompletableFuture<Void> stored = new CompletableFuture<>();
+        private volatile State state = State.RUNNING;
+        private volatile HashedTimingWheel.Timeout<Session> timeout;
+        // Only touched by the flusher thread
+        private boolean answersStored;
+
+        private Session(ExamAttempt attempt, Duration timeLimit) {
+            this.attempt = attempt;
+            this.deadline = timeLimit != null ? LocalDateTime.now().plus(timeLimit) : null;
+            this.deadlineNanos = timeLimit != null ? System.nanoTime() + timeLimit.toNanos() : 0;
+        }
+
+        public ExamAttempt getAttempt() {
+            return attempt;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return completes when the attempt and its answers are stored, whether it
+         *         was handed in or ended by its deadline
+         */
+        public CompletableFuture<Void> whenStored() {
+            return stored;
+        }
+
+        /**
+         * @return the time left, zero once it ran out; empty if the attempt has no limit
+         */
+        public Optional<Duration> getRemaining() {
+            if (deadline == null) {
+                return Optional.empty();
+            }
+            return Optional.of(Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime())));
+        }
+
+        /**
+         * @return the last answer to a task, empty if the task was not answered
+         */
+        public synchronized Optional<Answer> getAnswer(long taskId) {
+            return Optional.ofNullable(answers.get(taskId));
+        }
+
+        /**
+         * The draft is saved under the lock while the attempt is running, so no save can
+         * follow the discard of the attempt's drafts after it is stored.
+         */
+        private synchronized boolean answer(Answer answer, AnswerDraftStore draftStore) {
+            if (state != State.RUNNING || (deadline != null && System.nanoTime() - deadlineNanos >= 0)) {
+                return false;
+            }
+            answer.setAttemptId(attempt.getId());
+            answer.setUserId(attempt.getUserId());
+            answers.put(answer.getTaskId(), answer);
+            if (draftStore != null) {
+                draftStore.save(answer);
+            }
+            return true;
+        }
+
+        /**
+         * @return true if this call ended the attempt, false if it had already ended
+         */
+        private synchronized boolean beginSubmit(LocalDateTime submittedAt) {
+            if (state != State.RUNNING) {
+                return false;
+            }
+            state = State.SUBMITTING;
+            attempt.setSubmittedAt(submittedAt);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.klasurapp.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.klasurapp.model.BloomLevel;
+import com.klasurapp.model.ClosedTask;
+import com.klasurapp.model.ClosedTaskType;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.Module;
+import com.klasurapp.model.OpenTask;
+import com.klasurapp.model.Task;
+import com.klasurapp.model.TaskFormat;
+
+/**
+ * Binary encoding of a complete exam for {@link com.klasurapp.model.ExamSnapshot}.
+ * <p>
+ * The document holds the exam fields, a table of the modules it refers to (usually
+ * one) and every task with its options and solution. Enums are stored by name, so
+ * reordering an enum does not change old snapshots. Strings are length-prefixed UTF-8
+ * without the 64 KB limit of {@link DataOutputStream#writeUTF}.
+ */
+final class ExamSnapshotCodec {
+    static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4B585331; // "KXS1"
+    private static final byte OPEN_TASK = 0;
+    private static final byte CLOSED_TASK = 1;
+
+    private ExamSnapshotCodec() {
+    }
+
+    static byte[] encode(Exam exam) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            writeLong(out, exam.getId());
+            writeString(out, exam.getTitle());
+            writeString(out, exam.getDescription());
+            out.writeLong(exam.getExamDate() != null ? exam.getExamDate().toEpochDay() : Long.MIN_VALUE);
+            out.writeInt(exam.getDurationMinutes());
+            writeLong(out, exam.getParentExamId());
+            writeString(out, exam.getVariantLabel());
+            writeLong(out, exam.getInstanceSeed());
+
+            List<Module> modules = new ArrayList<>();
+            out.writeInt(moduleIndex(modules, exam.getModule()));
+            int[] taskModules = new int[exam.getTasks().size()];
+            for (int i = 0; i < taskModules.length; i++) {
+                taskModules[i] = moduleIndex(modules, exam.getTasks().get(i).getModule());
+            }
+            out.writeInt(modules.size());
+            for (Module module : modules) {
+                writeLong(out, module.getId());
+                writeString(out, module.getName());
+                writeString(out, module.getCode());
+                writeString(out, module.getDescription());
+            }
+
+            out.writeInt(taskModules.length);
+            for (int i = 0; i < taskModules.length; i++) {
+                writeTask(out, exam.getTasks().get(i), taskModules[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Exam decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an exam snapshot");
+            }
+            Exam exam = new Exam();
+            exam.setId(readLong(in));
+            exam.setTitle(readString(in));
+            exam.setDescription(readString(in));
+            long epochDay = in.readLong();
+            exam.setExamDate(epochDay != Long.MIN_VALUE ? LocalDate.ofEpochDay(epochDay) : null);
+            exam.setDurationMinutes(in.readInt());
+            exam.setParentExamId(readLong(in));
+            exam.setVariantLabel(readString(in));
+            exam.setInstanceSeed(readLong(in));
+
+            int examModule = in.readInt();
+            Module[] modules = new Module[in.readInt()];
+            for (int i = 0; i < modules.length; i++) {
+                modules[i] = new Module(readLong(in), readString(in), readString(in), readString(in));
+            }
+            exam.setModule(examModule >= 0 ? modules[examModule] : null);
+
+            int taskCount = in.readInt();
+            List<Task> tasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                tasks.add(readTask(in, modules));
+            }
+            exam.setTasks(tasks);
+            return exam;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt exam snapshot", e);
+        }
+    }
+
+    private static void writeTask(DataOutputStream out, Task task, int module) throws IOException {
+        out.writeByte(task instanceof ClosedTask ? CLOSED_TASK : OPEN_TASK);
+        writeLong(out, task.getId());
+        writeString(out, task.getName());
+        writeString(out, task.getText());
+        out.writeInt(task.getEstimatedTimeMinutes());
+        writeString(out, task.getBloomLevel() != null ? task.getBloomLevel().name() : null);
+        writeString(out, task.getFormat() != null ? task.getFormat().name() : null);
+        out.writeInt(module);
+
+        if (task instanceof ClosedTask) {
+            ClosedTask closedTask = (ClosedTask) task;
+            writeString(out, closedTask.getClosedTaskType() != null ? closedTask.getClosedTaskType().name() : null);
+            writeString(out, closedTask.getCorrectAnswer());
+            out.writeInt(closedTask.getOptions().size());
+            for (String option : closedTask.getOptions()) {
+                writeString(out, option);
+            }
+        } else {
+            writeString(out, task.getSolution());
+        }
+    }
+
+    private static Task readTask(DataInputStream in, Module[] modules) throws IOException {
+        byte kind = in.readByte();
+        Task task;
+        if (kind == CLOSED_TASK) {
+            task = new ClosedTask();
+        } else if (kind == OPEN_TASK) {
+            task = new OpenTask();
+        } else {
+            throw new IOException("Unknown task kind " + kind);
+        }
+        task.setId(readLong(in));
+        task.setName(readString(in));
+        task.setText(readString(in));
+        task.setEstimatedTimeMinutes(in.readInt());
+        String bloomLevel = readString(in);
+        task.setBloomLevel(bloomLevel != null ? BloomLevel.valueOf(bloomLevel) : null);
+        String format = readString(in);
+        task.setFormat(format != null ? TaskFormat.valueOf(format) : null);
+        int module = in.readInt();
+        task.setModule(module >= 0 ? modules[module] : null);
+
+        if (task instanceof ClosedTask) {
+            ClosedTask closedTask = (ClosedTask) task;
+            String type = readString(in);
+            closedTask.setClosedTaskType(type != null ? ClosedTaskType.valueOf(type) : null);
+            closedTask.setCorrectAnswer(readString(in));
+            int optionCount = in.readInt();
+            List<String> options = new ArrayList<>(optionCount);
+            for (int i = 0; i < optionCount; i++) {
+                options.add(readString(in));
+            }
+            closedTask.setOptions(options);
+        } else {
+            ((OpenTask) task).setSampleSolution(readString(in));
+        }
+        return task;
+    }
+
+    /**
+     * @return the index of the module in the table, added if new; -1 for null
+     */
+    private static int moduleIndex(List<Module> modules, Module module) {
+        if (module == null) {
+            return -1;
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            Module known = modules.get(i);
+            if (known == module || (known.getId() != null && known.getId().equals(module.getId()))) {
+                return i;
+            }
+        }
+        modules.add(module);
+        return modules.size() - 1;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
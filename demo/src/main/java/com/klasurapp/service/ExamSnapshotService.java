@@ -0,0 +1,136 @@
+package com.klasurapp.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.ExamDAO;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.ExamSnapshot;
+
+/**
+ * Publishes exams and serves published exams from their snapshots.
+ * <p>
+ * Publishing freezes an exam and its variants: each is loaded once, encoded into one
+ * binary document and stored with its SHA-256 hash. From then on the exam cannot be
+ * updated or deleted, and later edits to its tasks in the bank do not reach it.
+ * Delivery, printing and answer keys read the snapshot row instead of joining exams,
+ * tasks, options and modules.
+ * <p>
+ * Snapshots never change, so decoded exams are cached for the lifetime of the service.
+ * Cached exams are shared; callers must not modify them.
+ */
+public class ExamSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(ExamSnapshotService.class);
+
+    private final ExamDAO examDAO;
+    private final Map<Long, Exam> published = new ConcurrentHashMap<>();
+
+    public ExamSnapshotService(ExamDAO examDAO) {
+        this.examDAO = examDAO;
+    }
+
+    /**
+     * Publish an exam together with its variants. Exams that are already published
+     * keep their snapshot.
+     *
+     * @param examId the exam to publish
+     * @return the number of newly published exams, 0 if the exam does not exist
+     */
+    public int publish(long examId) {
+        List<Exam> exams = examDAO.findWithVariants(examId);
+        List<ExamSnapshot> snapshots = new ArrayList<>(exams.size());
+        long bytes = 0;
+        for (Exam exam : exams) {
+            byte[] payload = ExamSnapshotCodec.encode(exam);
+            snapshots.add(new ExamSnapshot(exam.getId(), ExamSnapshotCodec.FORMAT_VERSION, payload, sha256(payload)));
+            bytes += payload.length;
+        }
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        int count = examDAO.saveSnapshots(snapshots);
+        logger.info("Published exam {} with {} variants: {} new snapshots, {} bytes", examId,
+                exams.size() - 1, count, bytes);
+        return count;
+    }
+
+    /**
+     * @return true if the exam is published
+     */
+    public boolean isPublished(long examId) {
+        return findPublished(examId).isPresent();
+    }
+
+    /**
+     * @param examId the exam
+     * @return the published exam as frozen, empty if it is not published
+     */
+    public Optional<Exam> findPublished(long examId) {
+        Exam cached = published.get(examId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return examDAO.findSnapshot(examId).map(this::decode);
+    }
+
+    /**
+     * The exam as students get it: the snapshot if the exam is published, otherwise
+     * the current state of the exam and its tasks.
+     *
+     * @param examId the exam
+     * @return the exam, empty if it does not exist
+     */
+    public Optional<Exam> findForDelivery(long examId) {
+        Optional<Exam> snapshot = findPublished(examId);
+        return snapshot.isPresent() ? snapshot : examDAO.findById(examId);
+    }
+
+    /**
+     * An exam and its variants for delivery: the snapshots if the exam is published,
+     * otherwise the current state loaded in one pass.
+     *
+     * @param examId the exam the variants were derived from
+     * @return the exam followed by its variants, empty if it does not exist
+     */
+    public List<Exam> findWithVariantsForDelivery(long examId) {
+        List<ExamSnapshot> snapshots = examDAO.findSnapshotsWithVariants(examId);
+        if (snapshots.isEmpty() || !snapshots.get(0).getExamId().equals(examId)) {
+            return examDAO.findWithVariants(examId);
+        }
+        List<Exam> exams = new ArrayList<>(snapshots.size());
+        for (ExamSnapshot snapshot : snapshots) {
+            Exam cached = published.get(snapshot.getExamId());
+            exams.add(cached != null ? cached : decode(snapshot));
+        }
+        return exams;
+    }
+
+    private Exam decode(ExamSnapshot snapshot) {
+        if (snapshot.getFormatVersion() != ExamSnapshotCodec.FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported snapshot format " + snapshot.getFormatVersion()
+                    + " of exam " + snapshot.getExamId());
+        }
+        if (!MessageDigest.isEqual(sha256(snapshot.getPayload()), snapshot.getSha256())) {
+            throw new IllegalStateException("Snapshot of exam " + snapshot.getExamId() + " does not match its hash");
+        }
+        Exam exam = ExamSnapshotCodec.decode(snapshot.getPayload());
+        Exam previous = published.putIfAbsent(snapshot.getExamId(), exam);
+        return previous != null ? previous : exam;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.klasurapp.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.ExamDAO;
+import com.klasurapp.dao.TaskDAO;
+import com.klasurapp.model.BloomLevel;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.Task;
+import com.klasurapp.model.TaskFormat;
+
+/**
+ * Builds parallel versions (groups B, C, ...) of an existing exam for anti-cheating.
+ * The existing exam acts as group A.
+ * <p>
+ * Every variant gets the same minutes per Bloom level and format as the parent exam,
+ * and never shares a task with the group before it. For each variant, many candidate
+ * selections are generated in parallel on a fork/join pool and the best balanced one
+ * is kept. Candidate seeds are derived from the request seed only, and ties are broken
+ * by candidate index, so the result does not depend on thread scheduling.
+ */
+public class ExamVariantGenerator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ExamVariantGenerator.class);
+    private static final int DEFAULT_CANDIDATES = 64;
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+    // Score weights: total time first, then the per-cell histogram, then reuse of non-adjacent tasks
+    private static final long TOTAL_WEIGHT = 1_000_000;
+    private static final long CELL_WEIGHT = 1_000;
+    private static final long OVERLAP_WEIGHT = 1;
+
+    private final ExamGenerator examGenerator;
+    private final TaskDAO taskDAO;
+    private final ExamDAO examDAO;
+    private final ForkJoinPool pool;
+    private final int candidates;
+
+    public ExamVariantGenerator(ExamGenerator examGenerator, TaskDAO taskDAO, ExamDAO examDAO) {
+        this(examGenerator, taskDAO, examDAO, Runtime.getRuntime().availableProcessors(), DEFAULT_CANDIDATES);
+    }
+
+    /**
+     * @param parallelism number of worker threads searching candidates
+     * @param candidates candidate selections scored per variant; independent of the
+     *                   parallelism so that a seed gives the same result on every machine
+     */
+    public ExamVariantGenerator(ExamGenerator examGenerator, TaskDAO taskDAO, ExamDAO examDAO,
+                                int parallelism, int candidates) {
+        this.examGenerator = examGenerator;
+        this.taskDAO = taskDAO;
+        this.examDAO = examDAO;
+        this.pool = new ForkJoinPool(parallelism);
+        this.candidates = Math.max(1, candidates);
+    }
+
+    /**
+     * Generate and persist parallel versions of an exam.
+     *
+     * @param parent the persisted exam with its tasks (group A)
+     * @param count number of additional variants
+     * @param seed seed for the search
+     * @return the created variants with IDs
+     */
+    public List<Exam> createVariants(Exam parent, int count, long seed) {
+        List<Exam> variants = generateVariants(parent, count, seed);
+        return examDAO.createAll(variants);
+    }
+
+    /**
+     * Generate parallel versions of an exam without persisting them.
+     *
+     * @param parent the persisted exam with its tasks (group A)
+     * @param count number of additional variants
+     * @param seed seed for the search
+     * @return the variants, labelled B, C, ...
+     */
+    public List<Exam> generateVariants(Exam parent, int count, long seed) {
+        if (parent.getId() == null || parent.getTasks().isEmpty()) {
+            throw new IllegalArgumentException("Parent exam must be persisted and have tasks");
+        }
+        if (count < 1 || count > 25) {
+            throw new IllegalArgumentException("Number of variants must be between 1 and 25");
+        }
+
+        long start = System.nanoTime();
+        List<Task> bank = taskDAO.findSummariesByModule(parent.getModule().getId());
+        Map<Integer, Integer> targets = histogram(parent.getTasks());
+        int totalMinutes = parent.getTotalEstimatedTime();
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Exam> variants = new ArrayList<>();
+        Set<Long> usedSoFar = ids(parent.getTasks());
+        Set<Long> previous = ids(parent.getTasks());
+
+        for (int v = 0; v < count; v++) {
+            long[] seeds = new long[candidates];
+            for (int c = 0; c < candidates; c++) {
+                seeds[c] = random.nextLong();
+            }
+
+            ExamGenerator.Request request = new ExamGenerator.Request(totalMinutes);
+            request.getTargetMinutes().putAll(targets);
+
+            Candidate best = pool.invoke(new Search(bank, previous, usedSoFar, request, targets,
+                    totalMinutes, seeds, 0, candidates));
+
+            Exam variant = new Exam(parent.getTitle() + " (Gruppe " + label(v + 1) + ")", parent.getModule());
+            variant.setDescription(parent.getDescription());
+            variant.setExamDate(parent.getExamDate());
+            variant.setDurationMinutes(parent.getDurationMinutes());
+            variant.setParentExamId(parent.getId());
+            variant.setVariantLabel(label(v + 1));
+            variant.setTasks(best.tasks);
+            variants.add(variant);
+
+            previous = ids(best.tasks);
+            usedSoFar.addAll(previous);
+            logger.debug("Variant {}: {} minutes, score {}", variant.getVariantLabel(),
+                    variant.getTotalEstimatedTime(), best.score);
+        }
+
+        logger.info("Generated {} variants of exam {} from {} tasks in {} ms", count, parent.getId(),
+                bank.size(), (System.nanoTime() - start) / 1_000_000);
+        return variants;
+    }
+
+    /**
+     * Score of a variant against the parent: 0 means identical minutes per cell
+     * and no reuse of tasks from earlier groups.
+     */
+    static long score(List<Task> tasks, Map<Integer, Integer> targets, int totalMinutes, Set<Long> usedSoFar) {
+        Map<Integer, Integer> achieved = histogram(tasks);
+        long cellDeviation = 0;
+        Set<Integer> cells = new HashSet<>(targets.keySet());
+        cells.addAll(achieved.keySet());
+        for (int cell : cells) {
+            cellDeviation += Math.abs(targets.getOrDefault(cell, 0) - achieved.getOrDefault(cell, 0));
+        }
+
+        int total = tasks.stream().mapToInt(Task::getEstimatedTimeMinutes).sum();
+        long overlap = tasks.stream().filter(task -> usedSoFar.contains(task.getId())).count();
+        return Math.abs(totalMinutes - total) * TOTAL_WEIGHT + cellDeviation * CELL_WEIGHT + overlap * OVERLAP_WEIGHT;
+    }
+
+    /**
+     * @return minutes per cell (Bloom level ordinal * formats + format ordinal)
+     */
+    private static Map<Integer, Integer> histogram(List<Task> tasks) {
+        Map<Integer, Integer> minutes = new HashMap<>();
+        for (Task task : tasks) {
+            int cell = task.getBloomLevel().ordinal() * TaskFormat.values().length + task.getFormat().ordinal();
+            minutes.merge(cell, task.getEstimatedTimeMinutes(), Integer::sum);
+        }
+        return minutes;
+    }
+
+    /**
+     * @return minutes per Bloom level, for display
+     */
+    public static Map<BloomLevel, Integer> minutesPerLevel(List<Task> tasks) {
+        Map<BloomLevel, Integer> minutes = new EnumMap<>(BloomLevel.class);
+        for (Task task : tasks) {
+            minutes.merge(task.getBloomLevel(), task.getEstimatedTimeMinutes(), Integer::sum);
+        }
+        return minutes;
+    }
+
+    private static Set<Long> ids(List<Task> tasks) {
+        Set<Long> ids = new HashSet<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    private static String label(int index) {
+        return String.valueOf((char) ('A' + index));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * One scored candidate selection.
+     */
+    private static final class Candidate {
+        private final List<Task> tasks;
+        private final long score;
+        private final int index;
+
+        Candidate(List<Task> tasks, long score, int index) {
+            this.tasks = tasks;
+            this.score = score;
+            this.index = index;
+        }
+
+        Candidate better(Candidate other) {
+            if (other == null) {
+                return this;
+            }
+            if (score != other.score) {
+                return score < other.score ? this : other;
+            }
+            return index < other.index ? this : other;
+        }
+    }
+
+    /**
+     * Splits the candidate range in halves until it is small, then generates and
+     * scores candidates sequentially and returns the best of its range.
+     */
+    private final class Search extends RecursiveTask<Candidate> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Task> bank;
+        private final Set<Long> excluded;
+        private final Set<Long> usedSoFar;
+        private final ExamGenerator.Request template;
+        private final Map<Integer, Integer> targets;
+        private final int totalMinutes;
+        private final long[] seeds;
+        private final int from;
+        private final int to;
+
+        Search(List<Task> bank, Set<Long> excluded, Set<Long> usedSoFar, ExamGenerator.Request template,
+               Map<Integer, Integer> targets, int totalMinutes, long[] seeds, int from, int to) {
+            this.bank = bank;
+            this.excluded = excluded;
+            this.usedSoFar = usedSoFar;
+            this.template = template;
+            this.targets = targets;
+            this.totalMinutes = totalMinutes;
+            this.seeds = seeds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Candidate compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                Candidate best = null;
+                for (int i = from; i < to; i++) {
+                    ExamGenerator.Request request = copyOf(template, seeds[i]);
+                    List<Task> tasks = examGenerator.select(bank, excluded, request).getTasks();
+                    best = new Candidate(tasks, score(tasks, targets, totalMinutes, usedSoFar), i).better(best);
+                }
+                return best;
+            }
+
+            int middle = (from + to) >>> 1;
+            Search left = new Search(bank, excluded, usedSoFar, template, targets, totalMinutes, seeds, from, middle);
+            Search right = new Search(bank, excluded, usedSoFar, template, targets, totalMinutes, seeds, middle, to);
+            left.fork();
+            Candidate rightBest = right.compute();
+            return left.join().better(rightBest);
+        }
+
+        private ExamGenerator.Request copyOf(ExamGenerator.Request template, long seed) {
+            ExamGenerator.Request request = new ExamGenerator.Request(template.getDurationMinutes());
+            request.getTargetMinutes().putAll(template.getTargetMinutes());
+            request.setTimeBudget(template.getTimeBudget());
+            request.setSeed(seed);
+            return request;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.klasurapp.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel: many timeouts served by one thread with O(1) scheduling
+ * and cancellation, at the price of firing up to one tick late.
+ * <p>
+ * The wheel is an array of buckets, each a doubly linked list of timeouts. A timeout
+ * goes into the bucket of its deadline tick modulo the wheel size and counts the full
+ * rotations it still has to wait. Every tick the thread expires one bucket. Timeouts
+ * are handed to the thread through a queue, so only the thread touches the buckets;
+ * cancelled timeouts are unlinked when their bucket comes round.
+ * <p>
+ * The expiry callback runs on the wheel thread and must be short.
+ *
+ * @param <T> the payload of a timeout
+ */
+final class HashedTimingWheel<T> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+    // Upper bound for new timeouts moved into the wheel per tick, so that a burst of
+    // scheduling cannot delay expiry for long
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket<T>[] wheel;
+    private final int mask;
+    private final Consumer<T> onExpiry;
+    private final Queue<Timeout<T>> added = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param tick the resolution; timeouts fire at most one tick late
+     * @param unit the unit of {@code tick}
+     * @param wheelSize number of buckets, rounded up to a power of two
+     * @param onExpiry called on the wheel thread for each expired timeout
+     * @param threadName name of the wheel thread
+     */
+    @SuppressWarnings("unchecked")
+    HashedTimingWheel(long tick, TimeUnit unit, int wheelSize, Consumer<T> onExpiry, String threadName) {
+        if (tick <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = (Bucket<T>[]) new Bucket<?>[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.mask = size - 1;
+        this.onExpiry = onExpiry;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedule a timeout. May be called from any thread.
+     *
+     * @param payload passed to the expiry callback
+     * @param delay time until expiry
+     * @param unit the unit of {@code delay}
+     * @return the timeout, for cancellation
+     */
+    Timeout<T> schedule(T payload, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timing wheel is stopped");
+        }
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        Timeout<T> timeout = new Timeout<>(payload, deadline);
+        added.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long tickEnd = (tick + 1) * tickNanos;
+            long sleepNanos = tickEnd - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferAdded();
+            expire(wheel[(int) (tick & mask)], tickEnd);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout<T> timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.cancelled) {
+                continue;
+            }
+            // Never put a timeout behind the bucket that is expired now
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket<T> bucket, long tickEnd) {
+        Timeout<T> timeout = bucket.head;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            if (timeout.cancelled) {
+                bucket.remove(timeout);
+            } else if (timeout.remainingRounds <= 0 && timeout.deadline <= tickEnd) {
+                bucket.remove(timeout);
+                try {
+                    onExpiry.accept(timeout.payload);
+                } catch (RuntimeException e) {
+                    logger.error("Timeout callback failed", e);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A scheduled timeout.
+     */
+    static final class Timeout<T> {
+        private final T payload;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadline) {
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the timeout; it will not fire. May be called from any thread.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.klasurapp.service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.NutzerKontoDAO;
+
+/**
+ * Buffers last login timestamps in memory and writes them periodically in one batch.
+ * Repeated logins of the same account between two flushes are coalesced into a single row.
+ * The flush thread writes on its own database connection, see {@link com.klasurapp.dao.DatabaseConnection}.
+ */
+public class LastLoginTracker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginTracker.class);
+    private static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 5;
+
+    private final NutzerKontoDAO nutzerKontoDAO;
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public LastLoginTracker(NutzerKontoDAO nutzerKontoDAO) {
+        this(nutzerKontoDAO, DEFAULT_FLUSH_INTERVAL_SECONDS);
+    }
+
+    public LastLoginTracker(NutzerKontoDAO nutzerKontoDAO, long flushIntervalSeconds) {
+        this.nutzerKontoDAO = nutzerKontoDAO;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "last-login-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record a login for the given account. Only the latest timestamp per account is kept.
+     *
+     * @param kontoId the account ID
+     * @param zeitpunkt the login time
+     */
+    public void touch(Long kontoId, LocalDateTime zeitpunkt) {
+        pending.merge(kontoId, zeitpunkt, (alt, neu) -> neu.isAfter(alt) ? neu : alt);
+    }
+
+    /**
+     * Write all buffered timestamps to the database.
+     *
+     * @return the number of accounts written
+     */
+    public int flush() {
+        Map<Long, LocalDateTime> batch = new HashMap<>();
+        for (Long kontoId : pending.keySet()) {
+            LocalDateTime zeitpunkt = pending.remove(kontoId);
+            if (zeitpunkt != null) {
+                batch.put(kontoId, zeitpunkt);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            nutzerKontoDAO.updateLetzteAnmeldungen(batch);
+            return batch.size();
+        } catch (RuntimeException e) {
+            // Put the timestamps back so the next flush retries them
+            batch.forEach(this::touch);
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Flushing last login times failed, will retry", e);
+        }
+    }
+
+    /**
+     * Stop the periodic flush and write the remaining timestamps.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        flushQuietly();
+    }
+}
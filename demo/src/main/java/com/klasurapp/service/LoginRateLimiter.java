@@ -0,0 +1,197 @@
+package com.klasurapp.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limiter for login attempts, keyed by an arbitrary string
+ * (username or client address).
+ * <p>
+ * Each bucket is a single {@link AtomicLong} updated by compare-and-set, so
+ * concurrent attempts never block each other. The number of tracked keys is
+ * bounded; when the limit is reached, idle (completely refilled) buckets are
+ * dropped first since they behave exactly like a fresh bucket.
+ */
+public class LoginRateLimiter {
+    // State layout: upper 44 bits = last refill time in ms, lower 20 bits = milli-tokens
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI = 1000;
+
+    private final long capacityMilli;
+    private final double refillMilliPerMs;
+    private final int maxKeys;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param capacity maximum burst of attempts per key (at most 1000)
+     * @param refillPerMinute attempts regained per key and minute
+     * @param maxKeys maximum number of tracked keys
+     */
+    public LoginRateLimiter(int capacity, double refillPerMinute, int maxKeys) {
+        if (capacity < 1 || capacity * MILLI > TOKEN_MASK) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + TOKEN_MASK / MILLI);
+        }
+        this.capacityMilli = capacity * MILLI;
+        this.refillMilliPerMs = refillPerMinute * MILLI / 60_000.0;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Take one attempt from the key's bucket.
+     *
+     * @param key the username or client key
+     * @return true if the attempt is allowed
+     */
+    public boolean tryAcquire(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                evictIdle();
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(pack(now(), capacityMilli)));
+        }
+
+        long now = now();
+        while (true) {
+            long state = bucket.get();
+            long tokens = refill(state, now);
+            if (tokens < MILLI) {
+                rejected.increment();
+                return false;
+            }
+            long time = Math.max(now, state >>> TOKEN_BITS);
+            if (bucket.compareAndSet(state, pack(time, tokens - MILLI))) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Refill a key's bucket completely, e.g. after a successful login.
+     *
+     * @param key the username or client key
+     */
+    public void reset(String key) {
+        buckets.remove(key);
+    }
+
+    /**
+     * @param key the username or client key
+     * @return the attempts currently available for the key
+     */
+    public int getAvailableAttempts(String key) {
+        AtomicLong bucket = buckets.get(key);
+        return (int) ((bucket == null ? capacityMilli : refill(bucket.get(), now())) / MILLI);
+    }
+
+    /**
+     * @return a snapshot of the limiter counters for monitoring
+     */
+    public Stats getStats() {
+        return new Stats(buckets.size(), maxKeys, allowed.sum(), rejected.sum(), evicted.sum());
+    }
+
+    private void evictIdle() {
+        // One thread cleans up, the others proceed without waiting
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = now();
+            buckets.entrySet().removeIf(entry -> {
+                boolean idle = refill(entry.getValue().get(), now) >= capacityMilli;
+                if (idle) {
+                    evicted.increment();
+                }
+                return idle;
+            });
+
+            // Still full of active keys: drop arbitrary entries down to 90 %
+            Iterator<String> keys = buckets.keySet().iterator();
+            while (buckets.size() > maxKeys * 9L / 10 && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+                evicted.increment();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private long refill(long state, long now) {
+        long last = state >>> TOKEN_BITS;
+        long tokens = state & TOKEN_MASK;
+        long gained = (long) (Math.max(0, now - last) * refillMilliPerMs);
+        return Math.min(capacityMilli, tokens + gained);
+    }
+
+    private long now() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static long pack(long timeMillis, long milliTokens) {
+        return (timeMillis << TOKEN_BITS) | milliTokens;
+    }
+
+    /**
+     * Snapshot of the limiter state.
+     */
+    public static class Stats {
+        private final int trackedKeys;
+        private final int maxKeys;
+        private final long allowed;
+        private final long rejected;
+        private final long evicted;
+
+        public Stats(int trackedKeys, int maxKeys, long allowed, long rejected, long evicted) {
+            this.trackedKeys = trackedKeys;
+            this.maxKeys = maxKeys;
+            this.allowed = allowed;
+            this.rejected = rejected;
+            this.evicted = evicted;
+        }
+
+        public int getTrackedKeys() {
+            return trackedKeys;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public long getAllowed() {
+            return allowed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getEvicted() {
+            return evicted;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "trackedKeys=" + trackedKeys +
+                    ", maxKeys=" + maxKeys +
+                    ", allowed=" + allowed +
+                    ", rejected=" + rejected +
+                    ", evicted=" + evicted +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.klasurapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashes and verifies passwords with PBKDF2 on a dedicated, bounded thread pool.
+ * <p>
+ * Hash format: {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}. The legacy format
+ * {@code <salt>:<hash>} (one round of salted SHA-256) is still accepted for verification
+ * and reported as needing a rehash.
+ * <p>
+ * When all hashing threads are busy and the queue is full, requests are rejected
+ * immediately with a {@link RejectedExecutionException} instead of piling up.
+ */
+public class PasswordHasher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final int MIN_ITERATIONS = 50_000;
+    private static final int MAX_ITERATIONS = 2_000_000;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+    private static final long DEFAULT_TARGET_MILLIS = 100;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+
+    public PasswordHasher() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+             DEFAULT_QUEUE_CAPACITY, DEFAULT_TARGET_MILLIS);
+    }
+
+    /**
+     * @param threads maximum number of concurrent hash computations
+     * @param queueCapacity number of requests that may wait for a thread
+     * @param targetMillis desired duration of one hash computation
+     */
+    public PasswordHasher(int threads, int queueCapacity, long targetMillis) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.iterations = calibrate(targetMillis);
+        logger.info("Password hashing calibrated to {} iterations ({} threads, queue {})",
+                iterations, threads, queueCapacity);
+    }
+
+    /**
+     * Hash a password with a new random salt.
+     *
+     * @param password the plain text password
+     * @return the encoded hash
+     * @throws RejectedExecutionException if the hashing pool is saturated
+     */
+    public String hash(String password) {
+        return await(executor.submit(() -> hashNow(password)));
+    }
+
+    /**
+     * Hash a password on the calling thread, bypassing the pool's admission control.
+     * Meant for batch jobs that bound their own concurrency.
+     *
+     * @param password the plain text password
+     * @return the encoded hash
+     */
+    public String hashOnCallerThread(String password) {
+        return hashNow(password);
+    }
+
+    /**
+     * Hash a password in the background.
+     *
+     * @param password the plain text password
+     * @return a future with the encoded hash
+     * @throws RejectedExecutionException if the hashing pool is saturated
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return CompletableFuture.supplyAsync(() -> hashNow(password), executor);
+    }
+
+    /**
+     * Check a password against a stored hash.
+     *
+     * @param password the plain text password
+     * @param storedHash the stored hash (current or legacy format)
+     * @return true if the password matches
+     * @throws RejectedExecutionException if the hashing pool is saturated
+     */
+    public boolean verify(String password, String storedHash) {
+        return await(executor.submit(() -> verifyNow(password, storedHash)));
+    }
+
+    /**
+     * Check whether a stored hash should be replaced with one using the current settings.
+     *
+     * @param storedHash the stored hash
+     * @return true for legacy hashes and hashes clearly weaker than the calibrated cost
+     */
+    public boolean needsRehash(String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return true;
+        }
+        try {
+            // Tolerate small differences between calibrations on different starts
+            return Integer.parseInt(parts[1]) < iterations * 3L / 4;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of requests waiting for a hashing thread
+     */
+    public int getQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    private String hashNow(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    private boolean verifyNow(String password, String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        if (parts.length == 4 && PREFIX.equals(parts[0])) {
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, storedIterations));
+        }
+
+        // Legacy format: salt:hash with a single salted SHA-256 round
+        String[] legacy = storedHash.split(":");
+        if (legacy.length == 2) {
+            byte[] salt = Base64.getDecoder().decode(legacy[0]);
+            byte[] expected = Base64.getDecoder().decode(legacy[1]);
+            return MessageDigest.isEqual(expected, sha256(password, salt));
+        }
+
+        logger.error("Unknown password hash format");
+        return false;
+    }
+
+    private int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+
+        // Warm up once, then measure the best of a few runs
+        pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double nanosPerIteration = (double) best / CALIBRATION_ITERATIONS;
+        long calibrated = Math.round(TimeUnit.MILLISECONDS.toNanos(targetMillis) / nanosPerIteration);
+        // Round to a multiple of 1000 so stored hashes don't differ on every start
+        calibrated = (calibrated / 1000) * 1000;
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, calibrated));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_LENGTH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Error hashing password", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] sha256(String password, byte[] salt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            return md.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error hashing password", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error hashing password", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
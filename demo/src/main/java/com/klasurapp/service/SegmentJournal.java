@@ -0,0 +1,485 @@
+package com.klasurapp.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of byte records in memory-mapped segment files.
+ * <p>
+ * Each record is written as its length, a CRC32C over sequence number and payload, the
+ * sequence number and the payload. Sequence numbers increase by one from record to
+ * record, across segments. Appends are group-committed: callers queue their records
+ * and a single writer thread copies everything queued into the mapped segment and
+ * forces it to disk once for the whole group, so concurrent callers share one fsync.
+ * An append completes only after that force.
+ * <p>
+ * On opening, the segments are read up to the first record that is cut off, fails its
+ * checksum or breaks the sequence; that can only be the last group, whose appends were
+ * never completed, and it is dropped. Segments whose records are all
+ * {@linkplain #release released} are deleted. The highest released sequence number is
+ * also kept in a checkpoint file, without forcing it, so that released records in the
+ * remaining segment are usually not read back; callers must tolerate it when they are.
+ */
+final class SegmentJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentJournal.class);
+    private static final int MAGIC = 0x4B4A4E31; // "KJN1"
+    private static final int SEGMENT_HEADER = 8;
+    private static final int RECORD_HEADER = 16;
+    private static final int MAX_GROUP = 4096;
+    private static final String SUFFIX = ".seg";
+    private static final String CHECKPOINT = "released";
+
+    /**
+     * A record read back when the journal was opened.
+     */
+    static final class Record {
+        final long seq;
+        final byte[] payload;
+
+        Record(long seq, byte[] payload) {
+            this.seq = seq;
+            this.payload = payload;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    // Full segments, oldest first; guarded by itself
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final FileChannel checkpoint;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(Long.BYTES);
+    private List<Record> recovered = new ArrayList<>();
+    private final Thread writer;
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+    private volatile boolean running = true;
+    // Only touched by the writer thread once it runs
+    private Segment active;
+    private long nextSeq = 1;
+
+    /**
+     * Open the journal in a directory, creating it if needed, and read back its records.
+     *
+     * @param segmentSize size of one segment file in bytes
+     */
+    SegmentJournal(Path directory, int segmentSize, String threadName) throws IOException {
+        if (segmentSize < SEGMENT_HEADER + RECORD_HEADER + 1) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover(readCheckpoint());
+        this.writer = new Thread(this::runWriter, threadName);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return the records found when the journal was opened, in order; empty on
+     *         later calls
+     */
+    synchronized List<Record> takeRecovered() {
+        List<Record> records = recovered;
+        recovered = new ArrayList<>();
+        return records;
+    }
+
+    /**
+     * Append a record. May be called from any thread.
+     *
+     * @return completes with the record's sequence number once it is on disk
+     */
+    CompletableFuture<Long> append(byte[] payload) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        if (RECORD_HEADER + payload.length > segmentSize - SEGMENT_HEADER) {
+            future.completeExceptionally(new IllegalArgumentException(
+                    "Record of " + payload.length + " bytes does not fit into a segment"));
+            return future;
+        }
+        Pending record = new Pending(payload, future);
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("Journal is closed"));
+            return future;
+        }
+        pending.add(record);
+        // close() may have drained the queue just before the add
+        if (!running && pending.remove(record)) {
+            future.completeExceptionally(new IllegalStateException("Journal is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Mark all records up to a sequence number as no longer needed. Segments holding
+     * only such records are deleted; the segment being written is kept.
+     */
+    void release(long seq) {
+        synchronized (sealed) {
+            try {
+                checkpointBuffer.clear();
+                checkpointBuffer.putLong(0, seq);
+                checkpoint.write(checkpointBuffer, 0);
+            } catch (IOException e) {
+                logger.warn("Could not write the journal checkpoint", e);
+            }
+            while (!sealed.isEmpty() && sealed.peekFirst().lastSeq <= seq) {
+                Segment segment = sealed.pollFirst();
+                try {
+                    Files.deleteIfExists(segment.path);
+                    logger.debug("Deleted journal segment {}", segment.path.getFileName());
+                } catch (IOException e) {
+                    logger.warn("Could not delete journal segment {}", segment.path, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of forces to disk so far, one per group of appends
+     */
+    long getSyncCount() {
+        return syncs.get();
+    }
+
+    /**
+     * @return the number of records appended since opening
+     */
+    long getAppendCount() {
+        return appended.get();
+    }
+
+    /**
+     * Write what is queued and close the segment files.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending left;
+        while ((left = pending.poll()) != null) {
+            left.future.completeExceptionally(new IllegalStateException("Journal is closed"));
+        }
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the journal checkpoint", e);
+        }
+        if (active != null) {
+            try {
+                active.close();
+            } catch (IOException e) {
+                logger.warn("Could not close journal segment {}", active.path, e);
+            }
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> group = new ArrayList<>(MAX_GROUP);
+        while (true) {
+            Pending first;
+            try {
+                first = pending.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+            group.add(first);
+            pending.drainTo(group, MAX_GROUP - 1);
+            writeGroup(group);
+            group.clear();
+        }
+    }
+
+    private void writeGroup(List<Pending> group) {
+        long[] seqs = new long[group.size()];
+        List<Segment> touched = new ArrayList<>(2);
+        try {
+            touched.add(active);
+            for (int i = 0; i < group.size(); i++) {
+                byte[] payload = group.get(i).payload;
+                if (active.buffer.remaining() < RECORD_HEADER + payload.length) {
+                    roll();
+                    touched.add(active);
+                }
+                seqs[i] = nextSeq++;
+                writeRecord(active.buffer, seqs[i], payload);
+                active.lastSeq = seqs[i];
+            }
+            for (Segment segment : touched) {
+                if (segment.buffer != null) {
+                    segment.buffer.force();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The sequence numbers are used up; records that made it to disk are read
+            // back on the next start, which the caller must tolerate
+            logger.error("Writing {} journal records failed", group.size(), e);
+            for (Pending record : group) {
+                record.future.completeExceptionally(e);
+            }
+            return;
+        }
+        syncs.incrementAndGet();
+        appended.addAndGet(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).future.complete(seqs[i]);
+        }
+    }
+
+    private static void writeRecord(ByteBuffer buffer, long seq, byte[] payload) {
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(seq, payload));
+        buffer.putLong(seq);
+        buffer.put(payload);
+    }
+
+    private static int checksum(long seq, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer seqBytes = ByteBuffer.allocate(Long.BYTES).putLong(0, seq);
+        crc.update(seqBytes);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Force and seal the active segment and start a new one at the next sequence number.
+     * If forcing or creating fails, the full segment stays active and the next write
+     * tries again.
+     */
+    private void roll() throws IOException {
+        Segment full = active;
+        full.buffer.force();
+        active = Segment.create(directory.resolve(segmentName(nextSeq)), nextSeq, segmentSize);
+        synchronized (sealed) {
+            sealed.addLast(full);
+        }
+        try {
+            full.close();
+        } catch (IOException e) {
+            // Its records are forced already
+            logger.warn("Could not close journal segment {}", full.path, e);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpoint.read(checkpointBuffer, 0) < Long.BYTES) {
+            return 0;
+        }
+        return checkpointBuffer.getLong(0);
+    }
+
+    /**
+     * @param released records up to this sequence number are not read back
+     */
+    private void recover(long released) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // Names are zero-padded first sequence numbers
+        Collections.sort(files);
+
+        long expected = -1;
+        boolean broken = false;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (broken) {
+                // Only holds records of the group that was cut off
+                logger.warn("Dropping journal segment {} after a cut-off record", file.getFileName());
+                Files.delete(file);
+                continue;
+            }
+            long firstSeq = parseSegmentName(file);
+            boolean last = i == files.size() - 1;
+            Segment segment = Segment.open(file, firstSeq, segmentSize, last);
+            ByteBuffer buffer = segment.buffer;
+            if (buffer.getInt(0) != MAGIC) {
+                if (!last) {
+                    throw new IOException("Not a journal segment: " + file);
+                }
+                // Created, but the header was not on disk yet when the process stopped
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, 0);
+            }
+            if (expected < 0) {
+                expected = firstSeq;
+            }
+            int position = SEGMENT_HEADER;
+            while (true) {
+                if (position + RECORD_HEADER > buffer.limit()) {
+                    break;
+                }
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                long seq = buffer.getLong(position + 8);
+                if (length < 0 || position + RECORD_HEADER + length > buffer.limit() || seq != expected) {
+                    broken = true;
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + RECORD_HEADER, payload);
+                if (checksum(seq, payload) != buffer.getInt(position + 4)) {
+                    broken = true;
+                    break;
+                }
+                if (seq > released) {
+                    recovered.add(new Record(seq, payload));
+                }
+                segment.lastSeq = seq;
+                expected++;
+                position += RECORD_HEADER + length;
+            }
+            if (broken) {
+                logger.warn("Journal segment {} ends with a cut-off record at byte {}", file.getFileName(), position);
+            }
+
+            if (last || broken) {
+                if (!last) {
+                    segment.close();
+                    segment = Segment.open(file, firstSeq, segmentSize, true);
+                }
+                // Clear the rest, so that stale bytes of the cut-off group can never
+                // line up behind a new record
+                MappedByteBuffer tail = segment.buffer;
+                for (int p = position; p < tail.limit(); p++) {
+                    if (tail.get(p) != 0) {
+                        tail.put(p, (byte) 0);
+                    }
+                }
+                tail.position(position);
+                tail.force();
+                active = segment;
+            } else {
+                segment.close();
+                sealed.addLast(segment);
+            }
+        }
+        if (expected > 0) {
+            nextSeq = expected;
+        }
+        if (active == null) {
+            active = Segment.create(directory.resolve(segmentName(nextSeq)), nextSeq, segmentSize);
+        }
+        if (!recovered.isEmpty()) {
+            logger.info("Journal holds {} records, sequence {} to {}", recovered.size(),
+                    recovered.get(0).seq, recovered.get(recovered.size() - 1).seq);
+        }
+    }
+
+    private static String segmentName(long firstSeq) {
+        return String.format("%020d%s", firstSeq, SUFFIX);
+    }
+
+    private static long parseSegmentName(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file in journal directory: " + file, e);
+        }
+    }
+
+    private static final class Pending {
+        final byte[] payload;
+        final CompletableFuture<Long> future;
+
+        Pending(byte[] payload, CompletableFuture<Long> future) {
+            this.payload = payload;
+            this.future = future;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long firstSeq;
+        // Sequence number of the last record; firstSeq - 1 while empty
+        volatile long lastSeq;
+        FileChannel channel;
+        MappedByteBuffer buffer;
+
+        private Segment(Path path, long firstSeq) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+
+        static Segment create(Path path, long firstSeq, int size) throws IOException {
+            Segment segment = new Segment(path, firstSeq);
+            segment.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                segment.buffer.putInt(MAGIC);
+                segment.buffer.putInt(0);
+                segment.buffer.force();
+                // Make the new file itself durable
+                segment.channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                // Remove the half-made file, so that creating it again is possible
+                segment.buffer = null;
+                segment.channel.close();
+                Files.deleteIfExists(path);
+                throw e;
+            }
+            return segment;
+        }
+
+        static Segment open(Path path, long firstSeq, int size, boolean writable) throws IOException {
+            Segment segment = new Segment(path, firstSeq);
+            if (writable) {
+                segment.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.max(size, segment.channel.size()));
+            } else {
+                segment.channel = FileChannel.open(path, StandardOpenOption.READ);
+                segment.buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.channel.size());
+            }
+            return segment;
+        }
+
+        /**
+         * Close the file; the mapping is released by the garbage collector.
+         */
+        void close() throws IOException {
+            buffer = null;
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.klasurapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.SessionDAO;
+import com.klasurapp.model.NutzerKonto;
+import com.klasurapp.model.Session;
+
+/**
+ * In-memory registry of authenticated sessions.
+ * Tokens are validated without a database round trip; expired and idle
+ * sessions are evicted by a background timer. Persistence is optional and
+ * only used to restore sessions after a restart. Access times of persisted
+ * sessions are collected and written by the same timer, so a restored
+ * session keeps its idle timer without a write per request.
+ */
+public class SessionManager implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+    private static final int TOKEN_LENGTH = 32;
+    private static final Duration DEFAULT_TTL = Duration.ofHours(8);
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final long idleTimeoutMillis;
+    private final SessionDAO sessionDAO; // null if sessions are not persisted
+    // Sessions touched since the last write of access times
+    private final Map<String, Session> touched = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictionTimer;
+
+    public SessionManager() {
+        this(DEFAULT_TTL, DEFAULT_IDLE_TIMEOUT, null);
+    }
+
+    public SessionManager(Duration ttl, Duration idleTimeout, SessionDAO sessionDAO) {
+        this.ttlMillis = ttl.toMillis();
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.sessionDAO = sessionDAO;
+
+        if (sessionDAO != null) {
+            restoreSessions();
+        }
+
+        long evictionPeriod = Math.max(1000, Math.min(ttlMillis, idleTimeoutMillis) / 4);
+        this.evictionTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictionTimer.scheduleAtFixedRate(this::evictExpired, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a new session for an authenticated account.
+     *
+     * @param konto the authenticated account
+     * @return the opaque session token to hand to the client
+     */
+    public String create(NutzerKonto konto) {
+        byte[] tokenBytes = new byte[TOKEN_LENGTH];
+        random.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+
+        long now = System.currentTimeMillis();
+        Session session = new Session(hashToken(token), konto, now, now + ttlMillis);
+        sessions.put(session.getTokenHash(), session);
+
+        if (sessionDAO != null) {
+            try {
+                sessionDAO.save(session);
+            } catch (RuntimeException e) {
+                // The session stays valid in memory, it only won't survive a restart
+                logger.warn("Could not persist session for user: {}", konto.getBenutzername(), e);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Validate a token and refresh the session's idle timer.
+     *
+     * @param token the session token
+     * @return the session, or empty if the token is unknown or expired
+     */
+    public Optional<Session> validate(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+
+        String tokenHash = hashToken(token);
+        Session session = sessions.get(tokenHash);
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now, idleTimeoutMillis)) {
+            remove(tokenHash);
+            return Optional.empty();
+        }
+
+        session.touch(now);
+        if (sessionDAO != null) {
+            touched.put(tokenHash, session);
+        }
+        return Optional.of(session);
+    }
+
+    /**
+     * End a session.
+     *
+     * @param token the session token
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            remove(hashToken(token));
+        }
+    }
+
+    /**
+     * End all sessions of an account, e.g. after the account was deleted.
+     *
+     * @param kontoId the account ID
+     */
+    public void invalidateAll(Long kontoId) {
+        for (Session session : sessions.values()) {
+            if (kontoId.equals(session.getKonto().getId())) {
+                remove(session.getTokenHash());
+            }
+        }
+    }
+
+    /**
+     * @return the number of currently registered sessions
+     */
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Remove all expired and idle sessions.
+     */
+    void evictExpired() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (Session session : sessions.values()) {
+            if (session.isExpired(now, idleTimeoutMillis) && sessions.remove(session.getTokenHash(), session)) {
+                evicted++;
+            }
+        }
+
+        if (sessionDAO != null) {
+            // Access times first, so that only sessions idle in memory as well are deleted
+            if (writeLastAccess()) {
+                sessionDAO.deleteExpired(now, idleTimeoutMillis);
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} expired sessions", evicted);
+        }
+    }
+
+    /**
+     * @return false if the access times could not be written; they are written with the
+     *         next batch
+     */
+    private boolean writeLastAccess() {
+        Map<String, Session> written = new HashMap<>();
+        Map<String, Long> batch = new HashMap<>();
+        for (String tokenHash : touched.keySet()) {
+            Session session = touched.remove(tokenHash);
+            if (session != null) {
+                written.put(tokenHash, session);
+                batch.put(tokenHash, session.getLastAccessMillis());
+            }
+        }
+        try {
+            sessionDAO.updateLastAccess(batch);
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not persist access times of {} sessions", batch.size(), e);
+            written.forEach(touched::putIfAbsent);
+            return false;
+        }
+    }
+
+    private void remove(String tokenHash) {
+        if (sessions.remove(tokenHash) != null && sessionDAO != null) {
+            sessionDAO.delete(tokenHash);
+        }
+    }
+
+    private void restoreSessions() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessionDAO.findActive(now)) {
+            sessions.put(session.getTokenHash(), session);
+        }
+        logger.info("Restored {} persisted sessions", sessions.size());
+    }
+
+    private static String hashToken(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error hashing session token", e);
+        }
+    }
+
+    /**
+     * Stop the eviction timer. Persisted sessions are kept for the next start.
+     */
+    @Override
+    public void close() {
+        evictionTimer.shutdown();
+        if (sessionDAO != null) {
+            writeLastAccess();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.klasurapp.service;
+
+import java.sql.SQLException;
+
+/**
+ * Classifies database failures by the SQLState of the {@link SQLException} behind
+ * them, for writers that retry on their own.
+ * <p>
+ * Only data errors mean a row will never be accepted. Everything else, including
+ * failures with an unknown SQLState, may succeed when tried again.
+ */
+final class SqlFailures {
+
+    private SqlFailures() {
+    }
+
+    /**
+     * @return true if the failure, or one of its causes, is expected to pass: a lost or
+     *         refused connection (class 08), a server shutting down or starting
+     *         (57P), insufficient resources (53), a serialization failure or deadlock
+     *         (40), or a write on a standby during failover (25006)
+     */
+    static boolean isTransient(Throwable failure) {
+        String state = sqlState(failure);
+        return state != null
+                && (state.startsWith("08") || state.startsWith("57P") || state.startsWith("53")
+                        || state.startsWith("40") || state.equals("25006"));
+    }
+
+    /**
+     * @return true if the failure, or one of its causes, is a data exception (class 22)
+     *         or an integrity constraint violation (class 23): the rows are rejected
+     *         however often they are written
+     */
+    static boolean isDataError(Throwable failure) {
+        String state = sqlState(failure);
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    /**
+     * @return the SQLState of the first SQLException in the cause chain that has one
+     */
+    private static String sqlState(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null) {
+                    return state;
+                }
+            }
+        }
+        return null;
+    }
+}
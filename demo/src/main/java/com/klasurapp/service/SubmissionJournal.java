@@ -0,0 +1,422 @@
+package com.klasurapp.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.AnswerDAO;
+import com.klasurapp.dao.ExamAttemptDAO;
+import com.klasurapp.model.Answer;
+import com.klasurapp.model.ClosedAnswer;
+import com.klasurapp.model.ExamAttempt;
+import com.klasurapp.model.OpenAnswer;
+
+/**
+ * Accepts submissions while the database is unavailable.
+ * <p>
+ * A submission, answers and optionally the attempt they end, is acknowledged once it
+ * is in a local {@link SegmentJournal} on disk. A replay thread writes journaled
+ * submissions to the database in batches and releases them from the journal once
+ * stored; while the database is down it keeps retrying with growing pauses and the
+ * submissions wait in the journal. Journaled submissions left over from the last run
+ * are replayed on start. The replay thread has its own database connection.
+ * <p>
+ * A batch that fails is kept and retried, e.g. while the connection is lost or the
+ * database fails over. Only if the database rejects its data (SQLState class 22 or 23)
+ * are its submissions stored one by one; a submission that is rejected on its own is
+ * written to the {@code dead-letter} directory next to the segment files and released,
+ * so the submissions behind it are still replayed.
+ * <p>
+ * Replaying is idempotent: every answer gets a submission key before it is journaled,
+ * {@link AnswerDAO#createIfAbsent} skips keys that are already stored and
+ * {@link ExamAttemptDAO#submitAll} leaves submitted attempts alone. A submission may
+ * therefore be written more than once, e.g. when the process stops between storing a
+ * batch and releasing it.
+ * <p>
+ * Until replayed, a submission is not visible to queries against the database.
+ */
+public class SubmissionJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionJournal.class);
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_BATCH = 500;
+    private static final long MIN_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte OPEN_ANSWER = 0;
+    private static final byte CLOSED_ANSWER = 1;
+
+    private final AnswerDAO answerDAO;
+    private final ExamAttemptDAO examAttemptDAO;
+    private final SegmentJournal journal;
+    private final Path deadLetterDirectory;
+    private final BlockingQueue<Submission> toReplay = new LinkedBlockingQueue<>();
+    private final Thread replayer;
+    private final AtomicInteger pending = new AtomicInteger();
+    // Attempts journaled as submitted but not yet submitted in the database
+    private final Set<Long> pendingAttempts = ConcurrentHashMap.newKeySet();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile boolean running = true;
+
+    public SubmissionJournal(Path directory, AnswerDAO answerDAO, ExamAttemptDAO examAttemptDAO)
+            throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, answerDAO, examAttemptDAO);
+    }
+
+    /**
+     * @param directory where the segment files are kept; created if needed
+     * @param segmentSize size of one segment file in bytes
+     */
+    public SubmissionJournal(Path directory, int segmentSize, AnswerDAO answerDAO, ExamAttemptDAO examAttemptDAO)
+            throws IOException {
+        this.answerDAO = answerDAO;
+        this.examAttemptDAO = examAttemptDAO;
+        this.journal = new SegmentJournal(directory, segmentSize, "submission-journal");
+        this.deadLetterDirectory = directory.resolve("dead-letter");
+        for (SegmentJournal.Record record : journal.takeRecovered()) {
+            Submission submission = decode(record.payload);
+            submission.seq = record.seq;
+            if (submission.attempt != null) {
+                pendingAttempts.add(submission.attempt.getId());
+            }
+            toReplay.add(submission);
+        }
+        pending.set(toReplay.size());
+        if (!toReplay.isEmpty()) {
+            logger.info("Replaying {} journaled submissions", toReplay.size());
+        }
+        this.replayer = new Thread(this::runReplayer, "submission-replay");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    /**
+     * Journal a submission. Answers without a submission key get one.
+     *
+     * @param attempt the attempt the answers end, with its submission time set; null
+     *                for answers outside an attempt
+     * @param answers the answers
+     * @return completes when the submission is on disk; it is written to the database
+     *         later
+     */
+    public CompletableFuture<Void> submit(ExamAttempt attempt, Collection<? extends Answer> answers) {
+        for (Answer answer : answers) {
+            if (answer.getSubmissionKey() == null) {
+                answer.setSubmissionKey(UUID.randomUUID());
+            }
+        }
+        if (attempt != null) {
+            pendingAttempts.add(attempt.getId());
+        }
+        byte[] payload = encode(attempt, answers);
+        // A copy that the replay thread can own
+        Submission submission = decode(payload);
+        // Completes on the journal's writer thread, in journal order
+        return journal.append(payload).thenAccept(seq -> {
+            submission.seq = seq;
+            pending.incrementAndGet();
+            toReplay.add(submission);
+        });
+    }
+
+    /**
+     * @return the number of journaled submissions not yet written to the database
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return true if the attempt was submitted through the journal but is not yet
+     *         submitted in the database
+     */
+    public boolean isPending(long attemptId) {
+        return pendingAttempts.contains(attemptId);
+    }
+
+    /**
+     * @return the number of submissions written to the database since start
+     */
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    /**
+     * @return the number of forces to disk so far; concurrent submissions share one
+     */
+    public long getSyncCount() {
+        return journal.getSyncCount();
+    }
+
+    /**
+     * Stop accepting submissions. Submissions not yet in the database stay in the
+     * journal and are replayed on the next start.
+     */
+    @Override
+    public void close() {
+        journal.close();
+        running = false;
+        replayer.interrupt();
+        try {
+            replayer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pending.get() > 0) {
+            logger.info("{} journaled submissions will be replayed on the next start", pending.get());
+        }
+    }
+
+    private void runReplayer() {
+        List<Submission> batch = new ArrayList<>(MAX_BATCH);
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(toReplay.take());
+                    toReplay.drainTo(batch, MAX_BATCH - 1);
+                }
+                try {
+                    store(batch);
+                    journal.release(batch.get(batch.size() - 1).seq);
+                    replayed.addAndGet(batch.size());
+                    pending.addAndGet(-batch.size());
+                    batch.clear();
+                } catch (RuntimeException e) {
+                    if (!SqlFailures.isDataError(e)) {
+                        throw e;
+                    }
+                    logger.warn("Storing {} submissions failed, storing them one by one", batch.size(), e);
+                    storeEach(batch);
+                }
+                retryMillis = MIN_RETRY_MILLIS;
+            } catch (InterruptedException e) {
+                // close() was called
+            } catch (RuntimeException e) {
+                if (SqlFailures.isTransient(e)) {
+                    logger.warn("Database unavailable, {} submissions wait in the journal; retrying in {} ms",
+                            pending.get(), retryMillis, e);
+                } else {
+                    logger.error("Replaying submissions failed, {} submissions wait in the journal; retrying in {} ms",
+                            pending.get(), retryMillis, e);
+                }
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    // close() was called
+                }
+                retryMillis = Math.min(MAX_RETRY_MILLIS, retryMillis * 2);
+            }
+        }
+    }
+
+    /**
+     * Store and release the submissions of a batch one at a time, moving those the
+     * database rejects to the dead-letter directory. Stops at any other failure; the
+     * batch then holds the submissions not handled yet.
+     */
+    private void storeEach(List<Submission> batch) {
+        Iterator<Submission> it = batch.iterator();
+        while (it.hasNext()) {
+            Submission submission = it.next();
+            try {
+                store(List.of(submission));
+                replayed.incrementAndGet();
+            } catch (RuntimeException e) {
+                if (!SqlFailures.isDataError(e)) {
+                    throw e;
+                }
+                deadLetter(submission, e);
+            }
+            journal.release(submission.seq);
+            pending.decrementAndGet();
+            it.remove();
+        }
+    }
+
+    private void deadLetter(Submission submission, RuntimeException cause) {
+        Path file = deadLetterDirectory.resolve("submission-" + submission.seq + ".bin");
+        try {
+            Files.createDirectories(deadLetterDirectory);
+            Files.write(file, encode(submission.attempt, submission.answers));
+        } catch (IOException e) {
+            // Stays in the journal and is tried again
+            UncheckedIOException failure = new UncheckedIOException("Could not write " + file, e);
+            failure.addSuppressed(cause);
+            throw failure;
+        }
+        if (submission.attempt != null) {
+            pendingAttempts.remove(submission.attempt.getId());
+        }
+        logger.error("Submission {} was rejected by the database and moved to {}", submission.seq, file, cause);
+    }
+
+    private void store(List<Submission> batch) {
+        List<Answer> answers = new ArrayList<>();
+        List<ExamAttempt> attempts = new ArrayList<>();
+        for (Submission submission : batch) {
+            answers.addAll(submission.answers);
+            if (submission.attempt != null) {
+                attempts.add(submission.attempt);
+            }
+        }
+        answerDAO.createIfAbsent(answers);
+        examAttemptDAO.submitAll(attempts);
+        for (ExamAttempt attempt : attempts) {
+            pendingAttempts.remove(attempt.getId());
+        }
+    }
+
+    // Encoding of one submission in a journal record
+
+    static byte[] encode(ExamAttempt attempt, Collection<? extends Answer> answers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeBoolean(attempt != null);
+            if (attempt != null) {
+                out.writeLong(attempt.getId());
+                writeTime(out, attempt.getSubmittedAt());
+            }
+            out.writeInt(answers.size());
+            for (Answer answer : answers) {
+                out.writeByte(answer instanceof OpenAnswer ? OPEN_ANSWER : CLOSED_ANSWER);
+                out.writeLong(answer.getSubmissionKey().getMostSignificantBits());
+                out.writeLong(answer.getSubmissionKey().getLeastSignificantBits());
+                out.writeLong(answer.getTaskId());
+                out.writeLong(answer.getUserId());
+                writeLong(out, answer.getAttemptId());
+                writeTime(out, answer.getSubmissionTime());
+                out.writeBoolean(answer.isGraded());
+                out.writeBoolean(answer.getScore() != null);
+                if (answer.getScore() != null) {
+                    out.writeDouble(answer.getScore());
+                }
+                writeString(out, answer.getFeedback());
+                writeString(out, answer.getAnswerContent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Submission decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unknown journal record format " + version);
+            }
+            ExamAttempt attempt = null;
+            if (in.readBoolean()) {
+                attempt = new ExamAttempt();
+                attempt.setId(in.readLong());
+                attempt.setSubmittedAt(readTime(in));
+            }
+            int count = in.readInt();
+            List<Answer> answers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                UUID key = new UUID(in.readLong(), in.readLong());
+                Long taskId = in.readLong();
+                Long userId = in.readLong();
+                Long attemptId = readLong(in);
+                LocalDateTime submissionTime = readTime(in);
+                boolean graded = in.readBoolean();
+                Double score = in.readBoolean() ? in.readDouble() : null;
+                String feedback = readString(in);
+                String content = readString(in);
+
+                Answer answer = type == OPEN_ANSWER
+                        ? new OpenAnswer(taskId, userId, content)
+                        : new ClosedAnswer(taskId, userId, content);
+                answer.setSubmissionKey(key);
+                answer.setAttemptId(attemptId);
+                answer.setSubmissionTime(submissionTime);
+                answer.setScore(score);
+                answer.setGraded(graded);
+                answer.setFeedback(feedback);
+                answers.add(answer);
+            }
+            return new Submission(attempt, answers);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long seconds = in.readLong();
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    static final class Submission {
+        final ExamAttempt attempt;
+        final List<Answer> answers;
+        // Set once journaled
+        long seq;
+
+        Submission(ExamAttempt attempt, List<Answer> answers) {
+            this.attempt = attempt;
+            this.answers = answers;
+        }
+    }
+}
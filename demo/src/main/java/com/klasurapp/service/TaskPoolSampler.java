@@ -0,0 +1,234 @@
+package com.klasurapp.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Weighted random sampling of tasks from pools in O(1) per draw.
+ * <p>
+ * Every pool is held as an immutable alias table (Vose's method). Readers take the
+ * current table from a concurrent map without locking; a change to a pool builds a new
+ * table in O(n) and replaces the old one, so a draw never sees a half-built table.
+ * <p>
+ * {@link #sample} allocates nothing: the random state lives in a local variable and
+ * the drawn task IDs are written to a caller-supplied array.
+ */
+public class TaskPoolSampler {
+    // Draws per requested task before the remaining slots are filled deterministically
+    private static final int ATTEMPTS_PER_PICK = 8;
+
+    private final Map<Long, AliasTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Replace the table of a pool.
+     *
+     * @param poolId the pool
+     * @param weights task ID -> weight; weights of 0 or less are never drawn unless
+     *                all weights are, in which case every task is equally likely
+     */
+    public void put(long poolId, Map<Long, Double> weights) {
+        long[] ids = new long[weights.size()];
+        double[] values = new double[weights.size()];
+        int i = 0;
+        for (Map.Entry<Long, Double> entry : weights.entrySet()) {
+            ids[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        tables.put(poolId, AliasTable.build(ids, values));
+    }
+
+    /**
+     * Add a task to a pool whose table is loaded, or change its weight. Pools that are
+     * not loaded yet are left alone; they pick up the task when they are loaded.
+     */
+    public void add(long poolId, long taskId, double weight) {
+        tables.computeIfPresent(poolId, (id, table) -> table.with(taskId, weight));
+    }
+
+    public boolean isLoaded(long poolId) {
+        return tables.containsKey(poolId);
+    }
+
+    /**
+     * Drop the table of a pool, e.g. so that it is reloaded with current exposure counts.
+     */
+    public void invalidate(long poolId) {
+        tables.remove(poolId);
+    }
+
+    /**
+     * @return the number of tasks in the loaded table of a pool, 0 if not loaded
+     */
+    public int size(long poolId) {
+        AliasTable table = tables.get(poolId);
+        return table != null ? table.ids.length : 0;
+    }
+
+    /**
+     * Draw distinct tasks from a pool. The same seed and table always give the same tasks.
+     *
+     * @param poolId the pool
+     * @param seed seed of this draw, e.g. derived from exam and student
+     * @param out receives the task IDs
+     * @param offset first index written in out
+     * @param count number of distinct tasks wanted
+     * @return the number of task IDs written: count, or the pool size if it is smaller
+     */
+    public int sample(long poolId, long seed, long[] out, int offset, int count) {
+        return sample(poolId, seed, out, offset, count, id -> false);
+    }
+
+    /**
+     * Draw distinct tasks from a pool, skipping excluded tasks, e.g. those already on
+     * the exam. The same seed, table and exclusions always give the same tasks.
+     *
+     * @param excluded tasks that must not be drawn
+     * @return the number of task IDs written: count, or fewer if the pool runs out of
+     *         tasks that are not excluded
+     */
+    public int sample(long poolId, long seed, long[] out, int offset, int count, LongPredicate excluded) {
+        AliasTable table = tables.get(poolId);
+        if (table == null) {
+            throw new IllegalStateException("Pool " + poolId + " is not loaded");
+        }
+        return table.sample(seed, out, offset, count, excluded);
+    }
+
+    /**
+     * Immutable alias table over the tasks of one pool.
+     */
+    static final class AliasTable {
+        final long[] ids;
+        final double[] weights;
+        final double[] prob;
+        final int[] alias;
+
+        private AliasTable(long[] ids, double[] weights, double[] prob, int[] alias) {
+            this.ids = ids;
+            this.weights = weights;
+            this.prob = prob;
+            this.alias = alias;
+        }
+
+        static AliasTable build(long[] ids, double[] weights) {
+            int n = ids.length;
+            double[] prob = new double[n];
+            int[] alias = new int[n];
+
+            double sum = 0;
+            for (double weight : weights) {
+                if (weight > 0 && Double.isFinite(weight)) {
+                    sum += weight;
+                }
+            }
+
+            // Scaled probabilities: average 1
+            double[] scaled = new double[n];
+            for (int i = 0; i < n; i++) {
+                double weight = weights[i] > 0 && Double.isFinite(weights[i]) ? weights[i] : 0;
+                scaled[i] = sum > 0 ? weight * n / sum : 1.0;
+            }
+
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (scaled[i] < 1.0) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                prob[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+                if (scaled[more] < 1.0) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+            // Leftovers are 1 up to rounding errors
+            while (largeCount > 0) {
+                int i = large[--largeCount];
+                prob[i] = 1.0;
+                alias[i] = i;
+            }
+            while (smallCount > 0) {
+                int i = small[--smallCount];
+                prob[i] = 1.0;
+                alias[i] = i;
+            }
+            return new AliasTable(ids, weights, prob, alias);
+        }
+
+        /**
+         * @return a new table with the task added or its weight replaced
+         */
+        AliasTable with(long taskId, double weight) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == taskId) {
+                    double[] newWeights = weights.clone();
+                    newWeights[i] = weight;
+                    return build(ids, newWeights);
+                }
+            }
+            long[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            double[] newWeights = Arrays.copyOf(weights, weights.length + 1);
+            newIds[ids.length] = taskId;
+            newWeights[weights.length] = weight;
+            return build(newIds, newWeights);
+        }
+
+        int sample(long seed, long[] out, int offset, int count, LongPredicate excluded) {
+            int n = ids.length;
+            int wanted = Math.min(count, n);
+            int written = 0;
+            long state = seed;
+            int attempts = wanted * ATTEMPTS_PER_PICK;
+
+            while (written < wanted && attempts-- > 0) {
+                state += 0x9e3779b97f4a7c15L;
+                long bits = mix(state);
+                // Upper 32 bits pick the column, lower 32 bits flip the biased coin
+                int column = (int) (((bits >>> 32) * n) >>> 32);
+                double coin = (bits & 0xffffffffL) * 0x1.0p-32;
+                long id = ids[coin < prob[column] ? column : alias[column]];
+                if (!excluded.test(id) && !contains(out, offset, written, id)) {
+                    out[offset + written++] = id;
+                }
+            }
+
+            // Heavily skewed pools: fill the rest in table order
+            for (int i = 0; written < wanted && i < n; i++) {
+                if (!excluded.test(ids[i]) && !contains(out, offset, written, ids[i])) {
+                    out[offset + written++] = ids[i];
+                }
+            }
+            return written;
+        }
+
+        private static boolean contains(long[] out, int offset, int length, long id) {
+            for (int i = offset; i < offset + length; i++) {
+                if (out[i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
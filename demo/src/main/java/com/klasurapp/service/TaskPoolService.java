@@ -0,0 +1,211 @@
+package com.klasurapp.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.klasurapp.dao.TaskDAO;
+import com.klasurapp.dao.TaskPoolDAO;
+import com.klasurapp.model.Exam;
+import com.klasurapp.model.ExamPoolSlot;
+import com.klasurapp.model.Task;
+import com.klasurapp.model.TaskPool;
+
+/**
+ * Fills the pool slots of an exam when it is delivered to a student.
+ * <p>
+ * Pool tables are loaded on first use and kept up to date when tasks are created:
+ * a new task joins every matching auto-include pool in the database and in the
+ * loaded tables. The draw for a student is seeded from exam, student and slot, so
+ * delivering the same exam to the same student again gives the same tasks as long
+ * as the pool is unchanged.
+ * <p>
+ * The service listens for created tasks until it is closed.
+ */
+public class TaskPoolService implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TaskPoolService.class);
+
+    private final TaskPoolDAO taskPoolDAO;
+    private final TaskDAO taskDAO;
+    private final TaskPoolSampler sampler;
+    private final Consumer<Task> createListener = this::taskCreated;
+
+    public TaskPoolService(TaskPoolDAO taskPoolDAO, TaskDAO taskDAO) {
+        this(taskPoolDAO, taskDAO, new TaskPoolSampler());
+    }
+
+    public TaskPoolService(TaskPoolDAO taskPoolDAO, TaskDAO taskDAO, TaskPoolSampler sampler) {
+        this.taskPoolDAO = taskPoolDAO;
+        this.taskDAO = taskDAO;
+        this.sampler = sampler;
+        TaskDAO.addCreateListener(createListener);
+    }
+
+    /**
+     * Stop following created tasks, so that the service and its pool tables can be
+     * collected.
+     */
+    @Override
+    public void close() {
+        TaskDAO.removeCreateListener(createListener);
+    }
+
+    /**
+     * Create a pool and, optionally, add the module's existing tasks that match it.
+     *
+     * @param pool the pool to create
+     * @param includeExisting add existing tasks of the module with the pool's Bloom level
+     * @return the created pool
+     */
+    public TaskPool createPool(TaskPool pool, boolean includeExisting) {
+        TaskPool created = taskPoolDAO.create(pool);
+        if (includeExisting) {
+            int added = taskPoolDAO.addMatchingTasks(created);
+            logger.info("Added {} existing tasks to pool {}", added, created.getName());
+        }
+        return created;
+    }
+
+    /**
+     * Add a task to a pool with the given base weight.
+     */
+    public void addTask(TaskPool pool, long taskId, double weight) {
+        if (weight <= 0 || !Double.isFinite(weight)) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        taskPoolDAO.addMember(pool.getId(), taskId, weight);
+        // The effective weight depends on the exposure count, so reload on next use
+        sampler.invalidate(pool.getId());
+    }
+
+    /**
+     * Reload a pool's weights, e.g. after many answers changed the exposure counts.
+     */
+    public void refresh(long poolId) {
+        sampler.invalidate(poolId);
+        load(poolId);
+    }
+
+    /**
+     * @return the number of tasks in a pool
+     */
+    public int poolSize(long poolId) {
+        load(poolId);
+        return sampler.size(poolId);
+    }
+
+    /**
+     * @return true if the exam has pool slots, i.e. students may get different tasks
+     */
+    public boolean hasSlots(Exam exam) {
+        return exam.getId() != null && !taskPoolDAO.findSlots(exam.getId()).isEmpty();
+    }
+
+    /**
+     * Build the exam as delivered to one student: the exam's fixed tasks followed by
+     * the tasks drawn for each pool slot. Tasks already on the exam are not drawn again;
+     * a slot draws others instead, so every student gets the same number of tasks
+     * unless a pool runs out.
+     *
+     * @param exam the exam with its fixed tasks
+     * @param studentId the account ID of the student
+     * @return a copy of the exam with the drawn tasks, or the exam itself if it has no slots
+     */
+    public Exam deliver(Exam exam, long studentId) {
+        if (exam.getId() == null) {
+            return exam;
+        }
+        List<ExamPoolSlot> slots = taskPoolDAO.findSlots(exam.getId());
+        if (slots.isEmpty()) {
+            return exam;
+        }
+
+        Set<Long> taskIds = new LinkedHashSet<>();
+        for (Task task : exam.getTasks()) {
+            taskIds.add(task.getId());
+        }
+
+        long examKey = mix(exam.getId() ^ mix(exam.getInstanceSeed() != null ? exam.getInstanceSeed() : 0L));
+        long[] drawn = new long[slots.stream().mapToInt(ExamPoolSlot::getCount).max().orElse(0)];
+        List<Long> sampled = new ArrayList<>();
+        for (ExamPoolSlot slot : slots) {
+            if (!load(slot.getPoolId())) {
+                continue;
+            }
+            long seed = mix(examKey ^ mix(studentId)) ^ mix(slot.getSlotOrder() + 1L);
+            int count = sampler.sample(slot.getPoolId(), seed, drawn, 0, slot.getCount(), taskIds::contains);
+            if (count < slot.getCount()) {
+                logger.warn("Pool {} has only {} of {} tasks left for slot {} of exam {}",
+                        slot.getPoolId(), count, slot.getCount(), slot.getSlotOrder(), exam.getId());
+            }
+            for (int i = 0; i < count; i++) {
+                taskIds.add(drawn[i]);
+                sampled.add(drawn[i]);
+            }
+        }
+
+        Map<Long, Task> tasks = taskDAO.findByIds(sampled);
+        Exam delivered = copyOf(exam);
+        List<Task> deliveredTasks = new ArrayList<>(exam.getTasks());
+        for (Long id : sampled) {
+            Task task = tasks.get(id);
+            if (task != null) {
+                deliveredTasks.add(task);
+            }
+        }
+        delivered.setTasks(deliveredTasks);
+        return delivered;
+    }
+
+    /**
+     * Called by {@link TaskDAO} after a task was created.
+     */
+    void taskCreated(Task task) {
+        for (TaskPool pool : taskPoolDAO.addToAutoIncludePools(task)) {
+            // A new task has not been answered yet, so its effective weight is the base weight
+            sampler.add(pool.getId(), task.getId(), 1.0);
+            logger.debug("Task {} joined pool {}", task.getId(), pool.getName());
+        }
+    }
+
+    /**
+     * @return true if the pool exists and its table is loaded
+     */
+    private boolean load(long poolId) {
+        if (sampler.isLoaded(poolId)) {
+            return true;
+        }
+        Optional<TaskPool> pool = taskPoolDAO.findById(poolId);
+        if (!pool.isPresent()) {
+            logger.warn("Pool {} of an exam slot does not exist", poolId);
+            return false;
+        }
+        sampler.put(poolId, taskPoolDAO.findEffectiveWeights(pool.get()));
+        return true;
+    }
+
+    private static Exam copyOf(Exam exam) {
+        Exam copy = new Exam(exam.getTitle(), exam.getModule());
+        copy.setId(exam.getId());
+        copy.setDescription(exam.getDescription());
+        copy.setExamDate(exam.getExamDate());
+        copy.setDurationMinutes(exam.getDurationMinutes());
+        copy.setParentExamId(exam.getParentExamId());
+        copy.setVariantLabel(exam.getVariantLabel());
+        copy.setInstanceSeed(exam.getInstanceSeed());
+        return copy;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}